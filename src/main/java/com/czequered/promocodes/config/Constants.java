@@ -6,6 +6,8 @@ package com.czequered.promocodes.config;
 public class Constants {
     public static final String TOKEN_HEADER = "X-Token";
 
+    public static final String VERIFIED_TOKEN_ATTRIBUTE = "com.czequered.promocodes.verifiedToken";
+
     public static final String GITHUB_PREFIX = "GITHUB-";
 
     public static final String FACEBOOK_PREFIX = "FACEBOOK-";
@@ -1,8 +1,12 @@
 package com.czequered.promocodes.config;
 
+import com.amazonaws.ClientConfiguration;
 import com.amazonaws.auth.AWSStaticCredentialsProvider;
 import com.amazonaws.auth.BasicAWSCredentials;
 import com.amazonaws.client.builder.AwsClientBuilder;
+import com.amazonaws.retry.PredefinedBackoffStrategies.FullJitterBackoffStrategy;
+import com.amazonaws.retry.PredefinedRetryPolicies;
+import com.amazonaws.retry.RetryPolicy;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClientBuilder;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
@@ -10,11 +14,16 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
 
 /**
+ * The DynamoDB client and mapper of all profiles but local, whose repositories keep the tables in files.
+ *
  * @author Martin Varga
+ * @see LocalConfig
  */
 @Configuration
+@Profile("!local")
 public class DynamoDBConfig {
 
     @Value("${aws.dynamodb.endpoint:default}")
@@ -29,22 +38,86 @@ public class DynamoDBConfig {
     @Value("${aws.region}")
     private String region;
 
+    /**
+     * Should cover the request threads of the container, which otherwise queue for a connection. Also the threads of
+     * {@link ExecutorConfig#dynamoDbExecutor()}.
+     */
+    @Value("${aws.dynamodb.max-connections:200}")
+    private int maxConnections;
+
+    /**
+     * Milliseconds a pooled connection is reused for, so that DNS changes of the endpoint are picked up.
+     */
+    @Value("${aws.dynamodb.connection-ttl:60000}")
+    private long connectionTtl;
+
+    @Value("${aws.dynamodb.connection-timeout:2000}")
+    private int connectionTimeout;
+
+    @Value("${aws.dynamodb.socket-timeout:5000}")
+    private int socketTimeout;
+
+    /**
+     * Milliseconds a single HTTP attempt may take.
+     */
+    @Value("${aws.dynamodb.request-timeout:5000}")
+    private int requestTimeout;
+
+    /**
+     * Milliseconds a whole call may take, retries and backoff included.
+     */
+    @Value("${aws.dynamodb.client-execution-timeout:15000}")
+    private int clientExecutionTimeout;
+
+    @Value("${aws.dynamodb.max-error-retry:10}")
+    private int maxErrorRetry;
+
+    /**
+     * Base and cap of the exponential backoff in milliseconds, the delay is drawn uniformly from zero up to the
+     * exponential value so that throttled clients do not retry in lockstep.
+     */
+    @Value("${aws.dynamodb.retry-base-delay:25}")
+    private int retryBaseDelay;
+
+    @Value("${aws.dynamodb.retry-max-backoff:2000}")
+    private int retryMaxBackoff;
+
+    @Value("${aws.dynamodb.gzip:true}")
+    private boolean gzip;
+
     @Autowired private AmazonDynamoDB amazonDynamoDB;
 
     @Bean
-    public AmazonDynamoDB amazonDynamoDB() {
+    public AmazonDynamoDB amazonDynamoDB(DynamoDBMetrics metrics) {
         AmazonDynamoDBClientBuilder builder = AmazonDynamoDBClientBuilder.standard()
-                .withCredentials(new AWSStaticCredentialsProvider(new BasicAWSCredentials(accessKey, secretKey)));
+                .withCredentials(new AWSStaticCredentialsProvider(new BasicAWSCredentials(accessKey, secretKey)))
+                .withClientConfiguration(clientConfiguration())
+                .withMetricsCollector(metrics);
 
         if ("default".equals(dynamoDbEndpoint)) {
             builder = builder.withRegion(region);
         } else {
-            builder = builder.withEndpointConfiguration(new AwsClientBuilder.EndpointConfiguration("http://localhost:8088", region));
+            builder = builder.withEndpointConfiguration(new AwsClientBuilder.EndpointConfiguration(dynamoDbEndpoint, region));
         }
 
         return builder.build();
     }
 
+    private ClientConfiguration clientConfiguration() {
+        RetryPolicy retryPolicy = new RetryPolicy(PredefinedRetryPolicies.DEFAULT_RETRY_CONDITION,
+                new FullJitterBackoffStrategy(retryBaseDelay, retryMaxBackoff), maxErrorRetry, false);
+        return new ClientConfiguration()
+                .withMaxConnections(maxConnections)
+                .withConnectionTTL(connectionTtl)
+                .withConnectionTimeout(connectionTimeout)
+                .withSocketTimeout(socketTimeout)
+                .withRequestTimeout(requestTimeout)
+                .withClientExecutionTimeout(clientExecutionTimeout)
+                .withRetryPolicy(retryPolicy)
+                .withTcpKeepAlive(true)
+                .withGzip(gzip);
+    }
+
     @Bean
     public DynamoDBMapper dynamoDBMapper() {
         return new DynamoDBMapper(amazonDynamoDB);
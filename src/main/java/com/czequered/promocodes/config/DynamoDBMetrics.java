@@ -0,0 +1,89 @@
+package com.czequered.promocodes.config;
+
+import com.amazonaws.Request;
+import com.amazonaws.Response;
+import com.amazonaws.metrics.RequestMetricCollector;
+import com.amazonaws.util.AWSRequestMetrics;
+import com.amazonaws.util.AWSRequestMetrics.Field;
+import com.amazonaws.util.TimingInfo;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects latency and throttling of every request of the DynamoDB client, per operation (GetItem, Query, ...),
+ * and exposes them over JMX. Latency is the whole client execution, retries and backoff included.
+ *
+ * @author Martin Varga
+ */
+@Component
+@Profile("!local")
+@ManagedResource
+public class DynamoDBMetrics extends RequestMetricCollector {
+    private final ConcurrentMap<String, LatencyHistogram> latencies = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LongAdder> throttles = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LongAdder> failures = new ConcurrentHashMap<>();
+
+    @Override
+    public void collectMetrics(Request<?> request, Response<?> response) {
+        AWSRequestMetrics metrics = request.getAWSRequestMetrics();
+        if (metrics == null) {
+            return;
+        }
+        String operation = operationOf(request);
+        TimingInfo timing = metrics.getTimingInfo();
+        Double millis = timing.getTimeTakenMillisIfKnown();
+        if (millis != null) {
+            latencies.computeIfAbsent(operation, key -> new LatencyHistogram()).record(Math.round(millis));
+        }
+        Number throttled = timing.getCounter(Field.ThrottleException.name());
+        if (throttled != null && throttled.longValue() > 0) {
+            throttles.computeIfAbsent(operation, key -> new LongAdder()).add(throttled.longValue());
+        }
+        if (response == null) {
+            failures.computeIfAbsent(operation, key -> new LongAdder()).increment();
+        }
+    }
+
+    @ManagedAttribute(description = "Latency histogram summary per operation")
+    public Map<String, String> getLatencies() {
+        Map<String, String> summary = new TreeMap<>();
+        latencies.forEach((operation, histogram) -> summary.put(operation, histogram.toString()));
+        return summary;
+    }
+
+    @ManagedAttribute(description = "Throttled attempts per operation, retried or not")
+    public Map<String, Long> getThrottles() {
+        return sums(throttles);
+    }
+
+    @ManagedAttribute(description = "Requests that ended with an error per operation, conditional check failures included")
+    public Map<String, Long> getFailures() {
+        return sums(failures);
+    }
+
+    LatencyHistogram latency(String operation) {
+        return latencies.get(operation);
+    }
+
+    private static Map<String, Long> sums(Map<String, LongAdder> counters) {
+        Map<String, Long> sums = new TreeMap<>();
+        counters.forEach((operation, counter) -> sums.put(operation, counter.sum()));
+        return sums;
+    }
+
+    private static String operationOf(Request<?> request) {
+        if (request.getOriginalRequest() == null) {
+            return "Unknown";
+        }
+        String name = request.getOriginalRequest().getClass().getSimpleName();
+        return name.endsWith("Request") ? name.substring(0, name.length() - "Request".length()) : name;
+    }
+}
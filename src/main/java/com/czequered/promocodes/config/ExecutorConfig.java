@@ -0,0 +1,61 @@
+package com.czequered.promocodes.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * Executors of the repository calls, in every profile.
+ *
+ * @author Martin Varga
+ */
+@Configuration
+public class ExecutorConfig {
+
+    /**
+     * Pooled connections of the DynamoDB client, see {@link DynamoDBConfig}.
+     */
+    @Value("${aws.dynamodb.max-connections:200}")
+    private int maxConnections;
+
+    /**
+     * Calls of asynchronous requests waiting for a thread of {@link #dynamoDbExecutor()}.
+     */
+    @Value("${aws.dynamodb.queue-capacity:10000}")
+    private int queueCapacity;
+
+    /**
+     * Threads of {@link #maintenanceExecutor()}, each runs one background job at a time.
+     */
+    @Value("${aws.dynamodb.maintenance-threads:2}")
+    private int maintenanceThreads;
+
+    /**
+     * Runs the DynamoDB calls of asynchronous requests while the request threads are released. The SDK client
+     * blocks a thread per call, so there is one thread per pooled connection and no thread waits for a connection.
+     * A call that does not fit into the queue is rejected, the request gets 503.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor dynamoDbExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(maxConnections);
+        executor.setMaxPoolSize(maxConnections);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("dynamodb-");
+        return executor;
+    }
+
+    /**
+     * Runs background jobs, like deleting the codes of deleted games, apart from {@link #dynamoDbExecutor()} so that
+     * they never hold the threads of requests. Jobs wait in the queue while all threads are busy.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor maintenanceExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(maintenanceThreads);
+        executor.setMaxPoolSize(maintenanceThreads);
+        executor.setThreadNamePrefix("maintenance-");
+        return executor;
+    }
+}
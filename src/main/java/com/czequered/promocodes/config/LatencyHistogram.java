@@ -0,0 +1,74 @@
+package com.czequered.promocodes.config;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with fixed, roughly logarithmic buckets. Percentiles are reported as the upper bound
+ * of the bucket they fall into, which is precise enough to tell a slow dependency from a fast one.
+ *
+ * @author Martin Varga
+ */
+class LatencyHistogram {
+    static final long[] BUCKET_BOUNDS_MILLIS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000};
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_BOUNDS_MILLIS.length + 1);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalMillis = new LongAdder();
+    private final LongAccumulator maxMillis = new LongAccumulator(Math::max, 0);
+
+    void record(long millis) {
+        int bucket = 0;
+        while (bucket < BUCKET_BOUNDS_MILLIS.length && millis > BUCKET_BOUNDS_MILLIS[bucket]) {
+            bucket++;
+        }
+        buckets.incrementAndGet(bucket);
+        count.increment();
+        totalMillis.add(millis);
+        maxMillis.accumulate(millis);
+    }
+
+    long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return upper bound of the bucket holding the percentile, the maximum for the last bucket, 0 when empty
+     */
+    long percentile(double percentile) {
+        long total = 0;
+        long[] counts = new long[buckets.length()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(total * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_BOUNDS_MILLIS.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return BUCKET_BOUNDS_MILLIS[i];
+            }
+        }
+        return maxMillis.get();
+    }
+
+    /**
+     * One line summary, e.g. {@code count=12 mean=4ms p50<=5ms p99<=20ms max=17ms}.
+     */
+    @Override
+    public String toString() {
+        long count = getCount();
+        return "count=" + count
+                + " mean=" + (count == 0 ? 0 : totalMillis.sum() / count) + "ms"
+                + " p50<=" + percentile(50) + "ms"
+                + " p90<=" + percentile(90) + "ms"
+                + " p99<=" + percentile(99) + "ms"
+                + " max=" + maxMillis.get() + "ms";
+    }
+}
@@ -0,0 +1,24 @@
+package com.czequered.promocodes.config;
+
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+/**
+ * The local profile runs without AWS, its repositories keep the tables in files.
+ *
+ * @author Martin Varga
+ */
+@Configuration
+@Profile("local")
+public class LocalConfig {
+
+    /**
+     * Gives the repositories the table models of the model classes. It has no client, so it never calls DynamoDB.
+     */
+    @Bean
+    public DynamoDBMapper dynamoDBMapper() {
+        return new DynamoDBMapper(null);
+    }
+}
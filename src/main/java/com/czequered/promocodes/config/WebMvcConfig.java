@@ -1,15 +1,24 @@
 package com.czequered.promocodes.config;
 
 import com.czequered.promocodes.controller.LoginControllerDev;
+import com.czequered.promocodes.security.VerifiedTokenArgumentResolver;
+import com.czequered.promocodes.service.TokenService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.method.support.HandlerMethodArgumentResolver;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurerAdapter;
 
+import java.util.List;
+
 /**
  * @author Martin Varga
  */
@@ -21,6 +30,16 @@ public class WebMvcConfig {
     @Value("${jepice.frontend.url:none}")
     private String corsUrl;
 
+    /**
+     * Streamed responses written at the same time, each holds a thread of {@link #streamingExecutor()} until the
+     * client has read it.
+     */
+    @Value("${jepice.streaming.threads:20}")
+    private int streamingThreads;
+
+    @Value("${jepice.streaming.queue-capacity:100}")
+    private int streamingQueueCapacity;
+
     @Bean
     public WebMvcConfigurer corsConfigurer() {
         return new WebMvcConfigurerAdapter() {
@@ -33,4 +52,38 @@ public class WebMvcConfig {
             }
         };
     }
+
+    /**
+     * Writes streamed responses, like code exports, in place of the default executor of Spring MVC, which starts a
+     * new thread for every one of them. When the queue is full the request is refused with 503.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor streamingExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(streamingThreads);
+        executor.setMaxPoolSize(streamingThreads);
+        executor.setQueueCapacity(streamingQueueCapacity);
+        executor.setThreadNamePrefix("streaming-");
+        return executor;
+    }
+
+    @Bean
+    public WebMvcConfigurer asyncSupportConfigurer(@Qualifier("streamingExecutor") AsyncTaskExecutor executor) {
+        return new WebMvcConfigurerAdapter() {
+            @Override
+            public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+                configurer.setTaskExecutor(executor);
+            }
+        };
+    }
+
+    @Bean
+    public WebMvcConfigurer verifiedTokenConfigurer(TokenService tokenService) {
+        return new WebMvcConfigurerAdapter() {
+            @Override
+            public void addArgumentResolvers(List<HandlerMethodArgumentResolver> argumentResolvers) {
+                argumentResolvers.add(new VerifiedTokenArgumentResolver(tokenService));
+            }
+        };
+    }
 }
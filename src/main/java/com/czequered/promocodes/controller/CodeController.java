@@ -1,110 +1,391 @@
 package com.czequered.promocodes.controller;
 
 import com.czequered.promocodes.model.Code;
+import com.czequered.promocodes.model.CodeImportReport;
+import com.czequered.promocodes.model.Page;
+import com.czequered.promocodes.service.ClockService;
+import com.czequered.promocodes.service.CodeImportService;
 import com.czequered.promocodes.service.CodeService;
 import com.czequered.promocodes.service.GameService;
-import com.czequered.promocodes.service.TokenService;
+import com.czequered.promocodes.service.ShardsChangedException;
+import com.czequered.promocodes.service.VerifiedToken;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.http.HttpEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
-import static com.czequered.promocodes.config.Constants.TOKEN_HEADER;
+import static java.util.concurrent.CompletableFuture.runAsync;
+import static java.util.concurrent.CompletableFuture.supplyAsync;
 import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
 import static org.springframework.web.bind.annotation.RequestMethod.*;
 
 /**
+ * Requests are served asynchronously, the repository calls run on the DynamoDB executor and release the request
+ * thread. Imports read the request body and stay on the request thread.
+ * <p>
+ * Codes are written with the id of the user owning their game. Reads check it against the token after the codes
+ * are read, the Game table is read only when the codes do not tell, i.e. nothing was found or some codes were
+ * written before the owner was stored. Writes check the game first, a code without an owner could be claimed
+ * otherwise.
+ *
  * @author Martin Varga
  */
 @RestController
 @RequestMapping("/api/v1/games/{gameId}/codes")
 public class CodeController {
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int MAX_LOOKUP_SIZE = 100;
+    private static final String NDJSON_VALUE = "application/x-ndjson";
+    private static final String CSV_VALUE = "text/csv";
+
     Logger logger = LoggerFactory.getLogger(CodeController.class);
 
     private CodeService codeService;
-    private TokenService tokenService;
     private GameService gameService;
+    private CodeImportService codeImportService;
+    private ObjectMapper objectMapper;
+    private ClockService clockService;
+    private Executor executor;
 
     @Autowired
-    public CodeController(GameService gameService, CodeService codeService, TokenService tokenService) {
+    public CodeController(GameService gameService, CodeService codeService, CodeImportService codeImportService,
+                          ObjectMapper objectMapper, ClockService clockService,
+                          @Qualifier("dynamoDbExecutor") Executor executor) {
         this.gameService = gameService;
         this.codeService = codeService;
-        this.tokenService = tokenService;
+        this.codeImportService = codeImportService;
+        this.objectMapper = objectMapper;
+        this.clockService = clockService;
+        this.executor = executor;
     }
 
+    /**
+     * Streams all codes of the game as a JSON array while they are read from the repository, the list is never
+     * held in memory. {@code compact=true} turns off indentation.
+     */
     @RequestMapping(value = "/list",
             method = GET,
             produces = APPLICATION_JSON_VALUE)
-    public HttpEntity<List<Code>> list(@RequestHeader(name = TOKEN_HEADER) String token,
-                                       @PathVariable("gameId") String gameId) {
+    public StreamingResponseBody list(VerifiedToken token,
+                                      @PathVariable("gameId") String gameId,
+                                      @RequestParam(name = "compact", defaultValue = "false") boolean compact) {
         logger.debug("Listing all codes for '{}'", gameId);
         checkAccessRights(token, gameId);
-        List<Code> codes = codeService.getCodes(gameId);
-        return new HttpEntity<>(codes);
+        return out -> writeCodes(out, codeService.streamCodes(gameId).filter(code -> !ownedByAnother(token, code)),
+                compact);
     }
 
-    @RequestMapping(value = "/{codeId}",
+    @RequestMapping(value = "/list",
             method = GET,
+            params = "limit",
             produces = APPLICATION_JSON_VALUE)
-    public HttpEntity<Code> getCode(@RequestHeader(name = TOKEN_HEADER) String token,
-                                    @PathVariable("gameId") String gameId,
-                                    @PathVariable("codeId") String code) {
-        checkAccessRights(token, gameId);
-        Code retrieved = codeService.getCode(gameId, code);
-        if (retrieved == null) {
-            throw new CodeNotFoundException();
+    public CompletableFuture<HttpEntity<Page<Code>>> listPage(VerifiedToken token,
+                                                              @PathVariable("gameId") String gameId,
+                                                              @RequestParam("limit") int limit,
+                                                              @RequestParam(name = "next", required = false) String next) {
+        logger.debug("Listing {} codes for '{}'", limit, gameId);
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new InvalidRequestException();
         }
-        return new HttpEntity<>(retrieved);
+        return supplyAsync(() -> {
+            Page<Code> page;
+            try {
+                page = codeService.getCodes(gameId, limit, next);
+            } catch (IllegalArgumentException e) {
+                checkAccessRights(token, gameId);
+                logger.debug("Invalid continuation token '{}'", next);
+                throw new InvalidRequestException();
+            }
+            return new HttpEntity<>(new Page<>(visibleCodes(token, gameId, page.getItems()), page.getNext()));
+        }, executor);
     }
 
-    @RequestMapping(method = POST,
+    /**
+     * Codes that can be redeemed right now, ordered by the end of their validity window.
+     */
+    @RequestMapping(value = "/active",
+            method = GET,
             produces = APPLICATION_JSON_VALUE)
-    public HttpEntity<Code> saveNewCode(@RequestHeader(name = TOKEN_HEADER) String token,
-                                        @RequestBody(required = true) Code code) {
-        checkAccessRights(token, code.getGameId());
-        // consider splitting the service save to create and update and move this logic there
-        Code retrieved = codeService.getCode(code.getGameId(), code.getCodeId());
-        if (retrieved != null) {
+    public CompletableFuture<HttpEntity<List<Code>>> listActive(VerifiedToken token,
+                                                                @PathVariable("gameId") String gameId) {
+        logger.debug("Listing active codes for '{}'", gameId);
+        return supplyAsync(() -> {
+            List<Code> active = codeService.getActiveCodes(gameId, clockService.getClock().instant());
+            return new HttpEntity<>(visibleCodes(token, gameId, active));
+        }, executor);
+    }
+
+    /**
+     * Looks up up to {@value #MAX_LOOKUP_SIZE} codes in one call, {@code ?codeId=A&codeId=B}. The result maps the
+     * requested ids in request order to the codes, {@code null} for codes that do not exist or belong to another
+     * user.
+     */
+    @RequestMapping(method = GET,
+            params = "codeId",
+            produces = APPLICATION_JSON_VALUE)
+    public CompletableFuture<HttpEntity<Map<String, Code>>> getCodes(VerifiedToken token,
+                                                                     @PathVariable("gameId") String gameId,
+                                                                     @RequestParam("codeId") List<String> codeIds) {
+        logger.debug("Looking up {} codes for '{}'", codeIds.size(), gameId);
+        if (codeIds.size() > MAX_LOOKUP_SIZE) {
             throw new InvalidRequestException();
         }
-        Code saved = codeService.saveCode(code);
-        return new HttpEntity<>(saved);
+        return supplyAsync(() -> {
+            Map<String, Code> codes = codeService.getCodes(gameId, codeIds);
+            codes.replaceAll((codeId, code) -> code == null || ownedByAnother(token, code) ? null : code);
+            visibleCodes(token, gameId, codes.values().stream()
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toList()));
+            return new HttpEntity<>(codes);
+        }, executor);
+    }
+
+    /**
+     * The ownership check and the code read run concurrently, so an authorized read takes one round trip. A code
+     * with an owner is authorized by the owner alone without waiting for the check. Otherwise the code is dropped
+     * without being looked at when the check fails, whatever its read returned.
+     */
+    @RequestMapping(value = "/{codeId}",
+            method = GET,
+            produces = APPLICATION_JSON_VALUE)
+    public CompletableFuture<HttpEntity<Code>> getCode(VerifiedToken token,
+                                                       @PathVariable("gameId") String gameId,
+                                                       @PathVariable("codeId") String code) {
+        CompletableFuture<Void> authorized = runAsync(() -> checkAccessRights(token, gameId), executor);
+        CompletableFuture<Code> read = supplyAsync(() -> codeService.getCode(gameId, code), executor);
+        return read.handle((retrieved, failure) -> {
+            if (failure == null && retrieved != null && retrieved.getOwnerId() != null) {
+                checkAccessRights(token, gameId, Collections.singletonList(retrieved));
+                return read;
+            }
+            return authorized.thenCompose(ignored -> read);
+        }).thenCompose(Function.identity()).thenApply(retrieved -> {
+            if (retrieved == null) {
+                throw new CodeNotFoundException();
+            }
+            return new HttpEntity<>(retrieved);
+        });
+    }
+
+    @RequestMapping(method = POST,
+            produces = APPLICATION_JSON_VALUE)
+    public CompletableFuture<HttpEntity<Code>> saveNewCode(VerifiedToken token,
+                                                           @RequestBody(required = true) Code code) {
+        checkShards(code);
+        return supplyAsync(() -> {
+            checkAccessRights(token, code.getGameId());
+            code.setOwnerId(token.getUserId());
+            Code saved = codeService.createCode(code);
+            if (saved == null) {
+                throw new InvalidRequestException();
+            }
+            checkNotDeleted(token, code.getGameId(),
+                    () -> codeService.deleteCode(code.getGameId(), code.getCodeId(), token.getUserId()));
+            return new HttpEntity<>(saved);
+        }, executor);
     }
 
     @RequestMapping(method = PUT,
             produces = APPLICATION_JSON_VALUE)
-    public HttpEntity<Code> saveExistingCode(@RequestHeader(name = TOKEN_HEADER) String token,
-                                             @RequestBody(required = true) Code code) {
-        checkAccessRights(token, code.getGameId());
-        // consider splitting the service save to create and update and move this logic there
-        Code retrieved = codeService.getCode(code.getGameId(), code.getCodeId());
-        if (retrieved == null) {
+    public CompletableFuture<HttpEntity<Code>> saveExistingCode(VerifiedToken token,
+                                                                @RequestBody(required = true) Code code) {
+        checkShards(code);
+        return supplyAsync(() -> {
+            checkAccessRights(token, code.getGameId());
+            code.setOwnerId(token.getUserId());
+            Code saved;
+            try {
+                saved = codeService.updateCode(code);
+            } catch (ShardsChangedException e) {
+                logger.debug(e.getMessage());
+                throw new ShardsConflictException();
+            }
+            if (saved == null) {
+                throw new InvalidRequestException();
+            }
+            return new HttpEntity<>(saved);
+        }, executor);
+    }
+
+    /**
+     * Imports codes from a newline delimited JSON body, existing codes are replaced but keep their redemption count.
+     * Rows that cannot be imported are listed in the report, the rest of the body is still imported.
+     */
+    @RequestMapping(value = "/import",
+            method = POST,
+            consumes = NDJSON_VALUE,
+            produces = APPLICATION_JSON_VALUE)
+    public HttpEntity<CodeImportReport> importNdjson(VerifiedToken token,
+                                                     @PathVariable("gameId") String gameId,
+                                                     InputStream body) throws IOException {
+        logger.debug("Importing JSON codes for '{}'", gameId);
+        checkAccessRights(token, gameId);
+        CodeImportReport report = codeImportService.importNdjson(gameId, token.getUserId(), utf8(body));
+        checkNotDeleted(token, gameId, () -> codeService.deleteCodes(gameId, token.getUserId(), deleted -> { }));
+        return new HttpEntity<>(report);
+    }
+
+    /**
+     * Same as {@link #importNdjson} for a CSV body with a header line.
+     */
+    @RequestMapping(value = "/import",
+            method = POST,
+            consumes = CSV_VALUE,
+            produces = APPLICATION_JSON_VALUE)
+    public HttpEntity<CodeImportReport> importCsv(VerifiedToken token,
+                                                  @PathVariable("gameId") String gameId,
+                                                  InputStream body) throws IOException {
+        logger.debug("Importing CSV codes for '{}'", gameId);
+        checkAccessRights(token, gameId);
+        CodeImportReport report;
+        try {
+            report = codeImportService.importCsv(gameId, token.getUserId(), utf8(body));
+        } catch (IllegalArgumentException e) {
+            logger.debug("Invalid CSV header: {}", e.getMessage());
             throw new InvalidRequestException();
         }
-        Code saved = codeService.saveCode(code);
-        return new HttpEntity<>(saved);
+        checkNotDeleted(token, gameId, () -> codeService.deleteCodes(gameId, token.getUserId(), deleted -> { }));
+        return new HttpEntity<>(report);
     }
 
+    /**
+     * Redeems the code once. Fails with 409 when the code does not exist, belongs to another user, is outside its
+     * validity window or has been redeemed {@code maxRedemptions} times.
+     */
+    @RequestMapping(value = "/{codeId}/redeem",
+            method = POST,
+            produces = APPLICATION_JSON_VALUE)
+    public CompletableFuture<HttpEntity<Code>> redeem(VerifiedToken token,
+                                                      @PathVariable("gameId") String gameId,
+                                                      @PathVariable("codeId") String codeId) {
+        logger.debug("Redeeming gameId '{}', codeId '{}'", gameId, codeId);
+        return supplyAsync(() -> {
+            checkAccessRights(token, gameId);
+            Code redeemed = codeService.redeem(gameId, codeId, token.getUserId());
+            if (redeemed == null) {
+                throw new CodeNotRedeemableException();
+            }
+            return new HttpEntity<>(redeemed);
+        }, executor);
+    }
+
+    /**
+     * Fails with 403 when the code belongs to another user.
+     */
     @RequestMapping(value = "/{codeId}",
             method = DELETE,
             produces = APPLICATION_JSON_VALUE)
-    public HttpEntity deleteCode(@RequestHeader(name = TOKEN_HEADER) String token,
-                                 @PathVariable("gameId") String gameId,
-                                 @PathVariable("codeId") String codeId) {
+    public CompletableFuture<HttpEntity<?>> deleteCode(VerifiedToken token,
+                                                       @PathVariable("gameId") String gameId,
+                                                       @PathVariable("codeId") String codeId) {
         logger.debug("Deleting gameId '{}', codeId '{}'", gameId, codeId);
-        checkAccessRights(token, gameId);
-        codeService.deleteCode(gameId, codeId);
-        return HttpEntity.EMPTY;
+        return supplyAsync(() -> {
+            checkAccessRights(token, gameId);
+            if (!codeService.deleteCode(gameId, codeId, token.getUserId())) {
+                logger.debug("Code '{}' of gameId '{}' belongs to another user", codeId, gameId);
+                throw new AccessForbiddenException();
+            }
+            return HttpEntity.EMPTY;
+        }, executor);
+    }
+
+
+    private void writeCodes(OutputStream out, Stream<Code> codes, boolean compact) throws IOException {
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            if (!compact && objectMapper.isEnabled(SerializationFeature.INDENT_OUTPUT)) {
+                generator.useDefaultPrettyPrinter();
+            }
+            generator.writeStartArray();
+            Iterator<Code> iterator = codes.iterator();
+            while (iterator.hasNext()) {
+                generator.writeObject(iterator.next());
+            }
+            generator.writeEndArray();
+        }
+    }
+
+    private void checkShards(Code code) {
+        if (code.getShards() != null && code.getShards() > Code.MAX_SHARDS) {
+            logger.debug("Code '{}' has {} shards", code.getCodeId(), code.getShards());
+            throw new InvalidRequestException();
+        }
+    }
+
+    private Reader utf8(InputStream body) {
+        return new InputStreamReader(body, StandardCharsets.UTF_8);
     }
 
+    /**
+     * Checks the owner stored on codes read from the game, the game is checked only when no code was read or some
+     * have no owner.
+     */
+    private void checkAccessRights(VerifiedToken token, String gameId, Collection<Code> codes) {
+        if (codes.stream().anyMatch(code -> ownedByAnother(token, code))) {
+            logger.debug("Access forbidden to codes of gameId '{}', for userId: '{}'", gameId, token.getUserId());
+            throw new AccessForbiddenException();
+        }
+        if (codes.isEmpty() || codes.stream().anyMatch(code -> code.getOwnerId() == null)) {
+            checkAccessRights(token, gameId);
+        }
+    }
+
+    /**
+     * Leaves out the codes of another user, so that one of them cannot fail a whole listing, and checks the
+     * access rights to the rest like {@link #checkAccessRights(VerifiedToken, String, Collection)}.
+     */
+    private List<Code> visibleCodes(VerifiedToken token, String gameId, Collection<Code> codes) {
+        List<Code> visible = codes.stream()
+                .filter(code -> !ownedByAnother(token, code))
+                .collect(Collectors.toList());
+        checkAccessRights(token, gameId, visible);
+        return visible;
+    }
+
+    private static boolean ownedByAnother(VerifiedToken token, Code code) {
+        return code.getOwnerId() != null && !code.getOwnerId().equals(token.getUserId());
+    }
+
+    /**
+     * The access check before a write may be answered from a cache that has not seen the deletion of the game
+     * started on another instance. The deletion would miss codes written after it read them, so the game is read
+     * again after the write and the writer undoes its write when the game is gone. A deletion started after this
+     * read finds the written codes.
+     */
+    private void checkNotDeleted(VerifiedToken token, String gameId, Runnable undo) {
+        if (!gameService.isOwner(token.getUserId(), gameId, true)) {
+            logger.debug("Game '{}' was deleted while its codes were written", gameId);
+            undo.run();
+            throw new AccessForbiddenException();
+        }
+    }
 
-    private void checkAccessRights(String token, String gameId) {
-        String userIdFromToken = tokenService.getUserIdFromToken(token);
-        if (gameService.getGame(userIdFromToken, gameId) == null) {
-            logger.debug("Access forbidden to gameId '{}', for token: '{}'", gameId, token);
+    private void checkAccessRights(VerifiedToken token, String gameId) {
+        if (!gameService.isOwner(token.getUserId(), gameId)) {
+            logger.debug("Access forbidden to gameId '{}', for userId: '{}'", gameId, token.getUserId());
             throw new AccessForbiddenException();
         }
     }
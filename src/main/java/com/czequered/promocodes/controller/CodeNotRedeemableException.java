@@ -0,0 +1,11 @@
+package com.czequered.promocodes.controller;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * @author Martin Varga
+ */
+@ResponseStatus(value = HttpStatus.CONFLICT, reason = "The code does not exist, is not valid now or has been used up.")
+public class CodeNotRedeemableException extends RuntimeException {
+}
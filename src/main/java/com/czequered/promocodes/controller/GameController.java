@@ -2,21 +2,29 @@ package com.czequered.promocodes.controller;
 
 import com.czequered.promocodes.model.Game;
 import com.czequered.promocodes.service.GameService;
-import com.czequered.promocodes.service.TokenService;
+import com.czequered.promocodes.service.VerifiedToken;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
-import static com.czequered.promocodes.config.Constants.TOKEN_HEADER;
+import static java.util.concurrent.CompletableFuture.supplyAsync;
 import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
 import static org.springframework.web.bind.annotation.RequestMethod.*;
 
 /**
+ * Requests are served asynchronously, the repository calls run on the DynamoDB executor and release the request
+ * thread.
+ *
  * @author Martin Varga
  */
 @RestController
@@ -26,67 +34,76 @@ public class GameController {
     Logger logger = LoggerFactory.getLogger(GameController.class);
 
     private GameService gameService;
-
-    private TokenService tokenService;
+    private Executor executor;
 
     @Autowired
-    public GameController(GameService gameService, TokenService tokenService) {
+    public GameController(GameService gameService, @Qualifier("dynamoDbExecutor") Executor executor) {
         this.gameService = gameService;
-        this.tokenService = tokenService;
+        this.executor = executor;
     }
 
     @RequestMapping(value = "/list",
         method = GET,
         produces = APPLICATION_JSON_VALUE)
-    public HttpEntity<List<Game>> list(@RequestHeader(name = TOKEN_HEADER) String token) {
+    public CompletableFuture<HttpEntity<List<Game>>> list(VerifiedToken token) {
         logger.debug("Listing all games");
-        String userIdFromToken = tokenService.getUserIdFromToken(token);
-        List<Game> games = gameService.getGames(userIdFromToken);
-        return new HttpEntity<>(games);
+        String userIdFromToken = token.getUserId();
+        return supplyAsync(() -> new HttpEntity<>(gameService.getGames(userIdFromToken)), executor);
     }
 
     @RequestMapping(value = "/{gameId}",
         method = GET,
             produces = APPLICATION_JSON_VALUE)
-    public HttpEntity<Game> getGame(@RequestHeader(name = TOKEN_HEADER) String token,
-                                    @PathVariable("gameId") String gameId) {
-        String userIdFromToken = tokenService.getUserIdFromToken(token);
-        Game game = gameService.getGame(userIdFromToken, gameId);
-        if (game == null) {
-            throw new GameNotFoundException();
-        }
-        return new HttpEntity<>(game);
+    public CompletableFuture<HttpEntity<Game>> getGame(VerifiedToken token,
+                                                       @PathVariable("gameId") String gameId) {
+        String userIdFromToken = token.getUserId();
+        return supplyAsync(() -> {
+            Game game = gameService.getGame(userIdFromToken, gameId);
+            if (game == null) {
+                throw new GameNotFoundException();
+            }
+            return new HttpEntity<>(game);
+        }, executor);
     }
 
     @RequestMapping(method = POST,
         produces = APPLICATION_JSON_VALUE)
-    public HttpEntity<Game> saveNewGame(@RequestHeader(name = TOKEN_HEADER) String token,
-                                        @RequestBody(required = true) Game game) {
-        if (game.getGameId() != null || !Objects.equals(tokenService.getUserIdFromToken(token), game.getUserId())) {
+    public CompletableFuture<HttpEntity<Game>> saveNewGame(VerifiedToken token,
+                                                           @RequestBody(required = true) Game game) {
+        if (game.getGameId() != null || !Objects.equals(token.getUserId(), game.getUserId())) {
             throw new InvalidRequestException();
         }
-        Game saveGame = gameService.saveGame(game);
-        return new HttpEntity<>(saveGame);
+        return supplyAsync(() -> new HttpEntity<>(gameService.saveGame(game)), executor);
     }
 
     @RequestMapping(method = PUT,
         produces = APPLICATION_JSON_VALUE)
-    public HttpEntity<Game> saveExistingGame(@RequestHeader(name = TOKEN_HEADER) String token,
-                                             @RequestBody(required = true) Game game) {
-        if (game.getGameId() == null || !Objects.equals(tokenService.getUserIdFromToken(token), game.getUserId())) {
+    public CompletableFuture<HttpEntity<Game>> saveExistingGame(VerifiedToken token,
+                                                                @RequestBody(required = true) Game game) {
+        if (game.getGameId() == null || !Objects.equals(token.getUserId(), game.getUserId())) {
             throw new InvalidRequestException();
         }
-        Game saveGame = gameService.saveGame(game);
-        return new HttpEntity<>(saveGame);
+        return supplyAsync(() -> {
+            Game saved = gameService.saveGame(game);
+            if (saved == null) {
+                throw new GameNotFoundException();
+            }
+            return new HttpEntity<>(saved);
+        }, executor);
     }
 
+    /**
+     * Answers 202 once the game is gone for the user, its codes are still being deleted.
+     */
     @RequestMapping(value = "/{gameId}",
             method = DELETE,
             produces = APPLICATION_JSON_VALUE)
-    public HttpEntity deleteGame(@RequestHeader(name = TOKEN_HEADER) String token,
-                                 @PathVariable("gameId") String gameId) {
-        String userIdFromToken = tokenService.getUserIdFromToken(token);
-        gameService.deleteGame(userIdFromToken, gameId);
-        return HttpEntity.EMPTY;
+    public CompletableFuture<HttpEntity<?>> deleteGame(VerifiedToken token,
+                                                       @PathVariable("gameId") String gameId) {
+        String userIdFromToken = token.getUserId();
+        return supplyAsync(() -> {
+            gameService.deleteGame(userIdFromToken, gameId);
+            return new ResponseEntity<>(HttpStatus.ACCEPTED);
+        }, executor);
     }
 }
@@ -0,0 +1,49 @@
+package com.czequered.promocodes.controller;
+
+import com.czequered.promocodes.model.Code;
+import com.czequered.promocodes.service.CodeService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpEntity;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
+import static org.springframework.web.bind.annotation.RequestMethod.GET;
+
+/**
+ * Read-only lookup of public codes for end users, no token is required.
+ *
+ * @author Martin Varga
+ */
+@RestController
+@RequestMapping("/api/v1/public/games/{gameId}/codes")
+public class PublicCodeController {
+
+    Logger logger = LoggerFactory.getLogger(PublicCodeController.class);
+
+    private CodeService codeService;
+
+    @Autowired
+    public PublicCodeController(CodeService codeService) {
+        this.codeService = codeService;
+    }
+
+    /**
+     * Private codes are reported as not found, so they cannot be told apart from missing ones.
+     */
+    @RequestMapping(value = "/{codeId}",
+            method = GET,
+            produces = APPLICATION_JSON_VALUE)
+    public HttpEntity<Code> getCode(@PathVariable("gameId") String gameId,
+                                    @PathVariable("codeId") String codeId) {
+        logger.debug("Public lookup of code '{}' of '{}'", codeId, gameId);
+        Code code = codeService.getPublicCode(gameId, codeId);
+        if (code == null) {
+            throw new CodeNotFoundException();
+        }
+        return new HttpEntity<>(code);
+    }
+}
@@ -0,0 +1,11 @@
+package com.czequered.promocodes.controller;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * @author Martin Varga
+ */
+@ResponseStatus(value = HttpStatus.CONFLICT, reason = "The number of shards of an existing code cannot be changed.")
+public class ShardsConflictException extends RuntimeException {
+}
@@ -0,0 +1,37 @@
+package com.czequered.promocodes.controller;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+
+/**
+ * A request whose work does not fit into the queue of a bounded executor is refused with 503 and a Retry-After
+ * header, so that clients back off instead of treating the overload as a server error.
+ *
+ * @author Martin Varga
+ */
+@ControllerAdvice
+public class TaskRejectedExceptionHandler {
+
+    Logger logger = LoggerFactory.getLogger(TaskRejectedExceptionHandler.class);
+
+    private final long retryAfterSeconds;
+
+    public TaskRejectedExceptionHandler(@Value("${jepice.overload.retry-after:1}") long retryAfterSeconds) {
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    @ExceptionHandler(TaskRejectedException.class)
+    public ResponseEntity<Void> rejected(TaskRejectedException e) {
+        logger.warn("Request refused, executor is full: {}", e.getMessage());
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RETRY_AFTER, Long.toString(retryAfterSeconds));
+        return new ResponseEntity<>(headers, HttpStatus.SERVICE_UNAVAILABLE);
+    }
+}
@@ -1,23 +1,28 @@
 package com.czequered.promocodes.controller;
 
 import com.czequered.promocodes.model.User;
-import com.czequered.promocodes.service.TokenService;
+import com.czequered.promocodes.service.VerifiedToken;
 import com.czequered.promocodes.service.UserService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.http.HttpEntity;
 import org.springframework.web.bind.annotation.RequestBody;
-import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
-import static com.czequered.promocodes.config.Constants.TOKEN_HEADER;
+import static java.util.concurrent.CompletableFuture.supplyAsync;
 import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
 import static org.springframework.web.bind.annotation.RequestMethod.GET;
 import static org.springframework.web.bind.annotation.RequestMethod.PUT;
 
 /**
+ * Requests are served asynchronously, the repository calls run on the DynamoDB executor and release the request
+ * thread.
+ *
  * @author Martin Varga
  */
 @RestController
@@ -25,32 +30,29 @@ import static org.springframework.web.bind.annotation.RequestMethod.PUT;
 public class UserController {
 
     private UserService userService;
-
-    private TokenService tokenService;
+    private Executor executor;
 
     @Autowired
-    public UserController(UserService userService, TokenService tokenService) {
+    public UserController(UserService userService, @Qualifier("dynamoDbExecutor") Executor executor) {
         this.userService = userService;
-        this.tokenService = tokenService;
+        this.executor = executor;
     }
 
     @RequestMapping(method = GET,
             produces = APPLICATION_JSON_VALUE)
-    public HttpEntity<User> getUser(@RequestHeader(TOKEN_HEADER) String token) {
-        String userIdFromToken = tokenService.getUserIdFromToken(token);
-        User user = userService.getUser(userIdFromToken);
-        return new HttpEntity<>(user);
+    public CompletableFuture<HttpEntity<User>> getUser(VerifiedToken token) {
+        String userIdFromToken = token.getUserId();
+        return supplyAsync(() -> new HttpEntity<>(userService.getUser(userIdFromToken)), executor);
     }
 
     @RequestMapping(method = PUT,
             produces = APPLICATION_JSON_VALUE)
-    public HttpEntity<User> saveExistingUser(@RequestHeader(TOKEN_HEADER) String token,
-                                             @RequestBody(required = true) User user) {
-        String userIdFromToken = tokenService.getUserIdFromToken(token);
+    public CompletableFuture<HttpEntity<User>> saveExistingUser(VerifiedToken token,
+                                                                @RequestBody(required = true) User user) {
+        String userIdFromToken = token.getUserId();
         if (!Objects.equals(userIdFromToken, user.getId())) {
             throw new InvalidRequestException();
         }
-        User saved = userService.saveUser(user);
-        return new HttpEntity<>(saved);
+        return supplyAsync(() -> new HttpEntity<>(userService.saveUser(user)), executor);
     }
 }
@@ -2,10 +2,19 @@ package com.czequered.promocodes.model;
 
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBAttribute;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBHashKey;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBIgnore;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBIndexRangeKey;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBRangeKey;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBTable;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBTypeConverted;
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
 
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
 import java.util.Objects;
 
 /**
@@ -14,12 +23,26 @@ import java.util.Objects;
 @JsonIgnoreProperties(ignoreUnknown = true)
 @DynamoDBTable(tableName = "Code")
 public class Code {
+    public static final String EXPIRES_AT_INDEX = "expiresAt-index";
+
+    /**
+     * Every redemption and read of a sharded code touches each of its shards, so their number is limited.
+     */
+    public static final int MAX_SHARDS = 100;
+
     private String gameId;
     private String codeId;
-    private String from;
-    private String to;
+    private Instant from;
+    private Instant to;
+    private String legacyFrom;
+    private String legacyTo;
+    private boolean expiresAtStored;
     private Boolean pub;
     private String payload;
+    private Integer maxRedemptions;
+    private Integer redeemed;
+    private Integer shards;
+    private String ownerId;
 
     /**
      * For mapper
@@ -32,6 +55,22 @@ public class Code {
         this.codeId = codeId;
     }
 
+    public Code(Code other) {
+        this.gameId = other.gameId;
+        this.codeId = other.codeId;
+        this.from = other.from;
+        this.to = other.to;
+        this.legacyFrom = other.legacyFrom;
+        this.legacyTo = other.legacyTo;
+        this.expiresAtStored = other.expiresAtStored;
+        this.pub = other.pub;
+        this.payload = other.payload;
+        this.maxRedemptions = other.maxRedemptions;
+        this.redeemed = other.redeemed;
+        this.shards = other.shards;
+        this.ownerId = other.ownerId;
+    }
+
     @DynamoDBHashKey(attributeName = "gameId")
     public String getGameId() {
         return gameId;
@@ -50,24 +89,109 @@ public class Code {
         this.codeId = codeId;
     }
 
-    @DynamoDBAttribute(attributeName = "from")
-    public String getFrom() {
+    /**
+     * Start of the validity window, inclusive, {@code null} for no start. Stored as epoch millis.
+     */
+    @JsonFormat(shape = JsonFormat.Shape.STRING)
+    @DynamoDBTypeConverted(converter = InstantConverter.class)
+    @DynamoDBAttribute(attributeName = "validFrom")
+    public Instant getFrom() {
         return from;
     }
 
-    public void setFrom(String from) {
+    public void setFrom(Instant from) {
         this.from = from;
     }
 
-    @DynamoDBAttribute(attributeName = "to")
-    public String getTo() {
+    /**
+     * End of the validity window, inclusive, {@code null} for no end. Stored as epoch millis.
+     */
+    @JsonFormat(shape = JsonFormat.Shape.STRING)
+    @DynamoDBTypeConverted(converter = InstantConverter.class)
+    @DynamoDBAttribute(attributeName = "validTo")
+    public Instant getTo() {
         return to;
     }
 
-    public void setTo(String to) {
+    public void setTo(Instant to) {
         this.to = to;
     }
 
+    /**
+     * End of the window as epoch millis, {@link Long#MAX_VALUE} when the code never expires so that every code is in
+     * the {@value #EXPIRES_AT_INDEX}. Derived from {@link #getTo()}.
+     */
+    @JsonIgnore
+    @DynamoDBIndexRangeKey(localSecondaryIndexName = EXPIRES_AT_INDEX, attributeName = "expiresAt")
+    public Long getExpiresAt() {
+        return to == null ? Long.MAX_VALUE : to.toEpochMilli();
+    }
+
+    /**
+     * Only records that the item has the attribute, the value is derived.
+     */
+    @JsonIgnore
+    public void setExpiresAt(Long expiresAt) {
+        this.expiresAtStored = expiresAt != null;
+    }
+
+    /**
+     * ISO-8601 start the code was stored with before the window became numeric, read into {@link #getFrom()}.
+     * Written back only while it could not be parsed, so any write of the code migrates it.
+     */
+    @JsonIgnore
+    @DynamoDBAttribute(attributeName = "from")
+    public String getLegacyFrom() {
+        return from == null ? legacyFrom : null;
+    }
+
+    @JsonIgnore
+    public void setLegacyFrom(String legacyFrom) {
+        this.legacyFrom = legacyFrom;
+        if (from == null) {
+            from = parseLegacy(legacyFrom);
+        }
+    }
+
+    /**
+     * @see #getLegacyFrom()
+     */
+    @JsonIgnore
+    @DynamoDBAttribute(attributeName = "to")
+    public String getLegacyTo() {
+        return to == null ? legacyTo : null;
+    }
+
+    @JsonIgnore
+    public void setLegacyTo(String legacyTo) {
+        this.legacyTo = legacyTo;
+        if (to == null) {
+            to = parseLegacy(legacyTo);
+        }
+    }
+
+    /**
+     * Whether the code was read with a legacy string window that has been parsed but not stored as numbers yet.
+     */
+    public boolean hasLegacyWindow() {
+        return (legacyFrom != null && from != null) || (legacyTo != null && to != null);
+    }
+
+    /**
+     * Whether the code was read from an item written before the window became numeric and indexed, which is not
+     * found by queries of the {@value #EXPIRES_AT_INDEX} until it is migrated.
+     */
+    public boolean needsMigration() {
+        return hasLegacyWindow() || !expiresAtStored;
+    }
+
+    /**
+     * Whether the given moment lies inside the validity window, both ends inclusive.
+     */
+    public boolean isValidAt(long epochMilli) {
+        return (from == null || from.toEpochMilli() <= epochMilli) && (to == null || to.toEpochMilli() >= epochMilli);
+    }
+
     @DynamoDBAttribute(attributeName = "pub")
     public Boolean getPub() {
         return pub;
@@ -86,6 +210,89 @@ public class Code {
         this.payload = payload;
     }
 
+    /**
+     * How many times the code can be redeemed, {@code null} for no limit.
+     */
+    @DynamoDBAttribute(attributeName = "maxRedemptions")
+    public Integer getMaxRedemptions() {
+        return maxRedemptions;
+    }
+
+    public void setMaxRedemptions(Integer maxRedemptions) {
+        this.maxRedemptions = maxRedemptions;
+    }
+
+    /**
+     * How many times the code has been redeemed, maintained by the redemption only.
+     */
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    @DynamoDBAttribute(attributeName = "redeemed")
+    public Integer getRedeemed() {
+        return redeemed;
+    }
+
+    public void setRedeemed(Integer redeemed) {
+        this.redeemed = redeemed;
+    }
+
+    /**
+     * Number of counter shards the redemptions are spread over, {@code null} or 1 to count on the code itself.
+     * Meant for heavily shared public codes, set it when the code is created. It cannot be changed afterwards, the
+     * counts and limits of the shards would no longer add up. At most {@value #MAX_SHARDS}.
+     */
+    @DynamoDBAttribute(attributeName = "shards")
+    public Integer getShards() {
+        return shards;
+    }
+
+    public void setShards(Integer shards) {
+        this.shards = shards;
+    }
+
+    /**
+     * User owning the game, a copy of the Game item's key so that access to the code can be checked without reading
+     * the Game table. Set by the server from the token, {@code null} for codes written before it was stored.
+     */
+    @JsonIgnore
+    @DynamoDBAttribute(attributeName = "ownerId")
+    public String getOwnerId() {
+        return ownerId;
+    }
+
+    @JsonIgnore
+    public void setOwnerId(String ownerId) {
+        this.ownerId = ownerId;
+    }
+
+    @JsonIgnore
+    @DynamoDBIgnore
+    public boolean isSharded() {
+        return shards != null && shards > 1;
+    }
+
+    /**
+     * Number of counters the redemptions are counted on, 1 when they are counted on the code itself.
+     */
+    @JsonIgnore
+    @DynamoDBIgnore
+    public int getShardCount() {
+        return isSharded() ? shards : 1;
+    }
+
+    /**
+     * Legacy values were not validated, the unparseable ones stay unmigrated and are only compared by DynamoDB.
+     */
+    private static Instant parseLegacy(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return DateTimeFormatter.ISO_OFFSET_DATE_TIME.parse(value, Instant::from);
+        } catch (DateTimeException e) {
+            return null;
+        }
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) {
@@ -0,0 +1,36 @@
+package com.czequered.promocodes.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Per-row result of a bulk code import, rows are in the order of the input.
+ *
+ * @author Martin Varga
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class CodeImportReport {
+    private List<CodeImportRow> rows = new ArrayList<>();
+
+    public List<CodeImportRow> getRows() {
+        return rows;
+    }
+
+    public void setRows(List<CodeImportRow> rows) {
+        this.rows = rows;
+    }
+
+    public void addRow(CodeImportRow row) {
+        rows.add(row);
+    }
+
+    public long getImported() {
+        return rows.stream().filter(r -> r.getStatus() == CodeImportRow.Status.IMPORTED).count();
+    }
+
+    public long getRejected() {
+        return rows.size() - getImported();
+    }
+}
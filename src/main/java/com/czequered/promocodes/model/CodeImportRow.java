@@ -0,0 +1,62 @@
+package com.czequered.promocodes.model;
+
+/**
+ * Outcome of importing a single row of a bulk code import.
+ *
+ * @author Martin Varga
+ */
+public class CodeImportRow {
+    public enum Status {
+        IMPORTED, INVALID, FAILED
+    }
+
+    private int line;
+    private String codeId;
+    private Status status;
+    private String reason;
+
+    /**
+     * For Jackson
+     */
+    public CodeImportRow() {
+    }
+
+    public CodeImportRow(int line, String codeId, Status status, String reason) {
+        this.line = line;
+        this.codeId = codeId;
+        this.status = status;
+        this.reason = reason;
+    }
+
+    public int getLine() {
+        return line;
+    }
+
+    public void setLine(int line) {
+        this.line = line;
+    }
+
+    public String getCodeId() {
+        return codeId;
+    }
+
+    public void setCodeId(String codeId) {
+        this.codeId = codeId;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    public void setReason(String reason) {
+        this.reason = reason;
+    }
+}
@@ -2,8 +2,11 @@ package com.czequered.promocodes.model;
 
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBAttribute;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBHashKey;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBIgnore;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBIndexHashKey;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBRangeKey;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBTable;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 
 import java.util.HashMap;
@@ -16,9 +19,13 @@ import java.util.Objects;
 @JsonIgnoreProperties(ignoreUnknown = true)
 @DynamoDBTable(tableName = "Game")
 public class Game {
+    public static final String DELETIONS_INDEX = "deletion-index";
+    public static final String PENDING_DELETION = "pending";
+
     private String userId;
     private String gameId;
     private Map<String, String> attributes;
+    private Long deletedAt;
 
     public Game() {
     }
@@ -28,6 +35,13 @@ public class Game {
         this.gameId = gameId;
     }
 
+    public Game(Game other) {
+        this.userId = other.userId;
+        this.gameId = other.gameId;
+        this.attributes = other.attributes == null ? null : new HashMap<>(other.attributes);
+        this.deletedAt = other.deletedAt;
+    }
+
     @DynamoDBHashKey(attributeName = "userId")
     public String getUserId() {
         return userId;
@@ -55,6 +69,44 @@ public class Game {
         this.attributes = attributes;
     }
 
+    /**
+     * When the deletion of the game started as epoch millis, {@code null} for a live game. The item stays as a
+     * tombstone until all its codes are deleted.
+     */
+    @JsonIgnore
+    @DynamoDBAttribute(attributeName = "deletedAt")
+    public Long getDeletedAt() {
+        return deletedAt;
+    }
+
+    @JsonIgnore
+    public void setDeletedAt(Long deletedAt) {
+        this.deletedAt = deletedAt;
+    }
+
+    @JsonIgnore
+    @DynamoDBIgnore
+    public boolean isDeleted() {
+        return deletedAt != null;
+    }
+
+    /**
+     * Hash key of the sparse {@value #DELETIONS_INDEX}, present only while the game is being deleted so that the
+     * index holds just the tombstones. Derived from {@link #getDeletedAt()}.
+     */
+    @JsonIgnore
+    @DynamoDBIndexHashKey(globalSecondaryIndexName = DELETIONS_INDEX, attributeName = "deletion")
+    public String getDeletion() {
+        return deletedAt == null ? null : PENDING_DELETION;
+    }
+
+    /**
+     * The value is derived.
+     */
+    @JsonIgnore
+    public void setDeletion(String deletion) {
+    }
+
     public void addAttribute(String key, String value) {
         if (attributes == null) {
             attributes = new HashMap<>();
@@ -0,0 +1,23 @@
+package com.czequered.promocodes.model;
+
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBTypeConverter;
+
+import java.time.Instant;
+
+/**
+ * Stores an {@link Instant} as a number of milliseconds since the epoch, so it can be compared in conditions and
+ * key conditions.
+ *
+ * @author Martin Varga
+ */
+public class InstantConverter implements DynamoDBTypeConverter<Long, Instant> {
+    @Override
+    public Long convert(Instant instant) {
+        return instant.toEpochMilli();
+    }
+
+    @Override
+    public Instant unconvert(Long epochMilli) {
+        return Instant.ofEpochMilli(epochMilli);
+    }
+}
@@ -0,0 +1,59 @@
+package com.czequered.promocodes.model;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * One page of a listing together with an opaque token pointing at the next page.
+ *
+ * @author Martin Varga
+ */
+public class Page<T> {
+    private List<T> items;
+    private String next;
+
+    /**
+     * For Jackson
+     */
+    public Page() {
+    }
+
+    public Page(List<T> items, String next) {
+        this.items = items;
+        this.next = next;
+    }
+
+    public List<T> getItems() {
+        return items;
+    }
+
+    public void setItems(List<T> items) {
+        this.items = items;
+    }
+
+    /**
+     * @return token of the next page, {@code null} when this is the last page
+     */
+    public String getNext() {
+        return next;
+    }
+
+    public void setNext(String next) {
+        this.next = next;
+    }
+
+    /**
+     * Wraps the range key of the last item on a page into a continuation token.
+     */
+    public static String toToken(String lastKey) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(lastKey.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @throws IllegalArgumentException when the token was not produced by {@link #toToken(String)}
+     */
+    public static String fromToken(String token) {
+        return new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,72 @@
+package com.czequered.promocodes.model;
+
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBAttribute;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBHashKey;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBTable;
+
+import java.util.Objects;
+
+/**
+ * One shard of the redemption count of a sharded code. Every shard has its own partition key, so redemptions
+ * spread over {@link Code#getShards()} partitions instead of the single partition of the code.
+ *
+ * @author Martin Varga
+ */
+@DynamoDBTable(tableName = "RedemptionCounter")
+public class RedemptionCounter {
+    private String shardKey;
+    private Integer redeemed;
+
+    /**
+     * For mapper
+     */
+    public RedemptionCounter() {
+    }
+
+    public RedemptionCounter(String gameId, String codeId, int shard) {
+        this.shardKey = shardKey(gameId, codeId, shard);
+    }
+
+    public RedemptionCounter(RedemptionCounter other) {
+        this.shardKey = other.shardKey;
+        this.redeemed = other.redeemed;
+    }
+
+    public static String shardKey(String gameId, String codeId, int shard) {
+        return gameId + "/" + codeId + "/" + shard;
+    }
+
+    @DynamoDBHashKey(attributeName = "shardKey")
+    public String getShardKey() {
+        return shardKey;
+    }
+
+    public void setShardKey(String shardKey) {
+        this.shardKey = shardKey;
+    }
+
+    @DynamoDBAttribute(attributeName = "redeemed")
+    public Integer getRedeemed() {
+        return redeemed;
+    }
+
+    public void setRedeemed(Integer redeemed) {
+        this.redeemed = redeemed;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof RedemptionCounter)) {
+            return false;
+        }
+        return Objects.equals(this.shardKey, ((RedemptionCounter) o).shardKey);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(shardKey);
+    }
+}
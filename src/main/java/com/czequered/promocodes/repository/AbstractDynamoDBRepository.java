@@ -1,17 +1,55 @@
 package com.czequered.promocodes.repository;
 
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper.FailedBatch;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapperConfig;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapperConfig.DefaultBatchWriteRetryStrategy;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapperConfig.PaginationLoadingStrategy;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapperFieldModel;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapperTableModel;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBQueryExpression;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBSaveExpression;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBScanExpression;
+import com.amazonaws.services.dynamodbv2.datamodeling.QueryResultPage;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ComparisonOperator;
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.amazonaws.services.dynamodbv2.model.ExpectedAttributeValue;
+import com.czequered.promocodes.model.Page;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
 /**
  * @author Martin Varga
  */
 public class AbstractDynamoDBRepository<T> {
+    private static final int MAX_BATCH_RETRIES = 8;
+
+    Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final DynamoDBMapperConfig batchWriteConfig = DynamoDBMapperConfig.builder()
+            .withBatchWriteRetryStrategy(new DefaultBatchWriteRetryStrategy(MAX_BATCH_RETRIES))
+            .build();
+
     DynamoDBMapper mapper;
+    Class<T> type;
 
     @Autowired
-    public AbstractDynamoDBRepository(DynamoDBMapper mapper) {
+    public AbstractDynamoDBRepository(DynamoDBMapper mapper, Class<T> type) {
         this.mapper = mapper;
+        this.type = type;
     }
 
     public T save(T item) {
@@ -19,7 +57,170 @@ public class AbstractDynamoDBRepository<T> {
         return item;
     }
 
+    /**
+     * Saves the item only if no item with the same key exists, in one conditional write.
+     *
+     * @return {@code false} when an item with the key already exists
+     */
+    public boolean create(T item) {
+        return saveIfHashKey(item, new ExpectedAttributeValue(false));
+    }
+
+    /**
+     * Saves the item only if an item with the same key exists, in one conditional write.
+     *
+     * @return {@code false} when there is no item with the key
+     */
+    public boolean update(T item) {
+        return saveIfHashKey(item, new ExpectedAttributeValue().withComparisonOperator(ComparisonOperator.NOT_NULL));
+    }
+
+    /**
+     * The hash key attribute is present exactly when an item with the item's key exists.
+     */
+    private boolean saveIfHashKey(T item, ExpectedAttributeValue expected) {
+        String hashKey = mapper.getTableModel(type).hashKey().name();
+        DynamoDBSaveExpression saveExpression = new DynamoDBSaveExpression()
+                .withExpectedEntry(hashKey, expected);
+        try {
+            mapper.save(item, saveExpression);
+            return true;
+        } catch (ConditionalCheckFailedException e) {
+            return false;
+        }
+    }
+
     public void delete(T item) {
         mapper.delete(item);
     }
+
+    /**
+     * Writes the items with BatchWriteItem, 25 items per request. Unprocessed items are retried with exponential
+     * backoff, items still unprocessed after {@value #MAX_BATCH_RETRIES} retries or rejected by DynamoDB are returned.
+     *
+     * @return items that were not written
+     */
+    public List<T> batchSave(List<T> items) {
+        List<FailedBatch> failedBatches = mapper.batchWrite(items, Collections.emptyList(), batchWriteConfig);
+        return unprocessedItems(failedBatches);
+    }
+
+    /**
+     * Deletes the items with BatchWriteItem like {@link #batchSave(List)} writes them, only their keys are used.
+     *
+     * @return items that were not deleted
+     */
+    public List<T> batchDelete(List<T> items) {
+        List<FailedBatch> failedBatches = mapper.batchWrite(Collections.emptyList(), items, batchWriteConfig);
+        return unprocessedItems(failedBatches);
+    }
+
+    /**
+     * Loads items by their keys with BatchGetItem, 100 keys per request. Unprocessed keys are retried by the mapper,
+     * missing items are left out.
+     *
+     * @param keys items with only the key attributes set
+     * @return found items in no particular order
+     */
+    public List<T> batchLoad(List<T> keys) {
+        if (keys.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return mapper.batchLoad(keys).values().stream()
+                .flatMap(List::stream)
+                .map(type::cast)
+                .collect(Collectors.toList());
+    }
+
+    private List<T> unprocessedItems(List<FailedBatch> failedBatches) {
+        List<T> unprocessed = new ArrayList<>();
+        for (FailedBatch failedBatch : failedBatches) {
+            if (failedBatch.getException() != null) {
+                logger.warn("Batch write failed", failedBatch.getException());
+            }
+            failedBatch.getUnprocessedItems().values().stream()
+                    .flatMap(List::stream)
+                    .map(request -> request.getPutRequest() != null
+                            ? request.getPutRequest().getItem()
+                            : request.getDeleteRequest().getKey())
+                    .map(item -> mapper.marshallIntoObject(type, item))
+                    .forEach(unprocessed::add);
+        }
+        return unprocessed;
+    }
+
+    String tableName() {
+        return DynamoDBMapperConfig.DefaultTableNameResolver.INSTANCE.getTableName(type, DynamoDBMapperConfig.DEFAULT);
+    }
+
+    /**
+     * Reads a single partition, only the hash key of {@code hashKeyValues} is used.
+     */
+    List<T> queryByHashKey(T hashKeyValues, boolean consistentRead) {
+        DynamoDBQueryExpression<T> queryExpression = new DynamoDBQueryExpression<T>()
+                .withHashKeyValues(hashKeyValues)
+                .withConsistentRead(consistentRead);
+        return mapper.query(type, queryExpression).stream().collect(Collectors.toList());
+    }
+
+    /**
+     * Lazily reads a single partition, pages are fetched while the stream is consumed and dropped once iterated.
+     * The stream can be consumed only once.
+     */
+    Stream<T> streamByHashKey(T hashKeyValues) {
+        return streamByHashKey(hashKeyValues, false);
+    }
+
+    /**
+     * @param consistentRead {@code true} for a strongly consistent read, {@code false} for an eventually consistent one
+     */
+    Stream<T> streamByHashKey(T hashKeyValues, boolean consistentRead) {
+        DynamoDBQueryExpression<T> queryExpression = new DynamoDBQueryExpression<T>()
+                .withHashKeyValues(hashKeyValues)
+                .withConsistentRead(consistentRead);
+        DynamoDBMapperConfig config = DynamoDBMapperConfig.builder()
+                .withPaginationLoadingStrategy(PaginationLoadingStrategy.ITERATION_ONLY)
+                .build();
+        Iterator<T> iterator = mapper.query(type, queryExpression, config).iterator();
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED), false);
+    }
+
+    /**
+     * Lazily scans the whole table like {@link #streamByHashKey(Object)} reads a partition, meant for maintenance
+     * jobs only.
+     */
+    Stream<T> streamAll() {
+        DynamoDBMapperConfig config = DynamoDBMapperConfig.builder()
+                .withPaginationLoadingStrategy(PaginationLoadingStrategy.ITERATION_ONLY)
+                .build();
+        Iterator<T> iterator = mapper.scan(type, new DynamoDBScanExpression(), config).iterator();
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, 0), false);
+    }
+
+    /**
+     * Reads at most {@code limit} items of a single partition in one round trip. The continuation token wraps
+     * the (string) range key of DynamoDB's LastEvaluatedKey.
+     *
+     * @param next token returned with the previous page, {@code null} for the first page
+     * @throws IllegalArgumentException when {@code next} is not a valid token
+     */
+    Page<T> queryPageByHashKey(T hashKeyValues, int limit, String next) {
+        DynamoDBMapperTableModel<T> model = mapper.getTableModel(type);
+        DynamoDBMapperFieldModel<T, String> rangeKey = model.rangeKey();
+        DynamoDBQueryExpression<T> queryExpression = new DynamoDBQueryExpression<T>()
+                .withHashKeyValues(hashKeyValues)
+                .withConsistentRead(false)
+                .withLimit(limit);
+        if (next != null) {
+            Object hashKey = model.hashKey().get(hashKeyValues);
+            queryExpression.withExclusiveStartKey(model.convertKey(hashKey, Page.fromToken(next)));
+        }
+        QueryResultPage<T> result = mapper.queryPage(type, queryExpression);
+        Map<String, AttributeValue> lastEvaluatedKey = result.getLastEvaluatedKey();
+        String nextToken = null;
+        if (lastEvaluatedKey != null) {
+            nextToken = Page.toToken(rangeKey.unconvert(lastEvaluatedKey.get(rangeKey.name())));
+        }
+        return new Page<>(result.getResults(), nextToken);
+    }
 }
@@ -1,40 +1,117 @@
 package com.czequered.promocodes.repository;
 
-import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
-import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBScanExpression;
-import com.amazonaws.services.dynamodbv2.datamodeling.PaginatedScanList;
-import com.amazonaws.services.dynamodbv2.model.AttributeValue;
 import com.czequered.promocodes.model.Code;
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.stereotype.Component;
+import com.czequered.promocodes.model.Page;
 
-import java.util.HashMap;
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
-import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
+ * Codes keyed by game and code id.
+ *
  * @author Martin Varga
  */
-@Component
-public class CodeRepository extends AbstractDynamoDBRepository<Code> {
-
-    @Autowired
-    public CodeRepository(DynamoDBMapper mapper) {
-        super(mapper);
-    }
-
-    public Code findByGameIdAndCodeId(String gameId, String codeId) {
-        return mapper.load(Code.class, gameId, codeId);
-    }
-
-    public List<Code> findByGameId(String gameId) {
-        Map<String, AttributeValue> eav = new HashMap<>();
-        eav.put(":gameId", new AttributeValue().withS(gameId));
-        DynamoDBScanExpression scanExpression = new DynamoDBScanExpression()
-                .withFilterExpression("gameId = :gameId")
-                .withExpressionAttributeValues(eav);
-        PaginatedScanList<Code> scan = mapper.scan(Code.class, scanExpression);
-        return scan.stream().collect(Collectors.toList());
-    }
+public interface CodeRepository {
+    Code findByGameIdAndCodeId(String gameId, String codeId);
+
+    /**
+     * Looks up several codes of a game at once, missing codes are left out.
+     */
+    List<Code> findByGameIdAndCodeIds(String gameId, Collection<String> codeIds);
+
+    List<Code> findByGameId(String gameId);
+
+    /**
+     * Codes of the game read lazily, the stream can be consumed only once.
+     */
+    Stream<Code> streamByGameId(String gameId);
+
+    /**
+     * @param consistentRead {@code true} to see all completed writes, {@code false} when slightly stale data will do
+     */
+    Stream<Code> streamByGameId(String gameId, boolean consistentRead);
+
+    /**
+     * Codes of the game ordered by code id, at most {@code limit} of them.
+     *
+     * @param next continuation token from the previous page, {@code null} for the first page
+     * @throws IllegalArgumentException when {@code next} is not a valid token
+     */
+    Page<Code> findByGameId(String gameId, int limit, String next);
+
+    /**
+     * Codes of the game whose validity window contains {@code now}, ordered by the end of the window.
+     */
+    List<Code> findActiveByGameId(String gameId, Instant now);
+
+    /**
+     * Migrates the codes of the game stored in an older format.
+     *
+     * @return number of codes migrated
+     */
+    int migrateByGameId(String gameId);
+
+    /**
+     * Stores the owner on the codes of the game written before the owner was stored, codes that have an owner are
+     * left as they are.
+     *
+     * @return number of codes updated
+     */
+    int assignOwnerByGameId(String gameId, String ownerId);
+
+    /**
+     * Creates the code or replaces the existing one like {@link #update(Code)} does, keeping its redemption counter.
+     *
+     * @return the saved code, {@code null} when it exists with another owner or another number of shards
+     */
+    Code save(Code code);
+
+    /**
+     * @return {@code false} when a code with the same key exists
+     */
+    boolean create(Code code);
+
+    /**
+     * Replaces an existing code, its redemption counter is left as it is. A code without an owner keeps the stored
+     * owner, a code with one is written only when the stored code has the same owner or none. The number of shards
+     * has to match the stored code.
+     *
+     * @return {@code false} when there is no code with the key, it belongs to another owner or has another number
+     * of shards
+     */
+    boolean update(Code code);
+
+    void delete(Code code);
+
+    /**
+     * Deletes the code unless it belongs to another owner, a code that does not exist counts as deleted. Its
+     * redemption counter shards are left to the caller.
+     *
+     * @return {@code false} when the code belongs to another owner than {@code ownerId}
+     */
+    boolean delete(Code code, String ownerId);
+
+    /**
+     * Writes the codes in batches, existing codes are replaced as a whole, including their redemption counter.
+     *
+     * @return codes that were not saved
+     */
+    List<Code> batchSave(List<Code> codes);
+
+    /**
+     * Deletes the codes in batches, their redemption counter shards are left to the caller.
+     *
+     * @return codes that were not deleted
+     */
+    List<Code> batchDelete(List<Code> codes);
+
+    /**
+     * Redeems the code once for the user, atomically with respect to other redemptions.
+     *
+     * @return the code after the redemption, {@code null} when it does not exist, belongs to another owner than
+     * {@code userId}, is sharded, {@code now} is outside its validity window or it has no uses left
+     */
+    Code redeem(String gameId, String codeId, String userId, Instant now);
 }
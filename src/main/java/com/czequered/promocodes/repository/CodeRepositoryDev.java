@@ -0,0 +1,33 @@
+package com.czequered.promocodes.repository;
+
+import com.czequered.promocodes.model.Code;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Keeps the codes in memory, starting with a few sample ones.
+ *
+ * @author Martin Varga
+ */
+@Component
+@Profile("dev")
+@Primary
+public class CodeRepositoryDev extends InMemoryCodeRepository {
+    public CodeRepositoryDev() {
+        super(new InMemoryTable<>(Code::getGameId, Code::getCodeId, Code::new));
+        for (int i = 1; i <= 99; i++) {
+            String gameId = "GAME" + (i % 3);
+            String codeId = gameId + "CODE" + i;
+            Code code = new Code(gameId, codeId);
+            code.setFrom(Instant.now().minus(i, ChronoUnit.DAYS));
+            code.setTo(Instant.now().plus(i, ChronoUnit.DAYS));
+            code.setPub(i > 50);
+            code.setPayload("Payload: " + gameId + " - " + codeId);
+            save(code);
+        }
+    }
+}
@@ -0,0 +1,381 @@
+package com.czequered.promocodes.repository;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBDeleteExpression;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapperConfig;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapperConfig.PaginationLoadingStrategy;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapperFieldModel;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapperTableModel;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBQueryExpression;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.amazonaws.services.dynamodbv2.model.ReturnValue;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemRequest;
+import com.czequered.promocodes.model.Code;
+import com.czequered.promocodes.model.Page;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * @author Martin Varga
+ */
+@Component
+@Profile("!local")
+public class CodeRepositoryImpl extends AbstractDynamoDBRepository<Code> implements CodeRepository {
+    private static final String REDEEMED = "redeemed";
+    private static final String EXPIRES_AT = "expiresAt";
+    private static final String OWNER_ID = "ownerId";
+    private static final String SHARDS = "shards";
+
+    /**
+     * Numeric window attributes paired with the legacy ISO-8601 ones they replace.
+     */
+    private static final String[][] WINDOW = {{"validFrom", "from"}, {"validTo", "to"}};
+
+    /**
+     * The code has no owner or belongs to {@code :user}.
+     */
+    private static final String OWNED_BY_USER = "(attribute_not_exists(" + OWNER_ID + ") OR " + OWNER_ID + " = :user)";
+
+    /**
+     * The code exists, belongs to the user, is not sharded, {@code now} is inside its validity window and it has
+     * uses left. Items that were not migrated yet are checked against their legacy window. A sharded code is
+     * counted on its shards, a definition cached before it was sharded must not count it on the item.
+     */
+    private static final String REDEEMABLE = "attribute_exists(codeId)"
+            + " AND " + OWNED_BY_USER
+            + " AND (attribute_not_exists(" + SHARDS + ") OR " + SHARDS + " <= :one)"
+            + " AND (validFrom <= :nowMillis"
+            + " OR (attribute_not_exists(validFrom) AND (attribute_not_exists(#from) OR #from <= :now)))"
+            + " AND (validTo >= :nowMillis"
+            + " OR (attribute_not_exists(validTo) AND (attribute_not_exists(#to) OR #to >= :now)))"
+            + " AND (attribute_not_exists(maxRedemptions)"
+            + " OR (attribute_not_exists(redeemed) AND maxRedemptions > :zero)"
+            + " OR redeemed < maxRedemptions)";
+
+    private AmazonDynamoDB amazonDynamoDB;
+
+    @Autowired
+    public CodeRepositoryImpl(DynamoDBMapper mapper, AmazonDynamoDB amazonDynamoDB) {
+        super(mapper, Code.class);
+        this.amazonDynamoDB = amazonDynamoDB;
+    }
+
+    /**
+     * Migrates the loaded code if it was written before the window became numeric and indexed.
+     */
+    @Override
+    public Code findByGameIdAndCodeId(String gameId, String codeId) {
+        Code code = mapper.load(Code.class, gameId, codeId);
+        if (code != null && code.needsMigration()) {
+            migrate(code);
+        }
+        return code;
+    }
+
+    /**
+     * @see AbstractDynamoDBRepository#batchLoad(List)
+     */
+    @Override
+    public List<Code> findByGameIdAndCodeIds(String gameId, Collection<String> codeIds) {
+        return batchLoad(codeIds.stream()
+                .map(codeId -> new Code(gameId, codeId))
+                .collect(Collectors.toList()));
+    }
+
+    @Override
+    public List<Code> findByGameId(String gameId) {
+        return queryByHashKey(new Code(gameId, null), false);
+    }
+
+    /**
+     * @see AbstractDynamoDBRepository#streamByHashKey(Object)
+     */
+    @Override
+    public Stream<Code> streamByGameId(String gameId) {
+        return streamByGameId(gameId, false);
+    }
+
+    @Override
+    public Stream<Code> streamByGameId(String gameId, boolean consistentRead) {
+        return streamByHashKey(new Code(gameId, null), consistentRead);
+    }
+
+    /**
+     * @see AbstractDynamoDBRepository#queryPageByHashKey(Object, int, String)
+     */
+    @Override
+    public Page<Code> findByGameId(String gameId, int limit, String next) {
+        return queryPageByHashKey(new Code(gameId, null), limit, next);
+    }
+
+    /**
+     * Codes whose validity window has not ended at {@code now} and has started, ordered by expiry. The index key
+     * condition skips the expired codes without reading them, only the codes that have not started yet are read
+     * and filtered out. Codes that still {@link Code#needsMigration() need migration} are not found.
+     */
+    @Override
+    public List<Code> findActiveByGameId(String gameId, Instant now) {
+        DynamoDBMapperConfig config = DynamoDBMapperConfig.builder()
+                .withPaginationLoadingStrategy(PaginationLoadingStrategy.ITERATION_ONLY)
+                .build();
+        List<Code> active = new ArrayList<>();
+        mapper.query(Code.class, activeQuery(gameId, now), config).forEach(active::add);
+        return active;
+    }
+
+    DynamoDBQueryExpression<Code> activeQuery(String gameId, Instant now) {
+        Map<String, AttributeValue> values = new HashMap<>();
+        values.put(":gameId", new AttributeValue(gameId));
+        values.put(":now", new AttributeValue().withN(Long.toString(now.toEpochMilli())));
+        return new DynamoDBQueryExpression<Code>()
+                .withIndexName(Code.EXPIRES_AT_INDEX)
+                .withKeyConditionExpression("gameId = :gameId AND " + EXPIRES_AT + " >= :now")
+                .withFilterExpression("attribute_not_exists(validFrom) OR validFrom <= :now")
+                .withExpressionAttributeValues(values)
+                .withConsistentRead(false);
+    }
+
+    /**
+     * Migrates all codes of the game that were written before the window became numeric and indexed.
+     *
+     * @return number of codes migrated
+     */
+    @Override
+    public int migrateByGameId(String gameId) {
+        int migrated = 0;
+        for (Iterator<Code> codes = streamByGameId(gameId).iterator(); codes.hasNext(); ) {
+            Code code = codes.next();
+            if (code.needsMigration() && migrate(code)) {
+                migrated++;
+            }
+        }
+        return migrated;
+    }
+
+    /**
+     * Stores the owner with one conditional UpdateItem per code that has none, so codes written concurrently with
+     * their owner are not touched.
+     *
+     * @return number of codes updated
+     */
+    @Override
+    public int assignOwnerByGameId(String gameId, String ownerId) {
+        int assigned = 0;
+        for (Iterator<Code> codes = streamByGameId(gameId).iterator(); codes.hasNext(); ) {
+            Code code = codes.next();
+            if (code.getOwnerId() == null && assignOwner(code, ownerId)) {
+                assigned++;
+            }
+        }
+        return assigned;
+    }
+
+    private boolean assignOwner(Code code, String ownerId) {
+        UpdateItemRequest request = new UpdateItemRequest()
+                .withTableName(tableName())
+                .withKey(mapper.getTableModel(Code.class).convertKey(code))
+                .withUpdateExpression("SET " + OWNER_ID + " = :ownerId")
+                .withConditionExpression("attribute_exists(codeId) AND attribute_not_exists(" + OWNER_ID + ")")
+                .withExpressionAttributeValues(Collections.singletonMap(":ownerId", new AttributeValue(ownerId)));
+        try {
+            amazonDynamoDB.updateItem(request);
+            code.setOwnerId(ownerId);
+            return true;
+        } catch (ConditionalCheckFailedException e) {
+            logger.debug("Code {}/{} got an owner or was deleted", code.getGameId(), code.getCodeId());
+            return false;
+        }
+    }
+
+    /**
+     * Writes the code like {@link #update(Code)} does, creating it when it does not exist, so an existing
+     * redemption counter is never reset.
+     *
+     * @return the code, {@code null} when it exists with another owner or another number of shards
+     */
+    @Override
+    public Code save(Code code) {
+        return replace(code, false) ? code : null;
+    }
+
+    /**
+     * Replaces the attributes of an existing code like the mapper's update does, except the redemption counter,
+     * which is left as it is, and the owner, which is only ever added. The owner and the number of shards, which
+     * cannot be changed, are enforced by the condition of the write.
+     */
+    @Override
+    public boolean update(Code code) {
+        return replace(code, true);
+    }
+
+    private boolean replace(Code code, boolean mustExist) {
+        DynamoDBMapperTableModel<Code> model = mapper.getTableModel(Code.class);
+        Map<String, AttributeValue> key = model.convertKey(code);
+        Map<String, AttributeValue> attributes = model.convert(code);
+        Map<String, String> names = new HashMap<>();
+        Map<String, AttributeValue> values = new HashMap<>();
+        List<String> set = new ArrayList<>();
+        List<String> remove = new ArrayList<>();
+        for (DynamoDBMapperFieldModel<Code, Object> field : model.fields()) {
+            String name = field.name();
+            if (key.containsKey(name) || REDEEMED.equals(name)
+                    || (OWNER_ID.equals(name) && !attributes.containsKey(name))) {
+                continue;
+            }
+            names.put("#" + name, name);
+            if (attributes.containsKey(name)) {
+                values.put(":" + name, attributes.get(name));
+                set.add("#" + name + " = :" + name);
+            } else {
+                remove.add("#" + name);
+            }
+        }
+        String updateExpression = (set.isEmpty() ? "" : "SET " + String.join(", ", set))
+                + (remove.isEmpty() ? "" : " REMOVE " + String.join(", ", remove));
+        List<String> conditions = new ArrayList<>();
+        if (mustExist) {
+            conditions.add("attribute_exists(codeId)");
+        }
+        if (attributes.containsKey(OWNER_ID)) {
+            conditions.add("(attribute_not_exists(#" + OWNER_ID + ") OR #" + OWNER_ID + " = :" + OWNER_ID + ")");
+        }
+        if (code.isSharded()) {
+            conditions.add(mustExist ? "#" + SHARDS + " = :" + SHARDS
+                    : "(attribute_not_exists(codeId) OR #" + SHARDS + " = :" + SHARDS + ")");
+        } else {
+            conditions.add("(attribute_not_exists(#" + SHARDS + ") OR #" + SHARDS + " <= :unsharded)");
+            values.put(":unsharded", new AttributeValue().withN("1"));
+        }
+        UpdateItemRequest request = new UpdateItemRequest()
+                .withTableName(tableName())
+                .withKey(key)
+                .withUpdateExpression(updateExpression.trim())
+                .withConditionExpression(String.join(" AND ", conditions))
+                .withExpressionAttributeNames(names)
+                .withExpressionAttributeValues(values.isEmpty() ? null : values);
+        try {
+            amazonDynamoDB.updateItem(request);
+            return true;
+        } catch (ConditionalCheckFailedException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Stores the parsed window as epoch millis, removes the legacy strings and adds the expiry index key. Skipped
+     * when the window was changed in the meantime, a write of the code migrates it anyway. Unparseable legacy
+     * values are left in place.
+     *
+     * @return {@code false} when the code was changed or deleted in the meantime
+     */
+    boolean migrate(Code code) {
+        DynamoDBMapperTableModel<Code> model = mapper.getTableModel(Code.class);
+        Map<String, AttributeValue> attributes = model.convert(code);
+        Map<String, String> names = new HashMap<>();
+        Map<String, AttributeValue> values = new HashMap<>();
+        List<String> set = new ArrayList<>();
+        List<String> remove = new ArrayList<>();
+        List<String> conditions = new ArrayList<>();
+        values.put(":expiresAt", attributes.get(EXPIRES_AT));
+        set.add(EXPIRES_AT + " = :expiresAt");
+        conditions.add("attribute_exists(codeId)");
+        conditions.add("(attribute_not_exists(" + EXPIRES_AT + ") OR " + EXPIRES_AT + " = :expiresAt)");
+        for (String[] pair : WINDOW) {
+            String typed = pair[0];
+            String legacy = pair[1];
+            if (!attributes.containsKey(typed)) {
+                continue;
+            }
+            names.put("#" + legacy, legacy);
+            values.put(":" + typed, attributes.get(typed));
+            set.add(typed + " = :" + typed);
+            remove.add("#" + legacy);
+            conditions.add("(attribute_exists(#" + legacy + ") OR " + typed + " = :" + typed + ")");
+        }
+        UpdateItemRequest request = new UpdateItemRequest()
+                .withTableName(tableName())
+                .withKey(model.convertKey(code))
+                .withUpdateExpression("SET " + String.join(", ", set)
+                        + (remove.isEmpty() ? "" : " REMOVE " + String.join(", ", remove)))
+                .withConditionExpression(String.join(" AND ", conditions))
+                .withExpressionAttributeNames(names.isEmpty() ? null : names)
+                .withExpressionAttributeValues(values);
+        try {
+            amazonDynamoDB.updateItem(request);
+        } catch (ConditionalCheckFailedException e) {
+            logger.debug("Code {}/{} changed before it was migrated", code.getGameId(), code.getCodeId());
+            return false;
+        }
+        if (code.getFrom() != null) {
+            code.setLegacyFrom(null);
+        }
+        if (code.getTo() != null) {
+            code.setLegacyTo(null);
+        }
+        code.setExpiresAt(code.getExpiresAt());
+        return true;
+    }
+
+    /**
+     * Redeems the code once with a single conditional UpdateItem, the counter is incremented by DynamoDB so
+     * concurrent redemptions are never lost or over the limit. The window is compared as epoch millis.
+     *
+     * @return the code after the redemption, {@code null} when it does not exist, belongs to another user,
+     * {@code now} is outside its validity window or it has no uses left
+     */
+    @Override
+    public Code redeem(String gameId, String codeId, String userId, Instant now) {
+        Map<String, String> names = new HashMap<>();
+        names.put("#from", "from");
+        names.put("#to", "to");
+        Map<String, AttributeValue> values = new HashMap<>();
+        values.put(":one", new AttributeValue().withN("1"));
+        values.put(":zero", new AttributeValue().withN("0"));
+        values.put(":now", new AttributeValue(now.toString()));
+        values.put(":nowMillis", new AttributeValue().withN(Long.toString(now.toEpochMilli())));
+        values.put(":user", new AttributeValue(userId));
+        UpdateItemRequest request = new UpdateItemRequest()
+                .withTableName(tableName())
+                .withKey(mapper.getTableModel(Code.class).convertKey(gameId, codeId))
+                .withUpdateExpression("ADD " + REDEEMED + " :one")
+                .withConditionExpression(REDEEMABLE)
+                .withExpressionAttributeNames(names)
+                .withExpressionAttributeValues(values)
+                .withReturnValues(ReturnValue.ALL_NEW);
+        try {
+            return mapper.marshallIntoObject(Code.class, amazonDynamoDB.updateItem(request).getAttributes());
+        } catch (ConditionalCheckFailedException e) {
+            return null;
+        }
+    }
+
+    /**
+     * The owner is checked by the condition of the DeleteItem, a code that does not exist passes it.
+     */
+    @Override
+    public boolean delete(Code code, String ownerId) {
+        DynamoDBDeleteExpression deleteExpression = new DynamoDBDeleteExpression()
+                .withConditionExpression(OWNED_BY_USER)
+                .withExpressionAttributeValues(Collections.singletonMap(":user", new AttributeValue(ownerId)));
+        try {
+            mapper.delete(code, deleteExpression);
+            return true;
+        } catch (ConditionalCheckFailedException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.czequered.promocodes.repository;
+
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.czequered.promocodes.model.Code;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+
+/**
+ * Keeps the codes in a {@link LogStructuredTable} on local disk, for deployments without DynamoDB.
+ *
+ * @author Martin Varga
+ */
+@Component
+@Profile("local")
+@Primary
+public class CodeRepositoryLocal extends InMemoryCodeRepository {
+    private final LogStructuredTable<Code> codes;
+
+    @Autowired
+    public CodeRepositoryLocal(DynamoDBMapper mapper, @Value("${jepice.local.dir:data}") String directory) {
+        this(LogStructuredTable.open(mapper, Code.class, directory));
+    }
+
+    private CodeRepositoryLocal(LogStructuredTable<Code> codes) {
+        super(codes);
+        this.codes = codes;
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        codes.close();
+    }
+}
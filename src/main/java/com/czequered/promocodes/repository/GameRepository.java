@@ -1,39 +1,63 @@
 package com.czequered.promocodes.repository;
 
-import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
-import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBScanExpression;
-import com.amazonaws.services.dynamodbv2.datamodeling.PaginatedScanList;
-import com.amazonaws.services.dynamodbv2.model.AttributeValue;
 import com.czequered.promocodes.model.Game;
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.stereotype.Component;
 
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
+ * Games keyed by the owning user and game id.
+ *
  * @author Martin Varga
  */
-@Component
-public class GameRepository extends AbstractDynamoDBRepository<Game> {
-    @Autowired
-    public GameRepository(DynamoDBMapper mapper) {
-        super(mapper);
-    }
-
-    public Game findByUserIdAndGameId(String userId, String gameId) {
-        return mapper.load(Game.class, userId, gameId);
-    }
-
-    public List<Game> findByUserId(String userId) {
-        Map<String, AttributeValue> eav = new HashMap<>();
-        eav.put(":userId", new AttributeValue().withS(userId));
-        DynamoDBScanExpression scanExpression = new DynamoDBScanExpression()
-                .withFilterExpression("userId = :userId")
-                .withExpressionAttributeValues(eav);
-        PaginatedScanList<Game> scan = mapper.scan(Game.class, scanExpression);
-        return scan.stream().collect(Collectors.toList());
-    }
+public interface GameRepository {
+    Game findByUserIdAndGameId(String userId, String gameId);
+
+    /**
+     * @param consistentRead {@code true} to see all completed writes, {@code false} when slightly stale data will do
+     */
+    Game findByUserIdAndGameId(String userId, String gameId, boolean consistentRead);
+
+    List<Game> findByUserId(String userId);
+
+    /**
+     * @param consistentRead {@code true} to see all completed writes, {@code false} when slightly stale data will do
+     */
+    List<Game> findByUserId(String userId, boolean consistentRead);
+
+    /**
+     * All games read lazily with a table scan, meant for maintenance jobs. The stream can be consumed only once.
+     */
+    Stream<Game> streamAll();
+
+    /**
+     * Games being deleted, read without scanning the table. A game marked deleted a moment ago may be missing.
+     */
+    List<Game> findDeleted();
+
+    /**
+     * @return the saved game, {@code null} when the game is being deleted
+     */
+    Game save(Game game);
+
+    /**
+     * @return {@code false} when a game with the same key exists
+     */
+    boolean create(Game game);
+
+    /**
+     * Saves the game only if it exists and is not being deleted.
+     *
+     * @return {@code false} when there is no game with the key or it is being deleted
+     */
+    boolean replace(Game game);
+
+    /**
+     * Saves the game only if it exists, also when it is being deleted.
+     *
+     * @return {@code false} when there is no game with the key
+     */
+    boolean update(Game game);
+
+    void delete(Game game);
 }
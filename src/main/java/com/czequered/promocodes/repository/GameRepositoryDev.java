@@ -0,0 +1,34 @@
+package com.czequered.promocodes.repository;
+
+import com.czequered.promocodes.model.Game;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps the games in memory, starting with a few sample ones.
+ *
+ * @author Martin Varga
+ */
+@Component
+@Profile("dev")
+@Primary
+public class GameRepositoryDev extends InMemoryGameRepository {
+    public GameRepositoryDev() {
+        super(new InMemoryTable<>(Game::getUserId, Game::getGameId, Game::new));
+        Game game1 = new Game("Krtek", "GAME1");
+        game1.addAttribute("name", "A game 1");
+        game1.addAttribute("description", "Something to do with trains");
+        save(game1);
+
+        Game game2 = new Game("Krtek", "GAME2");
+        game2.addAttribute("name", "A game 2");
+        game2.addAttribute("description", "A simple platformer");
+        save(game2);
+
+        Game game3 = new Game("Sova", "GAME3");
+        game3.addAttribute("name", "A game 3");
+        game3.addAttribute("description", "I have no clue");
+        save(game3);
+    }
+}
@@ -0,0 +1,114 @@
+package com.czequered.promocodes.repository;
+
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapperConfig;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapperConfig.ConsistentReads;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBQueryExpression;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBSaveExpression;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ComparisonOperator;
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.amazonaws.services.dynamodbv2.model.ExpectedAttributeValue;
+import com.czequered.promocodes.model.Game;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * @author Martin Varga
+ */
+@Component
+@Profile("!local")
+public class GameRepositoryImpl extends AbstractDynamoDBRepository<Game> implements GameRepository {
+    private static final String USER_ID = "userId";
+    private static final String DELETED_AT = "deletedAt";
+
+    @Autowired
+    public GameRepositoryImpl(DynamoDBMapper mapper) {
+        super(mapper, Game.class);
+    }
+
+    @Override
+    public Game findByUserIdAndGameId(String userId, String gameId) {
+        return findByUserIdAndGameId(userId, gameId, false);
+    }
+
+    @Override
+    public Game findByUserIdAndGameId(String userId, String gameId, boolean consistentRead) {
+        DynamoDBMapperConfig config = DynamoDBMapperConfig.builder()
+                .withConsistentReads(consistentRead ? ConsistentReads.CONSISTENT : ConsistentReads.EVENTUAL)
+                .build();
+        return mapper.load(Game.class, userId, gameId, config);
+    }
+
+    @Override
+    public List<Game> findByUserId(String userId) {
+        return findByUserId(userId, false);
+    }
+
+    /**
+     * @param consistentRead {@code true} for a strongly consistent read, {@code false} for an eventually consistent one
+     */
+    @Override
+    public List<Game> findByUserId(String userId, boolean consistentRead) {
+        return queryByHashKey(new Game(userId, null), consistentRead);
+    }
+
+    @Override
+    public Stream<Game> streamAll() {
+        return super.streamAll();
+    }
+
+    /**
+     * Queries the sparse {@value Game#DELETIONS_INDEX}, which holds only the tombstones. Global secondary indexes
+     * are read eventually consistent.
+     */
+    @Override
+    public List<Game> findDeleted() {
+        DynamoDBQueryExpression<Game> query = new DynamoDBQueryExpression<Game>()
+                .withIndexName(Game.DELETIONS_INDEX)
+                .withKeyConditionExpression("deletion = :pending")
+                .withExpressionAttributeValues(Collections.singletonMap(":pending",
+                        new AttributeValue(Game.PENDING_DELETION)))
+                .withConsistentRead(false);
+        return mapper.query(Game.class, query).stream().collect(Collectors.toList());
+    }
+
+    /**
+     * Saves the game unless it is being deleted, the tombstone is checked by the condition of the write so that a
+     * game is never brought back while its codes are deleted.
+     */
+    @Override
+    public Game save(Game game) {
+        DynamoDBSaveExpression saveExpression = new DynamoDBSaveExpression()
+                .withExpectedEntry(DELETED_AT, new ExpectedAttributeValue(false));
+        try {
+            mapper.save(game, saveExpression);
+            return game;
+        } catch (ConditionalCheckFailedException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Saves the game only if its item exists and is no tombstone, both checked by the condition of the write.
+     */
+    @Override
+    public boolean replace(Game game) {
+        DynamoDBSaveExpression saveExpression = new DynamoDBSaveExpression()
+                .withExpectedEntry(USER_ID,
+                        new ExpectedAttributeValue().withComparisonOperator(ComparisonOperator.NOT_NULL))
+                .withExpectedEntry(DELETED_AT, new ExpectedAttributeValue(false));
+        try {
+            mapper.save(game, saveExpression);
+            return true;
+        } catch (ConditionalCheckFailedException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.czequered.promocodes.repository;
+
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.czequered.promocodes.model.Game;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+
+/**
+ * Keeps the games in a {@link LogStructuredTable} on local disk, for deployments without DynamoDB.
+ *
+ * @author Martin Varga
+ */
+@Component
+@Profile("local")
+@Primary
+public class GameRepositoryLocal extends InMemoryGameRepository {
+    private final LogStructuredTable<Game> games;
+
+    @Autowired
+    public GameRepositoryLocal(DynamoDBMapper mapper, @Value("${jepice.local.dir:data}") String directory) {
+        this(LogStructuredTable.open(mapper, Game.class, directory));
+    }
+
+    private GameRepositoryLocal(LogStructuredTable<Game> games) {
+        super(games);
+        this.games = games;
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        games.close();
+    }
+}
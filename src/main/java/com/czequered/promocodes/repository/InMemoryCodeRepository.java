@@ -0,0 +1,177 @@
+package com.czequered.promocodes.repository;
+
+import com.czequered.promocodes.model.Code;
+import com.czequered.promocodes.model.Page;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Codes kept in an {@link InMemoryTable}, partitioned by game.
+ *
+ * @author Martin Varga
+ */
+abstract class InMemoryCodeRepository implements CodeRepository {
+    private final InMemoryTable<Code> codes;
+
+    InMemoryCodeRepository(InMemoryTable<Code> codes) {
+        this.codes = codes;
+    }
+
+    @Override
+    public Code findByGameIdAndCodeId(String gameId, String codeId) {
+        return codes.get(gameId, codeId);
+    }
+
+    @Override
+    public List<Code> findByGameIdAndCodeIds(String gameId, Collection<String> codeIds) {
+        return codeIds.stream()
+                .map(codeId -> codes.get(gameId, codeId))
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public List<Code> findByGameId(String gameId) {
+        return codes.partition(gameId);
+    }
+
+    @Override
+    public Stream<Code> streamByGameId(String gameId) {
+        return codes.partition(gameId).stream();
+    }
+
+    /**
+     * Reads are always consistent.
+     */
+    @Override
+    public Stream<Code> streamByGameId(String gameId, boolean consistentRead) {
+        return codes.partition(gameId).stream();
+    }
+
+    @Override
+    public Page<Code> findByGameId(String gameId, int limit, String next) {
+        String after = next == null ? null : Page.fromToken(next);
+        List<Code> page = codes.partition(gameId, after, limit + 1);
+        if (page.size() <= limit) {
+            return new Page<>(page, null);
+        }
+        page = page.subList(0, limit);
+        return new Page<>(page, Page.toToken(page.get(limit - 1).getCodeId()));
+    }
+
+    @Override
+    public List<Code> findActiveByGameId(String gameId, Instant now) {
+        return codes.partition(gameId).stream()
+                .filter(code -> code.isValidAt(now.toEpochMilli()))
+                .sorted(Comparator.comparing(Code::getExpiresAt))
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public int migrateByGameId(String gameId) {
+        return 0;
+    }
+
+    @Override
+    public int assignOwnerByGameId(String gameId, String ownerId) {
+        int assigned = 0;
+        for (Code code : codes.partition(gameId)) {
+            Code updated = codes.update(gameId, code.getCodeId(), existing -> {
+                if (existing.getOwnerId() != null) {
+                    return null;
+                }
+                existing.setOwnerId(ownerId);
+                return existing;
+            });
+            if (updated != null) {
+                assigned++;
+            }
+        }
+        return assigned;
+    }
+
+    @Override
+    public Code save(Code code) {
+        while (!codes.putIfAbsent(code)) {
+            if (update(code)) {
+                return code;
+            }
+            if (codes.get(code.getGameId(), code.getCodeId()) != null) {
+                return null;
+            }
+        }
+        return code;
+    }
+
+    @Override
+    public boolean create(Code code) {
+        return codes.putIfAbsent(code);
+    }
+
+    @Override
+    public boolean update(Code code) {
+        return codes.update(code.getGameId(), code.getCodeId(), existing -> {
+            if (code.getOwnerId() != null && existing.getOwnerId() != null
+                    && !code.getOwnerId().equals(existing.getOwnerId())) {
+                return null;
+            }
+            if (code.getShardCount() != existing.getShardCount()) {
+                return null;
+            }
+            Code updated = new Code(code);
+            updated.setRedeemed(existing.getRedeemed());
+            if (updated.getOwnerId() == null) {
+                updated.setOwnerId(existing.getOwnerId());
+            }
+            return updated;
+        }) != null;
+    }
+
+    @Override
+    public void delete(Code code) {
+        codes.remove(code.getGameId(), code.getCodeId());
+    }
+
+    /**
+     * Replaces the stored codes like the put requests of a BatchWriteItem do.
+     */
+    @Override
+    public List<Code> batchSave(List<Code> codes) {
+        codes.forEach(this.codes::put);
+        return Collections.emptyList();
+    }
+
+    @Override
+    public List<Code> batchDelete(List<Code> codes) {
+        codes.forEach(this::delete);
+        return Collections.emptyList();
+    }
+
+    @Override
+    public boolean delete(Code code, String ownerId) {
+        return codes.remove(code.getGameId(), code.getCodeId(),
+                existing -> existing.getOwnerId() == null || existing.getOwnerId().equals(ownerId));
+    }
+
+    @Override
+    public Code redeem(String gameId, String codeId, String userId, Instant now) {
+        return codes.update(gameId, codeId, code -> {
+            int redeemed = code.getRedeemed() == null ? 0 : code.getRedeemed();
+            if ((code.getOwnerId() != null && !code.getOwnerId().equals(userId))
+                    || code.isSharded()
+                    || !code.isValidAt(now.toEpochMilli())
+                    || (code.getMaxRedemptions() != null && redeemed >= code.getMaxRedemptions())) {
+                return null;
+            }
+            code.setRedeemed(redeemed + 1);
+            return code;
+        });
+    }
+}
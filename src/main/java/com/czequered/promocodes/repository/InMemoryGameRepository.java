@@ -0,0 +1,98 @@
+package com.czequered.promocodes.repository;
+
+import com.czequered.promocodes.model.Game;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Games kept in an {@link InMemoryTable}, partitioned by user.
+ *
+ * @author Martin Varga
+ */
+abstract class InMemoryGameRepository implements GameRepository {
+    private final InMemoryTable<Game> games;
+
+    InMemoryGameRepository(InMemoryTable<Game> games) {
+        this.games = games;
+    }
+
+    @Override
+    public Game findByUserIdAndGameId(String userId, String gameId) {
+        return games.get(userId, gameId);
+    }
+
+    /**
+     * Reads are always consistent.
+     */
+    @Override
+    public Game findByUserIdAndGameId(String userId, String gameId, boolean consistentRead) {
+        return games.get(userId, gameId);
+    }
+
+    @Override
+    public List<Game> findByUserId(String userId) {
+        return games.partition(userId);
+    }
+
+    /**
+     * Reads are always consistent.
+     */
+    @Override
+    public List<Game> findByUserId(String userId, boolean consistentRead) {
+        return games.partition(userId);
+    }
+
+    @Override
+    public Stream<Game> streamAll() {
+        return games.scan().stream();
+    }
+
+    @Override
+    public List<Game> findDeleted() {
+        return games.scan().stream()
+                .filter(Game::isDeleted)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * A game being deleted is left as it is.
+     */
+    @Override
+    public Game save(Game game) {
+        while (!games.putIfAbsent(game)) {
+            Game saved = games.update(game.getUserId(), game.getGameId(),
+                    existing -> existing.isDeleted() ? null : new Game(game));
+            if (saved != null) {
+                return game;
+            }
+            Game existing = games.get(game.getUserId(), game.getGameId());
+            if (existing != null && existing.isDeleted()) {
+                return null;
+            }
+        }
+        return game;
+    }
+
+    @Override
+    public boolean create(Game game) {
+        return games.putIfAbsent(game);
+    }
+
+    @Override
+    public boolean replace(Game game) {
+        return games.update(game.getUserId(), game.getGameId(),
+                existing -> existing.isDeleted() ? null : new Game(game)) != null;
+    }
+
+    @Override
+    public boolean update(Game game) {
+        return games.update(game.getUserId(), game.getGameId(), existing -> new Game(game)) != null;
+    }
+
+    @Override
+    public void delete(Game game) {
+        games.remove(game.getUserId(), game.getGameId());
+    }
+}
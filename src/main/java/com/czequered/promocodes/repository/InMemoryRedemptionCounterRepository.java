@@ -0,0 +1,60 @@
+package com.czequered.promocodes.repository;
+
+import com.czequered.promocodes.model.RedemptionCounter;
+
+import java.util.stream.IntStream;
+
+/**
+ * Shard counters kept in an {@link InMemoryTable}, one partition per shard.
+ *
+ * @author Martin Varga
+ */
+abstract class InMemoryRedemptionCounterRepository implements RedemptionCounterRepository {
+    private static final String NO_RANGE_KEY = "";
+
+    private final InMemoryTable<RedemptionCounter> counters;
+
+    InMemoryRedemptionCounterRepository(InMemoryTable<RedemptionCounter> counters) {
+        this.counters = counters;
+    }
+
+    static String rangeKey(RedemptionCounter counter) {
+        return NO_RANGE_KEY;
+    }
+
+    @Override
+    public void createAll(String gameId, String codeId, int shards) {
+        IntStream.range(0, shards).forEach(shard -> {
+            RedemptionCounter counter = new RedemptionCounter(gameId, codeId, shard);
+            counter.setRedeemed(0);
+            counters.putIfAbsent(counter);
+        });
+    }
+
+    @Override
+    public boolean increment(String gameId, String codeId, int shard, Integer quota) {
+        String shardKey = RedemptionCounter.shardKey(gameId, codeId, shard);
+        return counters.update(shardKey, NO_RANGE_KEY, counter -> {
+            int redeemed = counter.getRedeemed() == null ? 0 : counter.getRedeemed();
+            if (quota != null && redeemed >= quota) {
+                return null;
+            }
+            counter.setRedeemed(redeemed + 1);
+            return counter;
+        }) != null;
+    }
+
+    @Override
+    public int total(String gameId, String codeId, int shards) {
+        return IntStream.range(0, shards)
+                .mapToObj(shard -> counters.get(RedemptionCounter.shardKey(gameId, codeId, shard), NO_RANGE_KEY))
+                .mapToInt(counter -> counter == null || counter.getRedeemed() == null ? 0 : counter.getRedeemed())
+                .sum();
+    }
+
+    @Override
+    public void deleteAll(String gameId, String codeId, int shards) {
+        IntStream.range(0, shards)
+                .forEach(shard -> counters.remove(RedemptionCounter.shardKey(gameId, codeId, shard), NO_RANGE_KEY));
+    }
+}
@@ -0,0 +1,151 @@
+package com.czequered.promocodes.repository;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+
+/**
+ * Thread-safe in-memory table keyed like a DynamoDB table: items are grouped into partitions by their hash key and
+ * sorted by their range key inside a partition, so reading a partition costs the size of the partition rather than
+ * the size of the table. Items are copied on the way in and out, callers never share the stored instances.
+ *
+ * @author Martin Varga
+ */
+class InMemoryTable<T> {
+    private final ConcurrentMap<String, ConcurrentNavigableMap<String, T>> partitions = new ConcurrentHashMap<>();
+    private final Function<T, String> hashKey;
+    private final Function<T, String> rangeKey;
+    private final UnaryOperator<T> copy;
+
+    InMemoryTable(Function<T, String> hashKey, Function<T, String> rangeKey, UnaryOperator<T> copy) {
+        this.hashKey = hashKey;
+        this.rangeKey = rangeKey;
+        this.copy = copy;
+    }
+
+    T get(String hash, String range) {
+        NavigableMap<String, T> partition = partitions.get(hash);
+        return partition == null ? null : copyOf(partition.get(range));
+    }
+
+    /**
+     * Items of the partition ordered by range key.
+     */
+    List<T> partition(String hash) {
+        NavigableMap<String, T> partition = partitions.get(hash);
+        return partition == null ? Collections.emptyList() : copyOf(partition.values());
+    }
+
+    /**
+     * At most {@code limit} items of the partition whose range key follows {@code after}, ordered by range key.
+     *
+     * @param after {@code null} to start at the beginning of the partition
+     */
+    List<T> partition(String hash, String after, int limit) {
+        NavigableMap<String, T> partition = partitions.get(hash);
+        if (partition == null) {
+            return Collections.emptyList();
+        }
+        NavigableMap<String, T> tail = after == null ? partition : partition.tailMap(after, false);
+        return copyOf(tail.values().stream().limit(limit).collect(Collectors.toList()));
+    }
+
+    /**
+     * All items of the table, partition by partition.
+     */
+    List<T> scan() {
+        List<T> items = new ArrayList<>();
+        partitions.values().forEach(partition -> items.addAll(copyOf(partition.values())));
+        return items;
+    }
+
+    /**
+     * Number of items in the table, counted partition by partition.
+     */
+    int size() {
+        return partitions.values().stream().mapToInt(Map::size).sum();
+    }
+
+    void put(T item) {
+        partitionOf(item).put(rangeKey.apply(item), copy.apply(item));
+    }
+
+    /**
+     * @return {@code false} when an item with the same key exists
+     */
+    boolean putIfAbsent(T item) {
+        return partitionOf(item).putIfAbsent(rangeKey.apply(item), copy.apply(item)) == null;
+    }
+
+    /**
+     * Atomically replaces an existing item with the result of {@code update}. The function gets a copy of the
+     * current item and may be called more than once when the item is updated concurrently.
+     *
+     * @param update returns the new item, or {@code null} to leave the item as it is
+     * @return copy of the new item, {@code null} when there is no item or it was left as it is
+     */
+    T update(String hash, String range, UnaryOperator<T> update) {
+        NavigableMap<String, T> partition = partitions.get(hash);
+        if (partition == null) {
+            return null;
+        }
+        AtomicReference<T> updated = new AtomicReference<>();
+        partition.computeIfPresent(range, (key, current) -> {
+            T next = update.apply(copy.apply(current));
+            updated.set(next);
+            return next == null ? current : next;
+        });
+        return copyOf(updated.get());
+    }
+
+    void remove(String hash, String range) {
+        NavigableMap<String, T> partition = partitions.get(hash);
+        if (partition != null) {
+            partition.remove(range);
+        }
+    }
+
+    /**
+     * Atomically removes the item if it matches {@code condition}, a missing item counts as removed.
+     *
+     * @return {@code false} when the item exists and does not match
+     */
+    boolean remove(String hash, String range, Predicate<T> condition) {
+        NavigableMap<String, T> partition = partitions.get(hash);
+        if (partition == null) {
+            return true;
+        }
+        AtomicBoolean removed = new AtomicBoolean(true);
+        partition.computeIfPresent(range, (key, current) -> {
+            removed.set(condition.test(copy.apply(current)));
+            return removed.get() ? null : current;
+        });
+        return removed.get();
+    }
+
+    private ConcurrentNavigableMap<String, T> partitionOf(T item) {
+        return partitions.computeIfAbsent(hashKey.apply(item), hash -> new ConcurrentSkipListMap<>());
+    }
+
+    private T copyOf(T item) {
+        return item == null ? null : copy.apply(item);
+    }
+
+    private List<T> copyOf(Iterable<T> items) {
+        List<T> copies = new ArrayList<>();
+        items.forEach(item -> copies.add(copy.apply(item)));
+        return copies;
+    }
+}
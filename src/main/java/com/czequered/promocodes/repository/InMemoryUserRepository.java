@@ -0,0 +1,29 @@
+package com.czequered.promocodes.repository;
+
+import com.czequered.promocodes.model.User;
+
+/**
+ * Users kept in an {@link InMemoryTable}, one partition per user.
+ *
+ * @author Martin Varga
+ */
+abstract class InMemoryUserRepository implements UserRepository {
+    private static final String NO_RANGE_KEY = "";
+
+    private final InMemoryTable<User> users;
+
+    InMemoryUserRepository(InMemoryTable<User> users) {
+        this.users = users;
+    }
+
+    @Override
+    public User findByUserId(String userId) {
+        return users.get(userId, NO_RANGE_KEY);
+    }
+
+    @Override
+    public User save(User user) {
+        users.put(user);
+        return user;
+    }
+}
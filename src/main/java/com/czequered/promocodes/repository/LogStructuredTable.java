@@ -0,0 +1,320 @@
+package com.czequered.promocodes.repository;
+
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapperConfig;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapperFieldModel;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapperTableModel;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * {@link InMemoryTable} persisted to an append-only log on local disk. Every write appends one line, {@code P} and
+ * the item or {@code D} and the key, with the item in the DynamoDB JSON format produced by the mapper's table model,
+ * so items are stored exactly as in DynamoDB. Opening the table replays the log and compacts it to one line per
+ * item, and so does a write once the log has more than twice as many lines as there are items, so a long-running
+ * table does not grow the log and the replay without bound. Writes are serialized, reads are served from memory.
+ * <p>
+ * Lines are flushed to the operating system after every write, so they survive a crash of the process but not
+ * necessarily of the machine. A torn last line is skipped when the log is replayed.
+ *
+ * @author Martin Varga
+ */
+class LogStructuredTable<T> extends InMemoryTable<T> implements Closeable {
+    private static final String PUT = "P";
+    private static final String DELETE = "D";
+    private static final char SEPARATOR = '\t';
+    private static final int MIN_COMPACTION_LINES = 1000;
+
+    private static final Logger logger = LoggerFactory.getLogger(LogStructuredTable.class);
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final DynamoDBMapperTableModel<T> model;
+    private final Path file;
+    private final int minCompactionLines;
+    private Writer log;
+    private int lines;
+    private int nextCompactionCheck;
+
+    LogStructuredTable(DynamoDBMapperTableModel<T> model, Path file) {
+        this(model, file, MIN_COMPACTION_LINES);
+    }
+
+    /**
+     * @param minCompactionLines the log is not compacted while it is shorter, so small tables are not rewritten
+     *                           on every few writes
+     */
+    LogStructuredTable(DynamoDBMapperTableModel<T> model, Path file, int minCompactionLines) {
+        super(item -> keyOf(model.hashKey(), item),
+                item -> keyOf(model.rangeKeyIfExists(), item),
+                item -> model.unconvert(model.convert(item)));
+        this.model = model;
+        this.file = file;
+        this.minCompactionLines = minCompactionLines;
+        try {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            replay();
+            compact();
+            log = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open " + file, e);
+        }
+    }
+
+    /**
+     * Opens the table of the mapped {@code type}, logged to {@code <directory>/<table name>.log}.
+     */
+    static <T> LogStructuredTable<T> open(DynamoDBMapper mapper, Class<T> type, String directory) {
+        String tableName = DynamoDBMapperConfig.DefaultTableNameResolver.INSTANCE
+                .getTableName(type, DynamoDBMapperConfig.DEFAULT);
+        return new LogStructuredTable<>(mapper.getTableModel(type), Paths.get(directory, tableName + ".log"));
+    }
+
+    @Override
+    synchronized void put(T item) {
+        super.put(item);
+        append(PUT, item);
+    }
+
+    @Override
+    synchronized boolean putIfAbsent(T item) {
+        if (!super.putIfAbsent(item)) {
+            return false;
+        }
+        append(PUT, item);
+        return true;
+    }
+
+    @Override
+    synchronized T update(String hash, String range, UnaryOperator<T> update) {
+        T updated = super.update(hash, range, update);
+        if (updated != null) {
+            append(PUT, updated);
+        }
+        return updated;
+    }
+
+    @Override
+    synchronized void remove(String hash, String range) {
+        super.remove(hash, range);
+        append(DELETE, model.createKey(hash, range.isEmpty() ? null : range));
+    }
+
+    @Override
+    synchronized boolean remove(String hash, String range, Predicate<T> condition) {
+        if (!super.remove(hash, range, condition)) {
+            return false;
+        }
+        append(DELETE, model.createKey(hash, range.isEmpty() ? null : range));
+        return true;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        log.close();
+    }
+
+    private void append(String operation, T item) {
+        Map<String, AttributeValue> attributes = DELETE.equals(operation) ? model.convertKey(item) : model.convert(item);
+        try {
+            log.write(operation + SEPARATOR + objectMapper.writeValueAsString(toJson(attributes)) + "\n");
+            log.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write to " + file, e);
+        }
+        if (++lines > nextCompactionCheck) {
+            compactIfStale();
+        }
+    }
+
+    /**
+     * Counting the items costs a pass over the table, so they are counted again only after as many lines as there
+     * were items have been appended, which keeps the check constant per write on average. The write is already in
+     * the log, a failed compaction is logged and retried later rather than failing it.
+     */
+    private void compactIfStale() {
+        int items = size();
+        if (lines <= 2 * items) {
+            nextCompactionCheck = lines + Math.max(items, minCompactionLines);
+            return;
+        }
+        try {
+            log.close();
+            compact();
+        } catch (IOException e) {
+            logger.warn("Cannot compact {}: {}", file, e.getMessage());
+            nextCompactionCheck = lines + minCompactionLines;
+        }
+        try {
+            log = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open " + file, e);
+        }
+    }
+
+    private void replay() throws IOException {
+        if (!Files.exists(file)) {
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            int lineNumber = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                int separator = line.indexOf(SEPARATOR);
+                try {
+                    T item = model.unconvert(fromJson(objectMapper.readTree(line.substring(separator + 1))));
+                    if (line.startsWith(PUT + SEPARATOR)) {
+                        super.put(item);
+                    } else if (line.startsWith(DELETE + SEPARATOR)) {
+                        super.remove(keyOf(model.hashKey(), item), keyOf(model.rangeKeyIfExists(), item));
+                    } else {
+                        throw new IOException("Unknown operation");
+                    }
+                } catch (IOException | RuntimeException e) {
+                    logger.warn("Skipping line {} of {}: {}", lineNumber, file, e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Rewrites the log with the current items only and replaces the old log atomically. The new log is forced to disk
+     * before it replaces the old one and the directory after, otherwise a crash of the machine could leave an empty
+     * or partial log in place of the old one.
+     */
+    private void compact() throws IOException {
+        Path compacted = file.resolveSibling(file.getFileName() + ".compacting");
+        List<T> items = scan();
+        try (FileChannel channel = FileChannel.open(compacted, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+             Writer writer = new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8.name()))) {
+            for (T item : items) {
+                writer.write(PUT + SEPARATOR + objectMapper.writeValueAsString(toJson(model.convert(item))) + "\n");
+            }
+            writer.flush();
+            channel.force(true);
+        }
+        Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        forceDirectory(file.toAbsolutePath().getParent());
+        lines = items.size();
+        nextCompactionCheck = Math.max(2 * lines, minCompactionLines);
+    }
+
+    /**
+     * Makes the rename durable. Not every platform can open a directory, there the rename is left to the file system.
+     */
+    private static void forceDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            logger.debug("Cannot force directory {}: {}", directory, e.getMessage());
+        }
+    }
+
+    private static <T> String keyOf(DynamoDBMapperFieldModel<T, Object> key, T item) {
+        if (key == null) {
+            return "";
+        }
+        Object value = key.get(item);
+        return value == null ? null : value.toString();
+    }
+
+    private ObjectNode toJson(Map<String, AttributeValue> attributes) {
+        ObjectNode json = objectMapper.createObjectNode();
+        attributes.forEach((name, value) -> json.set(name, toJson(value)));
+        return json;
+    }
+
+    private JsonNode toJson(AttributeValue value) {
+        ObjectNode json = objectMapper.createObjectNode();
+        if (value.getS() != null) {
+            json.put("S", value.getS());
+        } else if (value.getN() != null) {
+            json.put("N", value.getN());
+        } else if (value.getBOOL() != null) {
+            json.put("BOOL", value.getBOOL());
+        } else if (value.getNULL() != null) {
+            json.put("NULL", value.getNULL());
+        } else if (value.getM() != null) {
+            json.set("M", toJson(value.getM()));
+        } else if (value.getL() != null) {
+            ArrayNode list = json.putArray("L");
+            value.getL().forEach(element -> list.add(toJson(element)));
+        } else if (value.getSS() != null) {
+            ArrayNode set = json.putArray("SS");
+            value.getSS().forEach(set::add);
+        } else if (value.getNS() != null) {
+            ArrayNode set = json.putArray("NS");
+            value.getNS().forEach(set::add);
+        } else {
+            throw new IllegalArgumentException("Unsupported attribute value " + value);
+        }
+        return json;
+    }
+
+    private Map<String, AttributeValue> fromJson(JsonNode json) {
+        Map<String, AttributeValue> attributes = new LinkedHashMap<>();
+        for (Iterator<Map.Entry<String, JsonNode>> fields = json.fields(); fields.hasNext(); ) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            attributes.put(field.getKey(), fromJsonValue(field.getValue()));
+        }
+        return attributes;
+    }
+
+    private AttributeValue fromJsonValue(JsonNode json) {
+        Map.Entry<String, JsonNode> typed = json.fields().next();
+        JsonNode value = typed.getValue();
+        switch (typed.getKey()) {
+            case "S":
+                return new AttributeValue().withS(value.asText());
+            case "N":
+                return new AttributeValue().withN(value.asText());
+            case "BOOL":
+                return new AttributeValue().withBOOL(value.asBoolean());
+            case "NULL":
+                return new AttributeValue().withNULL(value.asBoolean());
+            case "M":
+                return new AttributeValue().withM(fromJson(value));
+            case "L":
+                List<AttributeValue> list = new ArrayList<>();
+                value.forEach(element -> list.add(fromJsonValue(element)));
+                return new AttributeValue().withL(list);
+            case "SS":
+            case "NS":
+                List<String> set = new ArrayList<>();
+                value.forEach(element -> set.add(element.asText()));
+                return "SS".equals(typed.getKey())
+                        ? new AttributeValue().withSS(set)
+                        : new AttributeValue().withNS(set);
+            default:
+                throw new IllegalArgumentException("Unsupported attribute type " + typed.getKey());
+        }
+    }
+}
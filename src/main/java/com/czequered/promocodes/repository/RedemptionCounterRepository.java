@@ -0,0 +1,29 @@
+package com.czequered.promocodes.repository;
+
+/**
+ * Redemption counts of sharded codes, one counter per shard.
+ *
+ * @author Martin Varga
+ */
+public interface RedemptionCounterRepository {
+    /**
+     * Creates the shards of the code with no redemptions, shards that exist keep their counts.
+     */
+    void createAll(String gameId, String codeId, int shards);
+
+    /**
+     * Adds one redemption to the shard, which has to exist, so that no shards are recreated once the code and its
+     * shards were deleted.
+     *
+     * @param quota redemptions the shard may hold, {@code null} for no limit
+     * @return {@code false} when the shard does not exist or has reached its quota
+     */
+    boolean increment(String gameId, String codeId, int shard, Integer quota);
+
+    /**
+     * Sums the shards of the code.
+     */
+    int total(String gameId, String codeId, int shards);
+
+    void deleteAll(String gameId, String codeId, int shards);
+}
@@ -0,0 +1,21 @@
+package com.czequered.promocodes.repository;
+
+import com.czequered.promocodes.model.RedemptionCounter;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps the shard counters in memory.
+ *
+ * @author Martin Varga
+ */
+@Component
+@Profile("dev")
+@Primary
+public class RedemptionCounterRepositoryDev extends InMemoryRedemptionCounterRepository {
+    public RedemptionCounterRepositoryDev() {
+        super(new InMemoryTable<>(RedemptionCounter::getShardKey, InMemoryRedemptionCounterRepository::rangeKey,
+                RedemptionCounter::new));
+    }
+}
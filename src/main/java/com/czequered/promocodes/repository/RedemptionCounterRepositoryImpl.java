@@ -0,0 +1,106 @@
+package com.czequered.promocodes.repository;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemRequest;
+import com.czequered.promocodes.model.RedemptionCounter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * @author Martin Varga
+ */
+@Component
+@Profile("!local")
+public class RedemptionCounterRepositoryImpl extends AbstractDynamoDBRepository<RedemptionCounter>
+        implements RedemptionCounterRepository {
+
+    private AmazonDynamoDB amazonDynamoDB;
+
+    @Autowired
+    public RedemptionCounterRepositoryImpl(DynamoDBMapper mapper, AmazonDynamoDB amazonDynamoDB) {
+        super(mapper, RedemptionCounter.class);
+        this.amazonDynamoDB = amazonDynamoDB;
+    }
+
+    /**
+     * One UpdateItem per shard that sets the count only where it is missing, so it never resets a count.
+     */
+    @Override
+    public void createAll(String gameId, String codeId, int shards) {
+        for (int shard = 0; shard < shards; shard++) {
+            amazonDynamoDB.updateItem(new UpdateItemRequest()
+                    .withTableName(tableName())
+                    .withKey(key(gameId, codeId, shard))
+                    .withUpdateExpression("SET redeemed = if_not_exists(redeemed, :zero)")
+                    .withExpressionAttributeValues(
+                            Collections.singletonMap(":zero", new AttributeValue().withN("0"))));
+        }
+    }
+
+    /**
+     * Adds one redemption to the shard with a single UpdateItem, conditioned on the shard existing.
+     *
+     * @param quota redemptions the shard may hold, {@code null} for no limit
+     * @return {@code false} when the shard does not exist or has reached its quota
+     */
+    @Override
+    public boolean increment(String gameId, String codeId, int shard, Integer quota) {
+        Map<String, AttributeValue> values = new HashMap<>();
+        values.put(":one", new AttributeValue().withN("1"));
+        UpdateItemRequest request = new UpdateItemRequest()
+                .withTableName(tableName())
+                .withKey(key(gameId, codeId, shard))
+                .withUpdateExpression("ADD redeemed :one")
+                .withConditionExpression("attribute_exists(redeemed)");
+        if (quota != null) {
+            values.put(":quota", new AttributeValue().withN(quota.toString()));
+            request.withConditionExpression("attribute_exists(redeemed) AND redeemed < :quota");
+        }
+        request.withExpressionAttributeValues(values);
+        try {
+            amazonDynamoDB.updateItem(request);
+            return true;
+        } catch (ConditionalCheckFailedException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Sums the shards of the code with one batch read.
+     */
+    @Override
+    public int total(String gameId, String codeId, int shards) {
+        return batchLoad(keys(gameId, codeId, shards)).stream()
+                .map(RedemptionCounter::getRedeemed)
+                .filter(redeemed -> redeemed != null)
+                .mapToInt(Integer::intValue)
+                .sum();
+    }
+
+    @Override
+    public void deleteAll(String gameId, String codeId, int shards) {
+        mapper.batchDelete(keys(gameId, codeId, shards));
+    }
+
+    private Map<String, AttributeValue> key(String gameId, String codeId, int shard) {
+        return Collections.singletonMap("shardKey",
+                new AttributeValue(RedemptionCounter.shardKey(gameId, codeId, shard)));
+    }
+
+    private List<RedemptionCounter> keys(String gameId, String codeId, int shards) {
+        return IntStream.range(0, shards)
+                .mapToObj(shard -> new RedemptionCounter(gameId, codeId, shard))
+                .collect(Collectors.toList());
+    }
+}
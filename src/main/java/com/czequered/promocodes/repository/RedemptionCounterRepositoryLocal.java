@@ -0,0 +1,39 @@
+package com.czequered.promocodes.repository;
+
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.czequered.promocodes.model.RedemptionCounter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+
+/**
+ * Keeps the shard counters in a {@link LogStructuredTable} on local disk, for deployments without DynamoDB.
+ *
+ * @author Martin Varga
+ */
+@Component
+@Profile("local")
+@Primary
+public class RedemptionCounterRepositoryLocal extends InMemoryRedemptionCounterRepository {
+    private final LogStructuredTable<RedemptionCounter> counters;
+
+    @Autowired
+    public RedemptionCounterRepositoryLocal(DynamoDBMapper mapper, @Value("${jepice.local.dir:data}") String directory) {
+        this(LogStructuredTable.open(mapper, RedemptionCounter.class, directory));
+    }
+
+    private RedemptionCounterRepositoryLocal(LogStructuredTable<RedemptionCounter> counters) {
+        super(counters);
+        this.counters = counters;
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        counters.close();
+    }
+}
@@ -0,0 +1,24 @@
+package com.czequered.promocodes.repository;
+
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.czequered.promocodes.model.User;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+/**
+ * @author Martin Varga
+ */
+@Component
+@Profile("!local")
+public class UserRepositoryImpl extends AbstractDynamoDBRepository<User> implements UserRepository {
+    @Autowired
+    public UserRepositoryImpl(DynamoDBMapper mapper) {
+        super(mapper, User.class);
+    }
+
+    @Override
+    public User findByUserId(String userId) {
+        return mapper.load(User.class, userId);
+    }
+}
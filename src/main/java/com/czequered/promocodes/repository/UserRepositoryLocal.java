@@ -0,0 +1,39 @@
+package com.czequered.promocodes.repository;
+
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.czequered.promocodes.model.User;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+
+/**
+ * Keeps the users in a {@link LogStructuredTable} on local disk, for deployments without DynamoDB.
+ *
+ * @author Martin Varga
+ */
+@Component
+@Profile("local")
+@Primary
+public class UserRepositoryLocal extends InMemoryUserRepository {
+    private final LogStructuredTable<User> users;
+
+    @Autowired
+    public UserRepositoryLocal(DynamoDBMapper mapper, @Value("${jepice.local.dir:data}") String directory) {
+        this(LogStructuredTable.open(mapper, User.class, directory));
+    }
+
+    private UserRepositoryLocal(LogStructuredTable<User> users) {
+        super(users);
+        this.users = users;
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        users.close();
+    }
+}
@@ -26,20 +26,28 @@ public class AuthenticationTokenFilter extends GenericFilterBean {
 
     private final AntPathRequestMatcher antPathRequestMatcher;
 
+    private final AntPathRequestMatcher publicPathRequestMatcher;
+
+    /**
+     * @param publicPattern requests under the API that are served without a token
+     */
     @Autowired
     public AuthenticationTokenFilter(TokenService tokenService,
-                                     @Value("${jepice.api}") String apiPattern) {
+                                     @Value("${jepice.api}") String apiPattern,
+                                     @Value("${jepice.public-api:/api/v1/public/**}") String publicPattern) {
         this.tokenService = tokenService;
         antPathRequestMatcher = new AntPathRequestMatcher(apiPattern);
+        publicPathRequestMatcher = new AntPathRequestMatcher(publicPattern);
     }
 
     @Override
     public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
         try {
             HttpServletRequest httpRequest = (HttpServletRequest) request;
-            if (antPathRequestMatcher.matches(httpRequest) && !OPTIONS.name().equals(httpRequest.getMethod())) {
+            if (antPathRequestMatcher.matches(httpRequest) && !publicPathRequestMatcher.matches(httpRequest)
+                    && !OPTIONS.name().equals(httpRequest.getMethod())) {
                 String authToken = httpRequest.getHeader(Constants.TOKEN_HEADER);
-                tokenService.validateToken(authToken);
+                httpRequest.setAttribute(Constants.VERIFIED_TOKEN_ATTRIBUTE, tokenService.verifyToken(authToken));
             }
             chain.doFilter(request, response);
         } catch (InvalidTokenException e) {
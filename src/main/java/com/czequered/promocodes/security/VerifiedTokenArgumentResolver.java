@@ -0,0 +1,48 @@
+package com.czequered.promocodes.security;
+
+import com.czequered.promocodes.config.Constants;
+import com.czequered.promocodes.service.TokenService;
+import com.czequered.promocodes.service.VerifiedToken;
+import org.springframework.core.MethodParameter;
+import org.springframework.web.bind.ServletRequestBindingException;
+import org.springframework.web.bind.support.WebDataBinderFactory;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.method.support.HandlerMethodArgumentResolver;
+import org.springframework.web.method.support.ModelAndViewContainer;
+
+/**
+ * Resolves {@link VerifiedToken} controller arguments from the token {@link AuthenticationTokenFilter} has already
+ * verified. Requests that did not pass the filter have their token header verified here.
+ *
+ * @author Martin Varga
+ */
+public class VerifiedTokenArgumentResolver implements HandlerMethodArgumentResolver {
+
+    private TokenService tokenService;
+
+    public VerifiedTokenArgumentResolver(TokenService tokenService) {
+        this.tokenService = tokenService;
+    }
+
+    @Override
+    public boolean supportsParameter(MethodParameter parameter) {
+        return VerifiedToken.class.equals(parameter.getParameterType());
+    }
+
+    @Override
+    public Object resolveArgument(MethodParameter parameter, ModelAndViewContainer mavContainer,
+                                  NativeWebRequest webRequest, WebDataBinderFactory binderFactory) throws Exception {
+        Object verified = webRequest.getAttribute(Constants.VERIFIED_TOKEN_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+        if (verified != null) {
+            return verified;
+        }
+        String token = webRequest.getHeader(Constants.TOKEN_HEADER);
+        if (token == null) {
+            throw new ServletRequestBindingException("Missing request header '" + Constants.TOKEN_HEADER + "'");
+        }
+        VerifiedToken verifiedToken = tokenService.verifyToken(token);
+        webRequest.setAttribute(Constants.VERIFIED_TOKEN_ATTRIBUTE, verifiedToken, RequestAttributes.SCOPE_REQUEST);
+        return verifiedToken;
+    }
+}
@@ -0,0 +1,30 @@
+package com.czequered.promocodes.service;
+
+import com.czequered.promocodes.model.CodeImportReport;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Imported codes that exist already are replaced but keep their redemption count, their number of shards cannot be
+ * changed.
+ *
+ * @author Martin Varga
+ */
+public interface CodeImportService {
+    /**
+     * One JSON code per line, the gameId of each code must be missing or match {@code gameId}.
+     *
+     * @param ownerId user owning the game, stored on every imported code
+     */
+    CodeImportReport importNdjson(String gameId, String ownerId, Reader reader) throws IOException;
+
+    /**
+     * A header line naming the columns ({@code codeId} is required, {@code from}, {@code to}, {@code pub},
+     * {@code payload}, {@code maxRedemptions} and {@code shards} are optional) followed by one code per line. Other
+     * columns are ignored, an empty field leaves the attribute unset.
+     *
+     * @throws IllegalArgumentException when the header is missing or has no codeId column
+     */
+    CodeImportReport importCsv(String gameId, String ownerId, Reader reader) throws IOException;
+}
@@ -0,0 +1,279 @@
+package com.czequered.promocodes.service;
+
+import com.czequered.promocodes.model.Code;
+import com.czequered.promocodes.model.CodeImportReport;
+import com.czequered.promocodes.model.CodeImportRow;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static com.czequered.promocodes.model.CodeImportRow.Status.*;
+
+/**
+ * Parses the input line by line and saves the codes in batches of {@value #BATCH_SIZE}, the size of a DynamoDB
+ * BatchWriteItem request, so only one batch is held in memory.
+ *
+ * @author Martin Varga
+ */
+@Service
+public class CodeImportServiceImpl implements CodeImportService {
+    static final int BATCH_SIZE = 25;
+
+    private CodeService codeService;
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    public CodeImportServiceImpl(CodeService codeService, ObjectMapper objectMapper) {
+        this.codeService = codeService;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public CodeImportReport importNdjson(String gameId, String ownerId, Reader reader) throws IOException {
+        BufferedReader lines = new BufferedReader(reader);
+        Import codeImport = new Import(gameId, ownerId);
+        int lineNumber = 0;
+        String line;
+        while ((line = lines.readLine()) != null) {
+            lineNumber++;
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            try {
+                codeImport.add(lineNumber, objectMapper.readValue(line, Code.class));
+            } catch (JsonProcessingException e) {
+                codeImport.reject(lineNumber, null, "Malformed JSON.");
+            }
+        }
+        return codeImport.finish();
+    }
+
+    @Override
+    public CodeImportReport importCsv(String gameId, String ownerId, Reader reader) throws IOException {
+        BufferedReader lines = new BufferedReader(reader);
+        String header = lines.readLine();
+        if (header == null) {
+            throw new IllegalArgumentException("Missing CSV header.");
+        }
+        List<String> columns = parseCsvLine(header).stream().map(String::trim).collect(Collectors.toList());
+        if (!columns.contains("codeId")) {
+            throw new IllegalArgumentException("Missing codeId column.");
+        }
+        Import codeImport = new Import(gameId, ownerId);
+        int lineNumber = 1;
+        String line;
+        while ((line = lines.readLine()) != null) {
+            lineNumber++;
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            try {
+                List<String> fields = parseCsvLine(line);
+                if (fields.size() != columns.size()) {
+                    throw new IllegalArgumentException("Expected " + columns.size() + " fields.");
+                }
+                codeImport.add(lineNumber, toCode(columns, fields));
+            } catch (IllegalArgumentException e) {
+                codeImport.reject(lineNumber, null, e.getMessage());
+            }
+        }
+        return codeImport.finish();
+    }
+
+    private Code toCode(List<String> columns, List<String> fields) {
+        Code code = new Code();
+        for (int i = 0; i < columns.size(); i++) {
+            String value = fields.get(i);
+            if (value.isEmpty()) {
+                continue;
+            }
+            switch (columns.get(i)) {
+                case "gameId":
+                    code.setGameId(value);
+                    break;
+                case "codeId":
+                    code.setCodeId(value);
+                    break;
+                case "from":
+                    code.setFrom(parseInstant("from", value));
+                    break;
+                case "to":
+                    code.setTo(parseInstant("to", value));
+                    break;
+                case "pub":
+                    if (!"true".equalsIgnoreCase(value) && !"false".equalsIgnoreCase(value)) {
+                        throw new IllegalArgumentException("Invalid pub value.");
+                    }
+                    code.setPub(Boolean.valueOf(value));
+                    break;
+                case "payload":
+                    code.setPayload(value);
+                    break;
+                case "maxRedemptions":
+                    code.setMaxRedemptions(parseInt("maxRedemptions", value));
+                    break;
+                case "shards":
+                    code.setShards(parseInt("shards", value));
+                    break;
+                default:
+                    // unknown columns are ignored
+            }
+        }
+        return code;
+    }
+
+    /**
+     * Accepts ISO-8601 date-times with a zone offset, like {@code 2017-03-01T00:00:00Z}.
+     */
+    private static Instant parseInstant(String column, String value) {
+        try {
+            return DateTimeFormatter.ISO_OFFSET_DATE_TIME.parse(value, Instant::from);
+        } catch (DateTimeException e) {
+            throw new IllegalArgumentException("Invalid " + column + " value.");
+        }
+    }
+
+    private static int parseInt(String column, String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + column + " value.");
+        }
+    }
+
+    /**
+     * Splits a single CSV line, fields may be quoted with {@code "} and quotes inside them doubled. Line breaks
+     * inside fields are not supported.
+     */
+    static List<String> parseCsvLine(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("Unterminated quote.");
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    /**
+     * State of one running import.
+     */
+    private class Import {
+        private final String gameId;
+        private final String ownerId;
+        private final CodeImportReport report = new CodeImportReport();
+        private List<Code> batch = new ArrayList<>();
+        private Map<String, Integer> batchLines = new LinkedHashMap<>();
+
+        Import(String gameId, String ownerId) {
+            this.gameId = gameId;
+            this.ownerId = ownerId;
+        }
+
+        /**
+         * Validates the row the same way for both formats before it is batched.
+         */
+        void add(int line, Code code) {
+            if (StringUtils.isEmpty(code.getCodeId())) {
+                reject(line, null, "Missing codeId.");
+                return;
+            }
+            if (code.getGameId() != null && !gameId.equals(code.getGameId())) {
+                reject(line, code.getCodeId(), "Code belongs to another game.");
+                return;
+            }
+            if (code.getMaxRedemptions() != null && code.getMaxRedemptions() < 0) {
+                reject(line, code.getCodeId(), "Invalid maxRedemptions value.");
+                return;
+            }
+            if (code.getShards() != null && code.getShards() < 1) {
+                reject(line, code.getCodeId(), "Invalid shards value.");
+                return;
+            }
+            if (code.getShards() != null && code.getShards() > Code.MAX_SHARDS) {
+                reject(line, code.getCodeId(), "At most " + Code.MAX_SHARDS + " shards.");
+                return;
+            }
+            code.setGameId(gameId);
+            code.setOwnerId(ownerId);
+            if (batchLines.containsKey(code.getCodeId())) {
+                // BatchWriteItem rejects duplicate keys, the later row wins
+                flush();
+            }
+            batch.add(code);
+            batchLines.put(code.getCodeId(), line);
+            if (batch.size() == BATCH_SIZE) {
+                flush();
+            }
+        }
+
+        void reject(int line, String codeId, String reason) {
+            report.addRow(new CodeImportRow(line, codeId, INVALID, reason));
+        }
+
+        CodeImportReport finish() {
+            flush();
+            report.getRows().sort(Comparator.comparingInt(CodeImportRow::getLine));
+            return report;
+        }
+
+        private void flush() {
+            if (batch.isEmpty()) {
+                return;
+            }
+            Set<String> shardsChanged = new HashSet<>();
+            Set<String> failed = codeService.saveCodes(batch, code -> shardsChanged.add(code.getCodeId())).stream()
+                    .map(Code::getCodeId)
+                    .collect(Collectors.toSet());
+            batchLines.forEach((codeId, line) -> {
+                if (shardsChanged.contains(codeId)) {
+                    reject(line, codeId, "The number of shards of an existing code cannot be changed.");
+                } else if (failed.contains(codeId)) {
+                    report.addRow(new CodeImportRow(line, codeId, FAILED, "Not written, retry the row."));
+                } else {
+                    report.addRow(new CodeImportRow(line, codeId, IMPORTED, null));
+                }
+            });
+            batch = new ArrayList<>();
+            batchLines = new LinkedHashMap<>();
+        }
+    }
+}
@@ -1,8 +1,15 @@
 package com.czequered.promocodes.service;
 
 import com.czequered.promocodes.model.Code;
+import com.czequered.promocodes.model.Page;
 
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.stream.Stream;
 
 /**
  * @author Martin Varga
@@ -10,9 +17,88 @@ import java.util.List;
 public interface CodeService {
     List<Code> getCodes(String gameId);
 
+    /**
+     * Codes of the game read lazily page by page, the stream can be consumed only once.
+     */
+    Stream<Code> streamCodes(String gameId);
+
+    /**
+     * @param next continuation token from the previous page, {@code null} for the first page
+     * @throws IllegalArgumentException when {@code next} is not a valid continuation token
+     */
+    Page<Code> getCodes(String gameId, int limit, String next);
+
+    /**
+     * Codes of the game whose validity window contains {@code now}, ordered by the end of the window.
+     */
+    List<Code> getActiveCodes(String gameId, Instant now);
+
     Code getCode(String gameId, String codeId);
 
-    void deleteCode(String gameId, String codeId);
+    /**
+     * Looks up a code for anonymous users, the result may be a few seconds old.
+     *
+     * @return {@code null} when the code does not exist or is not public
+     */
+    Code getPublicCode(String gameId, String codeId);
+
+    /**
+     * Looks up several codes at once, duplicate ids are looked up once.
+     *
+     * @return codes keyed by codeId in the order of {@code codeIds}, {@code null} for codes that do not exist
+     */
+    Map<String, Code> getCodes(String gameId, Collection<String> codeIds);
+
+    /**
+     * Deletes the code unless it belongs to another user.
+     *
+     * @return {@code false} when the code belongs to another owner than {@code userId}
+     */
+    boolean deleteCode(String gameId, String codeId, String userId);
 
+    /**
+     * Deletes the codes of the game with their redemption counters, batch by batch. Safe to call again when it
+     * stopped halfway, the codes deleted already are not found again. Game ids are not unique across users, so
+     * codes owned by another user than {@code ownerId} are left alone.
+     *
+     * @param ownerId the user whose game is deleted
+     * @param progress called with the number of codes deleted by each batch
+     * @throws IllegalStateException when a batch could not be deleted, the codes from that batch on are left
+     */
+    void deleteCodes(String gameId, String ownerId, IntConsumer progress);
+
+    /**
+     * Creates the code or replaces the existing one, its redemption count is kept.
+     *
+     * @return the saved code, {@code null} when it exists with another owner
+     * @throws ShardsChangedException when the code exists with another number of shards
+     */
     Code saveCode(Code code);
+
+    /**
+     * @return the saved code, {@code null} when a code with the same id already exists
+     */
+    Code createCode(Code code);
+
+    /**
+     * @return the saved code, {@code null} when the code does not exist
+     * @throws ShardsChangedException when the code exists with another number of shards
+     */
+    Code updateCode(Code code);
+
+    /**
+     * Redeems the code once for the user, atomically.
+     *
+     * @return the redeemed code, {@code null} when it does not exist, belongs to another owner than {@code userId},
+     * is not valid now or has been used up
+     */
+    Code redeem(String gameId, String codeId, String userId);
+
+    /**
+     * Saves the codes in batches, existing codes are replaced but keep their redemption count.
+     *
+     * @param shardsChanged receives the existing codes whose number of shards would change, they are not saved
+     * @return codes that could not be saved and can be retried
+     */
+    List<Code> saveCodes(List<Code> codes, Consumer<Code> shardsChanged);
 }
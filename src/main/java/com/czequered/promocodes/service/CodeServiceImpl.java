@@ -1,44 +1,372 @@
 package com.czequered.promocodes.service;
 
 import com.czequered.promocodes.model.Code;
+import com.czequered.promocodes.model.Page;
 import com.czequered.promocodes.repository.CodeRepository;
+import com.czequered.promocodes.repository.RedemptionCounterRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedOperationParameter;
+import org.springframework.jmx.export.annotation.ManagedResource;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * @author Martin Varga
  */
 @Service
+@ManagedResource
 public class CodeServiceImpl implements CodeService {
+    private static final int CACHE_SIZE = 10000;
+    static final int DELETE_BATCH_SIZE = 25;
+
     private CodeRepository codeRepository;
+    private RedemptionCounterRepository counterRepository;
+    private ClockService clockService;
+    private ExpiringCache<Code, Code> definitions;
+    private ExpiringCache<Code, Integer> redeemedTotals;
+    private ExpiringCache<Code, Optional<Code>> publicCodes;
 
+    /**
+     * @param definitionTtlSeconds how long redemption trusts a code it has read, e.g. whether it is sharded
+     * @param redeemedTotalTtlSeconds how long a summed up count of a sharded code is reused
+     * @param publicCacheSize how many public lookups are cached, including the ones that found nothing
+     * @param publicTtlSeconds how long a public lookup is reused
+     */
     @Autowired
-    public CodeServiceImpl(CodeRepository codeRepository) {
+    public CodeServiceImpl(CodeRepository codeRepository,
+                           RedemptionCounterRepository counterRepository,
+                           ClockService clockService,
+                           @Value("${jepice.cache.codes.ttl:5}") long definitionTtlSeconds,
+                           @Value("${jepice.cache.redemptions.ttl:2}") long redeemedTotalTtlSeconds,
+                           @Value("${jepice.cache.public.size:100000}") int publicCacheSize,
+                           @Value("${jepice.cache.public.ttl:30}") long publicTtlSeconds) {
         this.codeRepository = codeRepository;
+        this.counterRepository = counterRepository;
+        this.clockService = clockService;
+        this.definitions = new ExpiringCache<>(CACHE_SIZE, Duration.ofSeconds(definitionTtlSeconds), clockService);
+        this.redeemedTotals = new ExpiringCache<>(CACHE_SIZE, Duration.ofSeconds(redeemedTotalTtlSeconds), clockService);
+        this.publicCodes = new ExpiringCache<>(publicCacheSize, Duration.ofSeconds(publicTtlSeconds), clockService);
     }
 
+    /**
+     * Sharded codes returned by the reads carry the total of their shards, the count stored on the code item is not
+     * used for them.
+     */
     @Override
     public List<Code> getCodes(String gameId) {
-        return codeRepository.findByGameId(gameId);
+        List<Code> codes = codeRepository.findByGameId(gameId);
+        codes.forEach(this::fillRedeemedTotal);
+        return codes;
+    }
+
+    @Override
+    public Stream<Code> streamCodes(String gameId) {
+        return codeRepository.streamByGameId(gameId).peek(this::fillRedeemedTotal);
+    }
+
+    @Override
+    public Page<Code> getCodes(String gameId, int limit, String next) {
+        Page<Code> page = codeRepository.findByGameId(gameId, limit, next);
+        page.getItems().forEach(this::fillRedeemedTotal);
+        return page;
+    }
+
+    @Override
+    public List<Code> getActiveCodes(String gameId, Instant now) {
+        List<Code> active = codeRepository.findActiveByGameId(gameId, now);
+        active.forEach(this::fillRedeemedTotal);
+        return active;
     }
 
     @Override
     public Code getCode(String gameId, String codeId) {
-        return codeRepository.findByGameIdAndCodeId(gameId, codeId);
+        Code code = codeRepository.findByGameIdAndCodeId(gameId, codeId);
+        if (code != null) {
+            fillRedeemedTotal(code);
+        }
+        return code;
+    }
+
+    /**
+     * Read through a cache, missing and private codes are cached too so that guessing codes does not reach
+     * DynamoDB. Writes through this service invalidate the cached lookups of the instance.
+     */
+    @Override
+    public Code getPublicCode(String gameId, String codeId) {
+        return publicCodes.get(new Code(gameId, codeId), key -> {
+            Code code = codeRepository.findByGameIdAndCodeId(gameId, codeId);
+            return Optional.ofNullable(code).filter(c -> Boolean.TRUE.equals(c.getPub()));
+        }).map(cached -> {
+            if (!cached.isSharded()) {
+                return cached;
+            }
+            Code code = new Code(cached);
+            fillRedeemedTotal(code);
+            return code;
+        }).orElse(null);
     }
 
     @Override
-    public void deleteCode(String gameId, String codeId) {
+    public Map<String, Code> getCodes(String gameId, Collection<String> codeIds) {
+        Map<String, Code> codes = new LinkedHashMap<>();
+        codeIds.forEach(codeId -> codes.put(codeId, null));
+        if (!codes.isEmpty()) {
+            codeRepository.findByGameIdAndCodeIds(gameId, new LinkedHashSet<>(codes.keySet()))
+                    .forEach(code -> {
+                        fillRedeemedTotal(code);
+                        codes.put(code.getCodeId(), code);
+                    });
+        }
+        return codes;
+    }
+
+    @Override
+    public boolean deleteCode(String gameId, String codeId, String userId) {
         Code toDelete = new Code();
         toDelete.setGameId(gameId);
         toDelete.setCodeId(codeId);
-        codeRepository.delete(toDelete);
+        Code existing = codeRepository.findByGameIdAndCodeId(gameId, codeId);
+        if (!codeRepository.delete(toDelete, userId)) {
+            return false;
+        }
+        if (existing != null && existing.isSharded()) {
+            counterRepository.deleteAll(gameId, codeId, existing.getShards());
+        }
+        definitions.invalidate(toDelete);
+        redeemedTotals.invalidate(toDelete);
+        publicCodes.invalidate(toDelete);
+        return true;
+    }
+
+    /**
+     * Reads the game partition lazily and deletes each page of {@value #DELETE_BATCH_SIZE} codes, the size of a
+     * BatchWriteItem request. Counter shards of a batch are deleted before its codes so that none are left without
+     * a code pointing at them. The partition is read strongly consistent, so codes written before the call are
+     * found. Codes without an owner are deleted, they belong to whoever owns the game.
+     */
+    @Override
+    public void deleteCodes(String gameId, String ownerId, IntConsumer progress) {
+        List<Code> batch = new ArrayList<>();
+        for (Iterator<Code> codes = codeRepository.streamByGameId(gameId, true).iterator(); codes.hasNext(); ) {
+            Code code = codes.next();
+            if (code.getOwnerId() != null && !code.getOwnerId().equals(ownerId)) {
+                continue;
+            }
+            batch.add(code);
+            if (batch.size() == DELETE_BATCH_SIZE) {
+                deleteBatch(gameId, batch, progress);
+                batch = new ArrayList<>();
+            }
+        }
+        if (!batch.isEmpty()) {
+            deleteBatch(gameId, batch, progress);
+        }
     }
 
+    private void deleteBatch(String gameId, List<Code> batch, IntConsumer progress) {
+        batch.stream()
+                .filter(Code::isSharded)
+                .forEach(code -> counterRepository.deleteAll(gameId, code.getCodeId(), code.getShards()));
+        List<Code> failed = codeRepository.batchDelete(batch);
+        batch.forEach(code -> {
+            definitions.invalidate(code);
+            redeemedTotals.invalidate(code);
+            publicCodes.invalidate(code);
+        });
+        if (!failed.isEmpty()) {
+            throw new IllegalStateException(failed.size() + " codes of game '" + gameId + "' were not deleted");
+        }
+        progress.accept(batch.size());
+    }
+
+    /**
+     * Cached lookups are dropped after the write, a lookup running during the write may cache the old code but
+     * not past the invalidation.
+     */
     @Override
     public Code saveCode(Code code) {
-        return codeRepository.save(code);
+        createCounters(code);
+        Code saved = codeRepository.save(code);
+        if (saved == null) {
+            checkShards(code);
+            return null;
+        }
+        invalidate(code);
+        return saved;
+    }
+
+    @Override
+    public Code createCode(Code code) {
+        createCounters(code);
+        if (!codeRepository.create(code)) {
+            return null;
+        }
+        invalidate(code);
+        return code;
+    }
+
+    /**
+     * The stored code is read only when the update is refused, to tell a changed number of shards apart.
+     */
+    @Override
+    public Code updateCode(Code code) {
+        if (!codeRepository.update(code)) {
+            checkShards(code);
+            return null;
+        }
+        invalidate(code);
+        return code;
+    }
+
+    private void checkShards(Code code) {
+        Code existing = codeRepository.findByGameIdAndCodeId(code.getGameId(), code.getCodeId());
+        if (existing != null && existing.getShardCount() != code.getShardCount()) {
+            throw new ShardsChangedException(code.getGameId(), code.getCodeId());
+        }
+    }
+
+    /**
+     * Shards are created before their code, redemptions count only on shards that exist.
+     */
+    private void createCounters(Code code) {
+        if (code.isSharded()) {
+            counterRepository.createAll(code.getGameId(), code.getCodeId(), code.getShards());
+        }
+    }
+
+    private void invalidate(Code code) {
+        definitions.invalidate(code);
+        publicCodes.invalidate(code);
+    }
+
+    /**
+     * Codes that are not sharded are redeemed with one conditional write to the code, which checks the owner too.
+     * Sharded codes are checked against a recently read definition, owner included, and counted on a random shard
+     * with remaining quota, the returned count is a total that may be up to {@code jepice.cache.redemptions.ttl}
+     * seconds old.
+     */
+    @Override
+    public Code redeem(String gameId, String codeId, String userId) {
+        Instant now = clockService.getClock().instant();
+        Code definition = definitions.get(new Code(gameId, codeId),
+                key -> codeRepository.findByGameIdAndCodeId(gameId, codeId));
+        if (definition == null || !definition.isSharded()) {
+            return codeRepository.redeem(gameId, codeId, userId, now);
+        }
+        if (definition.getOwnerId() != null && !definition.getOwnerId().equals(userId)) {
+            return null;
+        }
+        return redeemSharded(definition, now);
+    }
+
+    private Code redeemSharded(Code code, Instant now) {
+        if (!code.isValidAt(now.toEpochMilli())) {
+            return null;
+        }
+        int shards = code.getShards();
+        int first = ThreadLocalRandom.current().nextInt(shards);
+        for (int i = 0; i < shards; i++) {
+            int shard = (first + i) % shards;
+            Integer quota = quota(code.getMaxRedemptions(), shards, shard);
+            if (quota != null && quota <= 0) {
+                continue;
+            }
+            if (counterRepository.increment(code.getGameId(), code.getCodeId(), shard, quota)) {
+                Code redeemed = new Code(code);
+                redeemed.setRedeemed(redeemedTotal(code));
+                return redeemed;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Splits the limit over the shards so that the quotas add up to exactly {@code maxRedemptions}.
+     */
+    static Integer quota(Integer maxRedemptions, int shards, int shard) {
+        if (maxRedemptions == null) {
+            return null;
+        }
+        return maxRedemptions / shards + (shard < maxRedemptions % shards ? 1 : 0);
+    }
+
+    private void fillRedeemedTotal(Code code) {
+        if (code.isSharded()) {
+            code.setRedeemed(redeemedTotal(code));
+        }
+    }
+
+    private int redeemedTotal(Code code) {
+        return redeemedTotals.get(new Code(code.getGameId(), code.getCodeId()),
+                key -> counterRepository.total(code.getGameId(), code.getCodeId(), code.getShards()));
+    }
+
+    /**
+     * The stored codes are looked up in one batch first. New codes are written with BatchWriteItem, which replaces
+     * whole items, existing codes are updated one by one so their redemption counter is kept. A code created by
+     * someone else between the lookup and the batch write is replaced, counter included.
+     */
+    @Override
+    public List<Code> saveCodes(List<Code> codes, Consumer<Code> shardsChanged) {
+        Map<Code, Code> stored = new HashMap<>();
+        codes.stream()
+                .collect(Collectors.groupingBy(Code::getGameId, LinkedHashMap::new,
+                        Collectors.mapping(Code::getCodeId, Collectors.toCollection(LinkedHashSet::new))))
+                .forEach((gameId, codeIds) -> codeRepository.findByGameIdAndCodeIds(gameId, codeIds)
+                        .forEach(code -> stored.put(code, code)));
+        List<Code> created = new ArrayList<>();
+        List<Code> failed = new ArrayList<>();
+        for (Code code : codes) {
+            Code existing = stored.get(code);
+            if (existing == null) {
+                created.add(code);
+            } else if (existing.getShardCount() != code.getShardCount()) {
+                shardsChanged.accept(code);
+            } else if (codeRepository.update(code)) {
+                invalidate(code);
+            } else {
+                failed.add(code);
+            }
+        }
+        if (!created.isEmpty()) {
+            created.forEach(this::createCounters);
+            failed.addAll(codeRepository.batchSave(created));
+            created.forEach(this::invalidate);
+        }
+        return failed;
+    }
+
+    /**
+     * Codes written before the window became numeric are migrated when read one by one, this migrates a whole
+     * game at once so that all its codes are found by {@link #getActiveCodes(String, Instant)}. Also creates the
+     * missing shards of sharded codes created before the shards were created with their code, redemptions do not
+     * create them.
+     */
+    @ManagedOperation(description = "Migrates the codes of a game to the numeric, indexed validity window")
+    @ManagedOperationParameter(name = "gameId", description = "Game whose codes are migrated")
+    public int migrateCodes(String gameId) {
+        int migrated = codeRepository.migrateByGameId(gameId);
+        for (Iterator<Code> codes = codeRepository.streamByGameId(gameId).iterator(); codes.hasNext(); ) {
+            createCounters(codes.next());
+        }
+        return migrated;
     }
 }
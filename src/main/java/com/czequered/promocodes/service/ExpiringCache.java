@@ -0,0 +1,156 @@
+package com.czequered.promocodes.service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Bounded in-memory cache, entries expire after a fixed time to live and the least recently used entries are evicted
+ * when the cache is full. A cache with size 0 keeps nothing. Thread safe without a lock, values are loaded outside
+ * of the map so concurrent misses for the same key may load it more than once.
+ * <p>
+ * Every entry carries its expiry and the time it was last read. The put that finds the cache over its size sweeps
+ * it, drops the expired entries and then the least recently used ones down to nine tenths of the size, while
+ * concurrent puts go on without waiting. So the cache may briefly hold more entries than its size and evicts in
+ * approximately least recently used order.
+ *
+ * @author Martin Varga
+ */
+public class ExpiringCache<K, V> {
+    private final int maxSize;
+    private final int sweptSize;
+    private final Duration ttl;
+    private final ClockService clockService;
+    private final ConcurrentMap<K, Entry<V>> entries = new ConcurrentHashMap<>();
+    private final AtomicBoolean sweeping = new AtomicBoolean();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public ExpiringCache(int maxSize, Duration ttl, ClockService clockService) {
+        this.maxSize = maxSize;
+        this.sweptSize = maxSize - maxSize / 10;
+        this.ttl = ttl;
+        this.clockService = clockService;
+    }
+
+    /**
+     * @return the cached value or {@code null} when there is none or it has expired
+     */
+    public V get(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry != null && now().isBefore(entry.expiresAt)) {
+            entry.lastRead = System.nanoTime();
+            hits.incrementAndGet();
+            return entry.value;
+        }
+        if (entry != null) {
+            entries.remove(key, entry);
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Returns the cached value, on a miss the value is loaded and cached unless it is {@code null}.
+     */
+    public V get(K key, Function<K, V> loader) {
+        V value = get(key);
+        if (value == null) {
+            value = loader.apply(key);
+            if (value != null) {
+                put(key, value);
+            }
+        }
+        return value;
+    }
+
+    public void put(K key, V value) {
+        put(key, value, now().plus(ttl));
+    }
+
+    /**
+     * Caches the value until {@code expiresAt} or the cache's time to live, whichever comes first.
+     */
+    public void put(K key, V value, Instant expiresAt) {
+        if (maxSize <= 0) {
+            return;
+        }
+        Instant maxExpiresAt = now().plus(ttl);
+        Instant expiry = expiresAt.isBefore(maxExpiresAt) ? expiresAt : maxExpiresAt;
+        entries.put(key, new Entry<>(value, expiry));
+        if (entries.size() > maxSize && sweeping.compareAndSet(false, true)) {
+            try {
+                sweep();
+            } finally {
+                sweeping.set(false);
+            }
+        }
+    }
+
+    public void invalidate(K key) {
+        entries.remove(key);
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Drops the expired entries, then the ones read longest ago until the cache is down to {@link #sweptSize}.
+     */
+    private void sweep() {
+        Instant now = now();
+        entries.forEach((key, entry) -> {
+            if (!now.isBefore(entry.expiresAt)) {
+                entries.remove(key, entry);
+            }
+        });
+        int excess = entries.size() - sweptSize;
+        if (excess <= 0) {
+            return;
+        }
+        long[] lastReads = entries.values().stream().mapToLong(entry -> entry.lastRead).toArray();
+        if (lastReads.length == 0) {
+            return;
+        }
+        Arrays.sort(lastReads);
+        long threshold = lastReads[Math.min(excess, lastReads.length) - 1];
+        entries.forEach((key, entry) -> {
+            if (entry.lastRead <= threshold) {
+                entries.remove(key, entry);
+            }
+        });
+    }
+
+    private Instant now() {
+        return Instant.ofEpochMilli(clockService.getClock().millis());
+    }
+
+    private static class Entry<V> {
+        private final V value;
+        private final Instant expiresAt;
+        private volatile long lastRead = System.nanoTime();
+
+        Entry(V value, Instant expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
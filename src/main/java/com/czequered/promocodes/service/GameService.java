@@ -12,7 +12,25 @@ public interface GameService {
 
     Game getGame(String userId, String gameId);
 
+    /**
+     * Whether the user owns the game, answers may come from a cache.
+     */
+    boolean isOwner(String userId, String gameId);
+
+    /**
+     * @param consistentRead {@code true} to read the game bypassing the cache with a strongly consistent read, it
+     * is seen deleted as soon as its deletion has started on any instance
+     */
+    boolean isOwner(String userId, String gameId, boolean consistentRead);
+
+    /**
+     * Deletes the game with all its codes. The game is gone for its owner when this returns, the codes are deleted
+     * in the background.
+     */
     void deleteGame(String userId, String gameId);
 
+    /**
+     * @return the saved game, {@code null} when the game is being deleted
+     */
     Game saveGame(Game game);
 }
@@ -1,48 +1,249 @@
 package com.czequered.promocodes.service;
 
 import com.czequered.promocodes.model.Game;
+import com.czequered.promocodes.repository.CodeRepository;
 import com.czequered.promocodes.repository.GameRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
 
 /**
+ * A deleted game is marked with a tombstone, its codes are deleted in the background and the Game item goes last.
+ * Until then the game is hidden from its owner. Deletions stopped by a restart are found in the sparse index of the
+ * tombstones and resumed by {@link #resumeDeletions()}, on start only where {@code jepice.games.resume-deletions}
+ * is on, which should be a single instance.
+ *
  * @author Martin Varga
  */
 @Service
+@ManagedResource
 public class GameServiceImpl implements GameService {
+    Logger logger = LoggerFactory.getLogger(GameServiceImpl.class);
+
     private GameRepository repository;
+    private CodeRepository codeRepository;
+    private CodeService codeService;
     private IdGeneratorService idGeneratorService;
+    private ClockService clockService;
+    private Executor executor;
+    private boolean resumeDeletions;
+    private ExpiringCache<Game, Boolean> ownershipCache;
+    private final Map<String, AtomicLong> deletions = new ConcurrentHashMap<>();
 
+    /**
+     * @param executor runs the deletions of the codes of deleted games, not the executor of requests
+     * @param resumeDeletions whether deletions stopped by a restart are looked up when the application starts
+     */
     @Autowired
-    public GameServiceImpl(GameRepository repository, IdGeneratorService idGeneratorService) {
+    public GameServiceImpl(GameRepository repository,
+                           CodeRepository codeRepository,
+                           CodeService codeService,
+                           IdGeneratorService idGeneratorService,
+                           ClockService clockService,
+                           @Qualifier("maintenanceExecutor") Executor executor,
+                           @Value("${jepice.games.resume-deletions:false}") boolean resumeDeletions,
+                           @Value("${jepice.cache.ownership.size:10000}") int ownershipCacheSize,
+                           @Value("${jepice.cache.ownership.ttl:60}") long ownershipCacheTtlSeconds) {
         this.repository = repository;
+        this.codeRepository = codeRepository;
+        this.codeService = codeService;
         this.idGeneratorService = idGeneratorService;
+        this.clockService = clockService;
+        this.executor = executor;
+        this.resumeDeletions = resumeDeletions;
+        this.ownershipCache = new ExpiringCache<>(ownershipCacheSize, Duration.ofSeconds(ownershipCacheTtlSeconds), clockService);
     }
 
     @Override public List<Game> getGames(String userId) {
-        return repository.findByUserId(userId);
+        return repository.findByUserId(userId).stream()
+                .filter(game -> !game.isDeleted())
+                .collect(Collectors.toList());
     }
 
     @Override public Game getGame(String userId, String gameId) {
-        return repository.findByUserIdAndGameId(userId, gameId);
+        Game game = repository.findByUserIdAndGameId(userId, gameId);
+        return game == null || game.isDeleted() ? null : game;
     }
 
+    /**
+     * Both owned and not owned games are cached, a forbidden pair does not hit DynamoDB again until the entry
+     * expires.
+     */
+    @Override
+    public boolean isOwner(String userId, String gameId) {
+        return ownershipCache.get(new Game(userId, gameId),
+                key -> getGame(userId, gameId) != null);
+    }
+
+    /**
+     * A consistent answer replaces the cached one.
+     */
+    @Override
+    public boolean isOwner(String userId, String gameId, boolean consistentRead) {
+        if (!consistentRead) {
+            return isOwner(userId, gameId);
+        }
+        Game game = repository.findByUserIdAndGameId(userId, gameId, true);
+        boolean owner = game != null && !game.isDeleted();
+        ownershipCache.put(new Game(userId, gameId), owner);
+        return owner;
+    }
+
+    /**
+     * Stores the tombstone and returns, the codes are deleted on the executor. Deleting a game that is being
+     * deleted already starts its deletion again unless it is running on this instance.
+     */
     @Override
     public void deleteGame(String userId, String gameId) {
-        repository.delete(new Game(userId, gameId));
+        ownershipCache.put(new Game(userId, gameId), false);
+        Game game = repository.findByUserIdAndGameId(userId, gameId);
+        if (game == null) {
+            return;
+        }
+        if (!game.isDeleted()) {
+            game.setDeletedAt(clockService.getClock().millis());
+            if (!repository.update(game)) {
+                return;
+            }
+        }
+        executor.execute(() -> purge(game));
+    }
+
+    /**
+     * Deletes the codes of a game marked deleted, then the game itself. When it fails the tombstone stays and the
+     * deletion is resumed by the next {@link #resumeDeletions()}.
+     */
+    void purge(Game game) {
+        String gameId = game.getGameId();
+        AtomicLong deleted = new AtomicLong();
+        if (deletions.putIfAbsent(gameId, deleted) != null) {
+            return;
+        }
+        try {
+            codeService.deleteCodes(gameId, game.getUserId(), deleted::addAndGet);
+            repository.delete(game);
+            logger.info("Deleted game '{}' with {} codes", gameId, deleted.get());
+        } catch (RuntimeException e) {
+            logger.warn("Deleting game '{}' stopped after {} codes", gameId, deleted.get(), e);
+        } finally {
+            deletions.remove(gameId);
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeDeletionsOnStart() {
+        if (resumeDeletions) {
+            executor.execute(() -> {
+                try {
+                    resumeDeletions();
+                } catch (RuntimeException e) {
+                    logger.warn("Looking up deleted games failed", e);
+                }
+            });
+        }
     }
 
+    /**
+     * Looks the tombstones up in their sparse index and deletes their games one after another on the calling
+     * thread.
+     */
+    @ManagedOperation(description = "Finishes the deletions of games stopped by a restart or a failure")
+    public int resumeDeletions() {
+        int resumed = 0;
+        for (Game game : repository.findDeleted()) {
+            if (!deletions.containsKey(game.getGameId())) {
+                logger.info("Resuming deletion of game '{}'", game.getGameId());
+                purge(game);
+                resumed++;
+            }
+        }
+        return resumed;
+    }
+
+    @ManagedAttribute(description = "Codes deleted so far by the game deletions running on this instance")
+    public Map<String, Long> getDeletions() {
+        Map<String, Long> progress = new HashMap<>();
+        deletions.forEach((gameId, deleted) -> progress.put(gameId, deleted.get()));
+        return progress;
+    }
+
+    /**
+     * A game without an id is created under a new id with a conditional write, the id is regenerated only when it
+     * is already taken. A game with an id is only replaced, so that nobody creates a game under an id of their
+     * choice, the codes are partitioned by the game id alone.
+     */
     @Override
     public Game saveGame(Game game) {
-        while (game.getGameId() == null) {
-            String gameIdCandidate = idGeneratorService.generate();
-            Game byUserIdAndGameId = repository.findByUserIdAndGameId(game.getUserId(), gameIdCandidate);
-            if (byUserIdAndGameId == null) {
-                game.setGameId(gameIdCandidate);
+        Game saved;
+        if (game.getGameId() == null) {
+            do {
+                game.setGameId(idGeneratorService.generate());
+            } while (!repository.create(game));
+            saved = game;
+        } else {
+            if (!repository.replace(game)) {
+                return null;
+            }
+            saved = game;
+        }
+        ownershipCache.put(new Game(saved.getUserId(), saved.getGameId()), true);
+        return saved;
+    }
+
+    @ManagedAttribute(description = "Ownership checks answered from the cache")
+    public long getOwnershipCacheHits() {
+        return ownershipCache.getHits();
+    }
+
+    @ManagedAttribute(description = "Ownership checks that read the Game table")
+    public long getOwnershipCacheMisses() {
+        return ownershipCache.getMisses();
+    }
+
+    @ManagedAttribute(description = "Cached ownership entries")
+    public int getOwnershipCacheSize() {
+        return ownershipCache.size();
+    }
+
+    @ManagedOperation(description = "Drops all cached ownership entries")
+    public void clearOwnershipCache() {
+        ownershipCache.clear();
+    }
+
+    /**
+     * Codes are written with the owner of their game since it was stored, this adds it to the codes written before
+     * so that their access checks do not read the Game table. Scans the Game table, safe to run again.
+     */
+    @ManagedOperation(description = "Stores the game owner on the codes that have none")
+    public long backfillCodeOwners() {
+        long assigned = 0;
+        for (Iterator<Game> games = repository.streamAll().iterator(); games.hasNext(); ) {
+            Game game = games.next();
+            int gameAssigned = codeRepository.assignOwnerByGameId(game.getGameId(), game.getUserId());
+            if (gameAssigned > 0) {
+                logger.info("Stored owner '{}' on {} codes of game '{}'", game.getUserId(), gameAssigned,
+                        game.getGameId());
             }
+            assigned += gameAssigned;
         }
-        return repository.save(game);
+        return assigned;
     }
 }
@@ -1,21 +1,45 @@
 package com.czequered.promocodes.service;
 
-import org.apache.commons.lang3.StringUtils;
 import org.springframework.stereotype.Service;
 
-import java.math.BigInteger;
 import java.security.SecureRandom;
 
 /**
+ * Generates 26 character ids from 130 random bits, using the base-32 alphabet {@code 0-9A-V}. Each thread draws
+ * from its own {@link SecureRandom} through a buffer refilled every {@value #IDS_PER_REFILL} ids, so concurrent
+ * callers do not contend on a shared generator.
+ *
  * @author Martin Varga
  */
 @Service
 public class IdGeneratorServiceImpl implements IdGeneratorService {
+    static final int ID_LENGTH = 26;
+    private static final int IDS_PER_REFILL = 64;
+    private static final char[] ALPHABET = "0123456789ABCDEFGHIJKLMNOPQRSTUV".toCharArray();
 
-    private SecureRandom random = new SecureRandom();
+    private final ThreadLocal<EntropyBuffer> buffers = ThreadLocal.withInitial(EntropyBuffer::new);
 
     @Override
     public String generate() {
-        return StringUtils.rightPad(new BigInteger(130, random).toString(32).toUpperCase(), 26, 'X');
+        return buffers.get().nextId();
+    }
+
+    private static class EntropyBuffer {
+        private final SecureRandom random = new SecureRandom();
+        private final byte[] bytes = new byte[ID_LENGTH * IDS_PER_REFILL];
+        private int position = bytes.length;
+
+        String nextId() {
+            if (position == bytes.length) {
+                random.nextBytes(bytes);
+                position = 0;
+            }
+            char[] id = new char[ID_LENGTH];
+            for (int i = 0; i < ID_LENGTH; i++) {
+                // 256 is a multiple of 32, the low 5 bits of a random byte are uniform
+                id[i] = ALPHABET[bytes[position++] & 0x1F];
+            }
+            return new String(id);
+        }
     }
 }
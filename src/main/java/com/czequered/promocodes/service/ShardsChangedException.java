@@ -0,0 +1,12 @@
+package com.czequered.promocodes.service;
+
+/**
+ * The number of shards of an existing code was to be changed, its redemption counts would no longer add up.
+ *
+ * @author Martin Varga
+ */
+public class ShardsChangedException extends RuntimeException {
+    public ShardsChangedException(String gameId, String codeId) {
+        super("Code " + gameId + "/" + codeId + " was stored with another number of shards.");
+    }
+}
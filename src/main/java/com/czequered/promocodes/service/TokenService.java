@@ -1,7 +1,5 @@
 package com.czequered.promocodes.service;
 
-import java.util.Date;
-
 /**
  * @author Martin Varga
  */
@@ -11,4 +9,11 @@ public interface TokenService {
     String generateToken(String userName);
 
     void validateToken(String token) throws InvalidTokenException;
+
+    /**
+     * Verifies the signature and expiry of the token.
+     *
+     * @throws InvalidTokenException when the token is empty, invalid, expired or has no userId
+     */
+    VerifiedToken verifyToken(String token) throws InvalidTokenException;
 }
@@ -1,13 +1,26 @@
 package com.czequered.promocodes.service;
 
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwsHeader;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.SignatureException;
+import io.jsonwebtoken.SigningKeyResolverAdapter;
+import io.jsonwebtoken.impl.TextCodec;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Base64;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
@@ -16,34 +29,58 @@ import static io.jsonwebtoken.Claims.EXPIRATION;
 import static io.jsonwebtoken.Claims.SUBJECT;
 
 /**
+ * Signing and verification keys are derived once from the configured secrets and shared by all requests. Tokens
+ * carry the {@code kid} of the key that signed them, so a rotated secret stays valid for verification while it is
+ * listed in {@code jepice.jwt.previous-secrets}.
+ *
  * @author Martin Varga
  */
 @Service
 public class TokenServiceImpl implements TokenService {
+    private static final SignatureAlgorithm ALGORITHM = SignatureAlgorithm.HS512;
 
-    private String secret;
     private ClockService clockService;
     private Long expiration;
+    private ExpiringCache<String, VerifiedToken> verifiedTokens;
+    private Key signingKey;
+    private String signingKeyId;
+    private Map<String, Key> verificationKeys = new HashMap<>();
+    private JwtParser parser;
 
+    /**
+     * @param previousSecrets secrets of earlier keys, accepted for verification only
+     * @param cacheSize number of verified tokens to remember, 0 turns the cache off
+     */
     @Autowired TokenServiceImpl(@Value("${jepice.jwt.expiry}") Long expiration,
                                 @Value("${jepice.jwt.secret}") String secret,
+                                @Value("${jepice.jwt.previous-secrets:}") String[] previousSecrets,
+                                @Value("${jepice.jwt.cache-size:10000}") int cacheSize,
                                 ClockService clockService) {
         this.expiration = expiration;
-        this.secret = secret;
         this.clockService = clockService;
+        this.verifiedTokens = new ExpiringCache<>(cacheSize, Duration.ofMillis(expiration), clockService);
+        this.signingKey = deriveKey(secret);
+        this.signingKeyId = keyId(signingKey);
+        verificationKeys.put(signingKeyId, signingKey);
+        Arrays.stream(previousSecrets)
+                .map(String::trim)
+                .filter(s -> !s.isEmpty())
+                .map(this::deriveKey)
+                .forEach(key -> verificationKeys.putIfAbsent(keyId(key), key));
+        this.parser = Jwts.parser()
+                .setClock(() -> new Date(clockService.getClock().millis()))
+                .setSigningKeyResolver(new SigningKeyResolverAdapter() {
+                    // jjwt declares the header raw, JwsHeader<?> would clash with the method instead of overriding it
+                    @Override
+                    @SuppressWarnings("rawtypes")
+                    public Key resolveSigningKey(JwsHeader header, Claims claims) {
+                        return verificationKey(header.getKeyId());
+                    }
+                });
     }
 
     @Override public String getUserIdFromToken(String token) throws InvalidTokenException {
-        try {
-            final Claims claims = getClaimsFromToken(token);
-            String subject = claims.getSubject();
-            if (StringUtils.isEmpty(subject)) {
-                throw new IllegalArgumentException("UserId must be present.");
-            }
-            return subject;
-        } catch (Exception e) {
-            throw new InvalidTokenException("Invalid userId.", e);
-        }
+        return verifyToken(token).getUserId();
     }
 
     @Override public String generateToken(String userId) {
@@ -54,22 +91,83 @@ public class TokenServiceImpl implements TokenService {
     }
 
     @Override public void validateToken(String token) throws InvalidTokenException {
+        verifyToken(token);
+    }
+
+    /**
+     * Verified tokens are cached by their SHA-256 digest until their expiry, a cached token is accepted exactly as
+     * long as the parser would accept it, i.e. until the clock passes {@code exp}. Tokens without {@code exp} are
+     * accepted as the parser accepts them and are cached for the cache TTL only.
+     */
+    @Override public VerifiedToken verifyToken(String token) throws InvalidTokenException {
         if (StringUtils.isEmpty(token)) {
             throw new InvalidTokenException("Empty token.");
         }
+        String digest = digest(token);
+        VerifiedToken cached = verifiedTokens.get(digest);
+        if (cached != null) {
+            return cached;
+        }
+        VerifiedToken verified;
         try {
-            getClaimsFromToken(token);
+            final Claims claims = getClaimsFromToken(token);
+            String subject = claims.getSubject();
+            if (StringUtils.isEmpty(subject)) {
+                throw new IllegalArgumentException("UserId must be present.");
+            }
+            Date expiration = claims.getExpiration();
+            verified = new VerifiedToken(subject, expiration == null ? null : expiration.toInstant());
         } catch (Exception e) {
             throw new InvalidTokenException("Invalid token.", e);
         }
+        if (verified.getExpiresAt() == null) {
+            verifiedTokens.put(digest, verified);
+        } else {
+            verifiedTokens.put(digest, verified, verified.getExpiresAt().plusMillis(1));
+        }
+        return verified;
     }
 
     private Claims getClaimsFromToken(String token) {
-        return Jwts.parser()
-                .setClock(() -> new Date(clockService.getClock().millis()))
-                .setSigningKey(secret)
-                .parseClaimsJws(token)
-                .getBody();
+        return parser.parseClaimsJws(token).getBody();
+    }
+
+    /**
+     * Tokens issued before key ids were introduced have no {@code kid} and are checked against the active key.
+     */
+    private Key verificationKey(String keyId) {
+        if (keyId == null) {
+            return signingKey;
+        }
+        Key key = verificationKeys.get(keyId);
+        if (key == null) {
+            throw new SignatureException("Unknown key id.");
+        }
+        return key;
+    }
+
+    /**
+     * Same key bytes as jjwt derives from a {@code String} secret, so tokens signed before stay valid.
+     */
+    private Key deriveKey(String secret) {
+        return new SecretKeySpec(TextCodec.BASE64.decode(secret), ALGORITHM.getJcaName());
+    }
+
+    private String keyId(Key key) {
+        byte[] hash = sha256(key.getEncoded());
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(hash, 8));
+    }
+
+    private String digest(String token) {
+        return Base64.getEncoder().encodeToString(sha256(token.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private byte[] sha256(byte[] bytes) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(bytes);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available.", e);
+        }
     }
 
     private Date generateExpirationDate() {
@@ -78,9 +176,10 @@ public class TokenServiceImpl implements TokenService {
 
     private String generateToken(Map<String, Object> claims) {
         return Jwts.builder()
+                .setHeaderParam(JwsHeader.KEY_ID, signingKeyId)
                 .setClaims(claims)
                 .setExpiration(generateExpirationDate())
-                .signWith(SignatureAlgorithm.HS512, secret)
+                .signWith(ALGORITHM, signingKey)
                 .compact();
     }
 }
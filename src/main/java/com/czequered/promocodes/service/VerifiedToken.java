@@ -0,0 +1,29 @@
+package com.czequered.promocodes.service;
+
+import java.time.Instant;
+
+/**
+ * Principal of a token whose signature and expiry have been verified.
+ *
+ * @author Martin Varga
+ */
+public class VerifiedToken {
+    private final String userId;
+    private final Instant expiresAt;
+
+    public VerifiedToken(String userId, Instant expiresAt) {
+        this.userId = userId;
+        this.expiresAt = expiresAt;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    /**
+     * @return the {@code exp} claim, {@code null} when the token never expires
+     */
+    public Instant getExpiresAt() {
+        return expiresAt;
+    }
+}
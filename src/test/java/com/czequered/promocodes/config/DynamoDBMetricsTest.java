@@ -0,0 +1,82 @@
+package com.czequered.promocodes.config;
+
+import com.amazonaws.AmazonWebServiceRequest;
+import com.amazonaws.AmazonWebServiceResponse;
+import com.amazonaws.DefaultRequest;
+import com.amazonaws.Request;
+import com.amazonaws.Response;
+import com.amazonaws.http.HttpResponse;
+import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.QueryRequest;
+import com.amazonaws.util.AWSRequestMetrics;
+import com.amazonaws.util.AWSRequestMetrics.Field;
+import com.amazonaws.util.TimingInfo;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+/**
+ * @author Martin Varga
+ */
+public class DynamoDBMetricsTest {
+
+    DynamoDBMetrics metrics;
+
+    @Before
+    public void before() {
+        metrics = new DynamoDBMetrics();
+    }
+
+    @Test
+    public void recordsLatencyPerOperation() {
+        for (int i = 1; i <= 100; i++) {
+            metrics.collectMetrics(request(new GetItemRequest(), i, 0), response());
+        }
+        metrics.collectMetrics(request(new QueryRequest(), 7, 0), response());
+
+        assertThat(metrics.latency("GetItem").getCount()).isEqualTo(100);
+        assertThat(metrics.latency("GetItem").percentile(50)).isEqualTo(50);
+        assertThat(metrics.latency("GetItem").percentile(99)).isEqualTo(100);
+        assertThat(metrics.getLatencies()).containsOnlyKeys("GetItem", "Query");
+        assertThat(metrics.getLatencies().get("Query")).startsWith("count=1 mean=7ms p50<=10ms");
+    }
+
+    @Test
+    public void countsThrottlesAndFailures() {
+        metrics.collectMetrics(request(new GetItemRequest(), 30, 2), response());
+        metrics.collectMetrics(request(new GetItemRequest(), 900, 3), null);
+        metrics.collectMetrics(request(new QueryRequest(), 5, 0), response());
+
+        assertThat(metrics.getThrottles()).containsOnlyKeys("GetItem").containsEntry("GetItem", 5L);
+        assertThat(metrics.getFailures()).containsOnlyKeys("GetItem").containsEntry("GetItem", 1L);
+    }
+
+    @Test
+    public void histogramAboveLastBucketReportsMax() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertThat(histogram.percentile(99)).isZero();
+        histogram.record(0);
+        histogram.record(12345);
+        assertThat(histogram.percentile(50)).isEqualTo(1);
+        assertThat(histogram.percentile(100)).isEqualTo(12345);
+    }
+
+    private Request<?> request(AmazonWebServiceRequest originalRequest, long millis, int throttles) {
+        DefaultRequest<?> request = new DefaultRequest<>(originalRequest, "AmazonDynamoDBv2");
+        TimingInfo timing = TimingInfo.newTimingInfoFullSupport(0, TimeUnit.MILLISECONDS.toNanos(millis));
+        for (int i = 0; i < throttles; i++) {
+            timing.incrementCounter(Field.ThrottleException.name());
+        }
+        request.setAWSRequestMetrics(new AWSRequestMetrics(timing) {
+        });
+        return request;
+    }
+
+    private Response<?> response() {
+        return new Response<>(new AmazonWebServiceResponse<>(), mock(HttpResponse.class));
+    }
+}
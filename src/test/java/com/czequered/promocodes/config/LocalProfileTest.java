@@ -0,0 +1,47 @@
+package com.czequered.promocodes.config;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.czequered.promocodes.model.Game;
+import com.czequered.promocodes.repository.GameRepository;
+import com.czequered.promocodes.repository.GameRepositoryLocal;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * The local profile starts without the DynamoDB client and keeps the tables in files.
+ *
+ * @author Martin Varga
+ */
+@ActiveProfiles("local")
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringBootTest(properties = "jepice.local.dir=build/local-profile-test")
+public class LocalProfileTest {
+
+    @Autowired
+    private ApplicationContext context;
+
+    @Autowired
+    private GameRepository gameRepository;
+
+    @Test
+    public void startsWithoutDynamoDB() {
+        assertThat(context.getBeansOfType(AmazonDynamoDB.class)).isEmpty();
+        assertThat(context.getBeansOfType(DynamoDBMetrics.class)).isEmpty();
+        assertThat(context.getBeansOfType(GameRepository.class).values())
+                .hasOnlyElementsOfType(GameRepositoryLocal.class);
+    }
+
+    @Test
+    public void keepsGames() {
+        gameRepository.save(new Game("Krtek", "local-profile"));
+        assertThat(gameRepository.findByUserIdAndGameId("Krtek", "local-profile"))
+                .isEqualTo(new Game("Krtek", "local-profile"));
+    }
+}
@@ -0,0 +1,128 @@
+package com.czequered.promocodes.controller;
+
+import com.czequered.promocodes.model.Code;
+import com.czequered.promocodes.model.Game;
+import com.czequered.promocodes.service.ClockService;
+import com.czequered.promocodes.service.CodeService;
+import com.czequered.promocodes.service.GameService;
+import com.czequered.promocodes.service.TokenService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static com.czequered.promocodes.config.Constants.TOKEN_HEADER;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.when;
+
+/**
+ * Stands in for a load test. With a few request threads and a repository call taking {@value #LATENCY_MILLIS}ms,
+ * a synchronous endpoint serves one call per request thread at a time while an asynchronous one serves as many as
+ * the DynamoDB executor has threads.
+ *
+ * @author Martin Varga
+ */
+@ActiveProfiles("integrationtest")
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {"server.tomcat.max-threads=" + AsyncLoadTest.REQUEST_THREADS,
+                "aws.dynamodb.max-connections=" + AsyncLoadTest.CONCURRENT_REQUESTS})
+public class AsyncLoadTest {
+    static final int REQUEST_THREADS = 4;
+    static final int CONCURRENT_REQUESTS = 40;
+    private static final long LATENCY_MILLIS = 100;
+
+    @Autowired
+    private GameService gameService;
+
+    @Autowired
+    private CodeService codeService;
+
+    @Autowired
+    private TokenService tokenService;
+
+    @Autowired
+    private ClockService clockService;
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    private ExecutorService clients;
+
+    @Before
+    public void before() {
+        Clock clock = mock(Clock.class);
+        when(clock.millis()).then(invocation -> System.currentTimeMillis());
+        when(clockService.getClock()).thenReturn(clock);
+        clients = Executors.newFixedThreadPool(CONCURRENT_REQUESTS);
+        // the pooled default caps connections per host below the load
+        restTemplate.getRestTemplate().setRequestFactory(new SimpleClientHttpRequestFactory());
+    }
+
+    @After
+    public void after() {
+        clients.shutdown();
+        reset(gameService, codeService);
+    }
+
+    @Test
+    public void asyncEndpointIsNotCappedByRequestThreads() throws Exception {
+        when(gameService.getGame(anyString(), anyString())).then(invocation -> {
+            Thread.sleep(LATENCY_MILLIS);
+            return new Game("Krtek", "auticko");
+        });
+        when(codeService.getPublicCode(anyString(), anyString())).then(invocation -> {
+            Thread.sleep(LATENCY_MILLIS);
+            return new Code("auticko", "PUB1");
+        });
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(TOKEN_HEADER, tokenService.generateToken("Krtek"));
+        HttpEntity<?> request = new HttpEntity<>(headers);
+
+        // warm up connections and code paths
+        load("/api/v1/games/auticko", request);
+        load("/api/v1/public/games/auticko/codes/PUB1", request);
+
+        long async = load("/api/v1/games/auticko", request);
+        long sync = load("/api/v1/public/games/auticko/codes/PUB1", request);
+
+        assertThat(sync).isGreaterThanOrEqualTo(CONCURRENT_REQUESTS / REQUEST_THREADS * LATENCY_MILLIS);
+        assertThat(async).as("async %dms, sync %dms", async, sync).isLessThan(sync / 2);
+    }
+
+    /**
+     * @return milliseconds to serve {@value #CONCURRENT_REQUESTS} concurrent requests
+     */
+    private long load(String url, HttpEntity<?> request) throws Exception {
+        List<Callable<HttpStatus>> calls = new ArrayList<>();
+        for (int i = 0; i < CONCURRENT_REQUESTS; i++) {
+            calls.add(() -> restTemplate.exchange(url, HttpMethod.GET, request, String.class).getStatusCode());
+        }
+        long start = System.nanoTime();
+        for (Future<HttpStatus> status : clients.invokeAll(calls)) {
+            assertThat(status.get()).isEqualTo(HttpStatus.OK);
+        }
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+}
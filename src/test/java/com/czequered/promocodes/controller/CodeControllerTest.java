@@ -1,9 +1,10 @@
 package com.czequered.promocodes.controller;
 
 import com.czequered.promocodes.model.Code;
-import com.czequered.promocodes.model.Game;
+import com.czequered.promocodes.model.Page;
 import com.czequered.promocodes.service.CodeService;
 import com.czequered.promocodes.service.GameService;
+import com.czequered.promocodes.service.ShardsChangedException;
 import com.czequered.promocodes.service.TokenService;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -11,6 +12,7 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
@@ -18,18 +20,31 @@ import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.ResultActions;
 import org.springframework.web.context.WebApplicationContext;
 
 import java.io.IOException;
+import java.time.Instant;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 
 import static com.czequered.promocodes.config.Constants.TOKEN_HEADER;
 import static org.assertj.core.api.Java6Assertions.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.nullValue;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollectionOf;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppContextSetup;
 
@@ -64,7 +79,7 @@ public class CodeControllerTest {
 
     @After
     public void after() {
-        reset(codeService);
+        reset(codeService, gameService);
     }
 
     @Test
@@ -73,25 +88,228 @@ public class CodeControllerTest {
         code.setGameId("auticko");
         code.setCodeId("PUB1");
         String token = tokenService.generateToken("Krtek");
-        when(gameService.getGame(eq("Krtek"), eq("auticko"))).thenReturn(new Game("Krtek", "auticko"));
-        when(codeService.getCodes("auticko")).thenReturn(Collections.singletonList(code));
+        when(gameService.isOwner("Krtek", "auticko")).thenReturn(true);
+        when(codeService.streamCodes("auticko")).thenReturn(Stream.of(code));
         MvcResult result = mockMvc.perform(get("/api/v1/games/auticko/codes/list").header(TOKEN_HEADER, token))
+                .andExpect(request().asyncStarted())
                 .andExpect(status().isOk())
                 .andReturn();
+        result.getAsyncResult();
         Code[] codes = extractCodes(result);
         assertThat(codes).containsExactly(code);
     }
 
+    @Test
+    public void listCompact() throws Exception {
+        Code code1 = new Code("auticko", "PUB1");
+        Code code2 = new Code("auticko", "PUB2");
+        String token = tokenService.generateToken("Krtek");
+        when(gameService.isOwner("Krtek", "auticko")).thenReturn(true);
+        when(codeService.streamCodes("auticko")).thenReturn(Stream.of(code1, code2));
+        MvcResult result = mockMvc.perform(get("/api/v1/games/auticko/codes/list?compact=true").header(TOKEN_HEADER, token))
+                .andExpect(request().asyncStarted())
+                .andExpect(status().isOk())
+                .andReturn();
+        result.getAsyncResult();
+        assertThat(result.getResponse().getContentAsString()).doesNotContain("\n").doesNotContain("  ");
+        assertThat(extractCodes(result)).containsExactly(code1, code2);
+    }
+
     @Test
     public void listForbidden() throws Exception {
         Code code = new Code();
         code.setGameId("auticko");
         code.setCodeId("PUB1");
         String token = tokenService.generateToken("Krtek");
-        when(gameService.getGame(eq("Krtek"), eq("auticko"))).thenReturn(null);
+        when(gameService.isOwner("Krtek", "auticko")).thenReturn(false);
         mockMvc.perform(get("/api/v1/games/auticko/codes/list").header(TOKEN_HEADER, token))
                 .andExpect(status().isForbidden());
-        verify(codeService, never()).getCodes(anyString());
+        verify(codeService, never()).streamCodes(anyString());
+    }
+
+    @Test
+    public void listPage() throws Exception {
+        Code code = new Code("auticko", "PUB1");
+        String token = tokenService.generateToken("Krtek");
+        when(gameService.isOwner("Krtek", "auticko")).thenReturn(true);
+        when(codeService.getCodes("auticko", 1, "previous")).thenReturn(new Page<>(Collections.singletonList(code), "following"));
+        performAsync(get("/api/v1/games/auticko/codes/list?limit=1&next=previous").header(TOKEN_HEADER, token))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items[0].codeId").value("PUB1"))
+                .andExpect(jsonPath("$.next").value("following"));
+    }
+
+    @Test
+    public void listPageLimitOutOfRange() throws Exception {
+        String token = tokenService.generateToken("Krtek");
+        when(gameService.isOwner("Krtek", "auticko")).thenReturn(true);
+        mockMvc.perform(get("/api/v1/games/auticko/codes/list?limit=0").header(TOKEN_HEADER, token))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/v1/games/auticko/codes/list?limit=1001").header(TOKEN_HEADER, token))
+                .andExpect(status().isBadRequest());
+        verify(codeService, never()).getCodes(anyString(), anyInt(), anyString());
+    }
+
+    @Test
+    public void listPageInvalidToken() throws Exception {
+        String token = tokenService.generateToken("Krtek");
+        when(gameService.isOwner("Krtek", "auticko")).thenReturn(true);
+        when(codeService.getCodes("auticko", 10, "garbage")).thenThrow(new IllegalArgumentException());
+        performAsync(get("/api/v1/games/auticko/codes/list?limit=10&next=garbage").header(TOKEN_HEADER, token))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void importNdjson() throws Exception {
+        String token = tokenService.generateToken("Krtek");
+        when(gameService.isOwner("Krtek", "auticko")).thenReturn(true);
+        when(gameService.isOwner("Krtek", "auticko", true)).thenReturn(true);
+        mockMvc.perform(post("/api/v1/games/auticko/codes/import")
+                .header(TOKEN_HEADER, token)
+                .contentType("application/x-ndjson")
+                .content("{\"codeId\":\"PUB1\"}\n{\"payload\":\"x\"}\n"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.imported").value(1))
+                .andExpect(jsonPath("$.rejected").value(1))
+                .andExpect(jsonPath("$.rows[0].codeId").value("PUB1"))
+                .andExpect(jsonPath("$.rows[1].status").value("INVALID"));
+        verify(codeService).saveCodes(eq(Collections.singletonList(new Code("auticko", "PUB1"))), any());
+    }
+
+    @Test
+    public void importCsv() throws Exception {
+        String token = tokenService.generateToken("Krtek");
+        when(gameService.isOwner("Krtek", "auticko")).thenReturn(true);
+        when(gameService.isOwner("Krtek", "auticko", true)).thenReturn(true);
+        mockMvc.perform(post("/api/v1/games/auticko/codes/import")
+                .header(TOKEN_HEADER, token)
+                .contentType("text/csv")
+                .content("codeId,payload\nPUB1,x\nPUB2,y\n"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.imported").value(2));
+    }
+
+    /**
+     * The cached ownership check let the import in, the game deletion started elsewhere meanwhile.
+     */
+    @Test
+    public void importIntoDeletedGame() throws Exception {
+        String token = tokenService.generateToken("Krtek");
+        when(gameService.isOwner("Krtek", "auticko")).thenReturn(true);
+        when(gameService.isOwner("Krtek", "auticko", true)).thenReturn(false);
+        mockMvc.perform(post("/api/v1/games/auticko/codes/import")
+                .header(TOKEN_HEADER, token)
+                .contentType("application/x-ndjson")
+                .content("{\"codeId\":\"PUB1\"}\n"))
+                .andExpect(status().isForbidden());
+        verify(codeService).deleteCodes(eq("auticko"), eq("Krtek"), any());
+    }
+
+    @Test
+    public void importCsvWithoutHeader() throws Exception {
+        String token = tokenService.generateToken("Krtek");
+        when(gameService.isOwner("Krtek", "auticko")).thenReturn(true);
+        mockMvc.perform(post("/api/v1/games/auticko/codes/import")
+                .header(TOKEN_HEADER, token)
+                .contentType("text/csv")
+                .content("payload\nx\n"))
+                .andExpect(status().isBadRequest());
+        verify(codeService, never()).saveCodes(any(), any());
+    }
+
+    @Test
+    public void importForbidden() throws Exception {
+        String token = tokenService.generateToken("Krtek");
+        when(gameService.isOwner("Krtek", "auticko")).thenReturn(false);
+        mockMvc.perform(post("/api/v1/games/auticko/codes/import")
+                .header(TOKEN_HEADER, token)
+                .contentType("application/x-ndjson")
+                .content("{\"codeId\":\"PUB1\"}\n"))
+                .andExpect(status().isForbidden());
+        verify(codeService, never()).saveCodes(any(), any());
+    }
+
+    @Test
+    public void getCodes() throws Exception {
+        Map<String, Code> codes = new LinkedHashMap<>();
+        codes.put("PUB2", null);
+        codes.put("PUB1", new Code("auticko", "PUB1"));
+        String token = tokenService.generateToken("Krtek");
+        when(gameService.isOwner("Krtek", "auticko")).thenReturn(true);
+        when(codeService.getCodes("auticko", Arrays.asList("PUB2", "PUB1"))).thenReturn(codes);
+        MvcResult result = performAsync(get("/api/v1/games/auticko/codes?codeId=PUB2&codeId=PUB1").header(TOKEN_HEADER, token))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.PUB1.codeId").value("PUB1"))
+                .andReturn();
+        JsonNode json = mapper.readTree(result.getResponse().getContentAsString());
+        assertThat(json.fieldNames()).containsExactly("PUB2", "PUB1");
+        assertThat(json.get("PUB2").isNull()).isTrue();
+    }
+
+    @Test
+    public void listActive() throws Exception {
+        String token = tokenService.generateToken("Krtek");
+        when(gameService.isOwner("Krtek", "auticko")).thenReturn(true);
+        when(codeService.getActiveCodes(eq("auticko"), any(Instant.class)))
+                .thenReturn(Collections.singletonList(new Code("auticko", "PUB1")));
+        performAsync(get("/api/v1/games/auticko/codes/active").header(TOKEN_HEADER, token))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].codeId").value("PUB1"));
+    }
+
+    @Test
+    public void listsLeaveOutCodesOfOtherUsers() throws Exception {
+        Code own = new Code("auticko", "PUB1");
+        own.setOwnerId("Krtek");
+        Code foreign = new Code("auticko", "PUB2");
+        foreign.setOwnerId("Zajic");
+        Code unowned = new Code("auticko", "PUB3");
+        String token = tokenService.generateToken("Krtek");
+        when(gameService.isOwner("Krtek", "auticko")).thenReturn(true);
+        when(codeService.getActiveCodes(eq("auticko"), any(Instant.class)))
+                .thenReturn(Arrays.asList(own, foreign, unowned));
+        when(codeService.getCodes("auticko", 3, null)).thenReturn(new Page<>(Arrays.asList(own, foreign), "next"));
+        Map<String, Code> codes = new LinkedHashMap<>();
+        codes.put("PUB1", own);
+        codes.put("PUB2", foreign);
+        when(codeService.getCodes("auticko", Arrays.asList("PUB1", "PUB2"))).thenReturn(codes);
+        when(codeService.streamCodes("auticko")).thenReturn(Stream.of(own, foreign, unowned));
+
+        performAsync(get("/api/v1/games/auticko/codes/active").header(TOKEN_HEADER, token))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[*].codeId").value(contains("PUB1", "PUB3")));
+        performAsync(get("/api/v1/games/auticko/codes/list?limit=3").header(TOKEN_HEADER, token))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items[*].codeId").value(contains("PUB1")))
+                .andExpect(jsonPath("$.next").value("next"));
+        performAsync(get("/api/v1/games/auticko/codes?codeId=PUB1&codeId=PUB2").header(TOKEN_HEADER, token))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.PUB1.codeId").value("PUB1"))
+                .andExpect(jsonPath("$.PUB2").value(nullValue()));
+        MvcResult result = mockMvc.perform(get("/api/v1/games/auticko/codes/list").header(TOKEN_HEADER, token))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        result.getAsyncResult();
+        assertThat(extractCodes(result)).containsExactly(own, unowned);
+    }
+
+    @Test
+    public void listActiveForeignGame() throws Exception {
+        String token = tokenService.generateToken("Krtek");
+        performAsync(get("/api/v1/games/auticko/codes/active").header(TOKEN_HEADER, token))
+                .andExpect(status().isForbidden());
+    }
+
+    @Test
+    public void getCodesTooMany() throws Exception {
+        String token = tokenService.generateToken("Krtek");
+        StringBuilder query = new StringBuilder("codeId=CODE0");
+        for (int i = 1; i <= 100; i++) {
+            query.append("&codeId=CODE").append(i);
+        }
+        mockMvc.perform(get("/api/v1/games/auticko/codes?" + query).header(TOKEN_HEADER, token))
+                .andExpect(status().isBadRequest());
+        verify(codeService, never()).getCodes(anyString(), anyCollectionOf(String.class));
     }
 
     @Test
@@ -101,9 +319,9 @@ public class CodeControllerTest {
         code.setCodeId("PUB1");
         code.setPayload("Hello");
         String token = tokenService.generateToken("Krtek");
-        when(gameService.getGame(eq("Krtek"), eq("auticko"))).thenReturn(new Game("Krtek", "auticko"));
+        when(gameService.isOwner("Krtek", "auticko")).thenReturn(true);
         when(codeService.getCode(eq("auticko"), eq("PUB1"))).thenReturn(code);
-        mockMvc.perform(get("/api/v1/games/auticko/codes/PUB1").header(TOKEN_HEADER, token))
+        performAsync(get("/api/v1/games/auticko/codes/PUB1").header(TOKEN_HEADER, token))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.payload").value("Hello"))
                 .andReturn();
@@ -116,10 +334,84 @@ public class CodeControllerTest {
         code.setCodeId("PUB1");
         code.setPayload("Hello");
         String token = tokenService.generateToken("Krtek");
-        when(gameService.getGame(eq("Krtek"), eq("auticko"))).thenReturn(null);
-        mockMvc.perform(get("/api/v1/games/auticko/codes/PUB1").header(TOKEN_HEADER, token))
+        when(gameService.isOwner("Krtek", "auticko")).thenReturn(false);
+        when(codeService.getCode(eq("auticko"), eq("PUB1"))).thenReturn(code);
+        MvcResult result = performAsync(get("/api/v1/games/auticko/codes/PUB1").header(TOKEN_HEADER, token))
+                .andExpect(status().isForbidden())
+                .andReturn();
+        assertThat(result.getResponse().getContentAsString()).doesNotContain("Hello");
+    }
+
+    @Test
+    public void getCodeOwned() throws Exception {
+        Code code = new Code("auticko", "PUB1");
+        code.setOwnerId("Krtek");
+        String token = tokenService.generateToken("Krtek");
+        when(codeService.getCode(eq("auticko"), eq("PUB1"))).thenReturn(code);
+        performAsync(get("/api/v1/games/auticko/codes/PUB1").header(TOKEN_HEADER, token))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.codeId").value("PUB1"))
+                .andExpect(jsonPath("$.ownerId").doesNotExist());
+    }
+
+    @Test
+    public void getCodeForbiddenWhenReadFails() throws Exception {
+        String token = tokenService.generateToken("Krtek");
+        when(gameService.isOwner("Krtek", "auticko")).thenReturn(false);
+        when(codeService.getCode(eq("auticko"), eq("PUB1"))).thenThrow(new IllegalStateException("DynamoDB is down"));
+        performAsync(get("/api/v1/games/auticko/codes/PUB1").header(TOKEN_HEADER, token))
                 .andExpect(status().isForbidden());
-        verify(codeService, never()).getCode(anyString(), anyString());
+    }
+
+    /**
+     * The ownership check waits for the code read to start, it would time out if the reads ran one after another.
+     */
+    @Test
+    public void getCodeReadsConcurrently() throws Exception {
+        CountDownLatch codeReadStarted = new CountDownLatch(1);
+        String token = tokenService.generateToken("Krtek");
+        when(gameService.isOwner("Krtek", "auticko")).then(invocation -> codeReadStarted.await(5, TimeUnit.SECONDS));
+        when(codeService.getCode(eq("auticko"), eq("PUB1"))).then(invocation -> {
+            codeReadStarted.countDown();
+            return new Code("auticko", "PUB1");
+        });
+        performAsync(get("/api/v1/games/auticko/codes/PUB1").header(TOKEN_HEADER, token))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.codeId").value("PUB1"));
+    }
+
+    /**
+     * The ownership check does not return before the request is done, a code with an owner must not wait for it.
+     */
+    @Test
+    public void getCodeOwnedDoesNotWaitForGame() throws Exception {
+        CountDownLatch requestDone = new CountDownLatch(1);
+        Code code = new Code("auticko", "PUB1");
+        code.setOwnerId("Krtek");
+        String token = tokenService.generateToken("Krtek");
+        when(gameService.isOwner("Krtek", "auticko")).then(invocation -> requestDone.await(5, TimeUnit.SECONDS));
+        when(codeService.getCode(eq("auticko"), eq("PUB1"))).thenReturn(code);
+        try {
+            MvcResult result = mockMvc.perform(get("/api/v1/games/auticko/codes/PUB1").header(TOKEN_HEADER, token))
+                    .andReturn();
+            assertThat(result.getAsyncResult(1000)).isNotNull();
+        } finally {
+            requestDone.countDown();
+        }
+    }
+
+    @Test
+    public void getCodeOwnedByAnotherUser() throws Exception {
+        Code code = new Code("auticko", "PUB1");
+        code.setOwnerId("Krtek");
+        code.setPayload("Hello");
+        String token = tokenService.generateToken("Zajic");
+        when(gameService.isOwner("Zajic", "auticko")).thenReturn(true);
+        when(codeService.getCode(eq("auticko"), eq("PUB1"))).thenReturn(code);
+        MvcResult result = performAsync(get("/api/v1/games/auticko/codes/PUB1").header(TOKEN_HEADER, token))
+                .andExpect(status().isForbidden())
+                .andReturn();
+        assertThat(result.getResponse().getContentAsString()).doesNotContain("Hello");
     }
 
     @Test
@@ -128,10 +420,10 @@ public class CodeControllerTest {
         code.setGameId("auticko");
         code.setCodeId("PUB2");
         code.setPayload("Hello");
-        when(gameService.getGame(eq("Krtek"), eq("auticko"))).thenReturn(new Game("Krtek", "auticko"));
+        when(gameService.isOwner("Krtek", "auticko")).thenReturn(true);
         String token = tokenService.generateToken("Krtek");
         when(codeService.getCode(eq("auticko"), eq("PUB1"))).thenReturn(null);
-        mockMvc.perform(get("/api/v1/games/auticko/codes/PUB1").header(TOKEN_HEADER, token))
+        performAsync(get("/api/v1/games/auticko/codes/PUB1").header(TOKEN_HEADER, token))
                 .andExpect(status().isNotFound());
     }
 
@@ -140,15 +432,33 @@ public class CodeControllerTest {
         Code code = new Code("auticko", "PUB1");
         code.setPayload("Ahoj");
 
-        when(codeService.getCode(eq("auticko"), eq("PUB1"))).thenReturn(null);
-        when(gameService.getGame(eq("Krtek"), eq("auticko"))).thenReturn(new Game("Krtek", "auticko"));
-        when(codeService.saveCode(any(Code.class))).then(i -> i.getArgumentAt(0, Code.class));
+        when(gameService.isOwner("Krtek", "auticko")).thenReturn(true);
+        when(gameService.isOwner("Krtek", "auticko", true)).thenReturn(true);
+        when(codeService.createCode(any(Code.class))).then(i -> i.getArgumentAt(0, Code.class));
         String token = tokenService.generateToken("Krtek");
 
         String json = mapper.writeValueAsString(code);
-        mockMvc.perform(post("/api/v1/games/auticko/codes").contentType(MediaType.APPLICATION_JSON).content(json).header(TOKEN_HEADER, token))
+        performAsync(post("/api/v1/games/auticko/codes").contentType(MediaType.APPLICATION_JSON).content(json).header(TOKEN_HEADER, token))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.payload").value("Ahoj"));
+        verify(codeService, never()).getCode(anyString(), anyString());
+        ArgumentCaptor<Code> created = ArgumentCaptor.forClass(Code.class);
+        verify(codeService).createCode(created.capture());
+        assertThat(created.getValue().getOwnerId()).isEqualTo("Krtek");
+        verify(codeService, never()).deleteCode(anyString(), anyString(), anyString());
+    }
+
+    @Test
+    public void saveNewCodeInDeletedGame() throws Exception {
+        when(gameService.isOwner("Krtek", "auticko")).thenReturn(true);
+        when(gameService.isOwner("Krtek", "auticko", true)).thenReturn(false);
+        when(codeService.createCode(any(Code.class))).then(i -> i.getArgumentAt(0, Code.class));
+        String token = tokenService.generateToken("Krtek");
+
+        String json = mapper.writeValueAsString(new Code("auticko", "PUB1"));
+        performAsync(post("/api/v1/games/auticko/codes").contentType(MediaType.APPLICATION_JSON).content(json).header(TOKEN_HEADER, token))
+                .andExpect(status().isForbidden());
+        verify(codeService).deleteCode("auticko", "PUB1", "Krtek");
     }
 
     @Test
@@ -156,29 +466,71 @@ public class CodeControllerTest {
         Code code = new Code("auticko", "PUB1");
         code.setPayload("Ahoj");
 
-        when(codeService.getCode(eq("auticko"), eq("PUB1"))).thenReturn(new Code("auticko", "PUB1"));
-        when(gameService.getGame(eq("Krtek"), eq("auticko"))).thenReturn(new Game("Krtek", "auticko"));
+        when(gameService.isOwner("Krtek", "auticko")).thenReturn(true);
+        when(codeService.createCode(any(Code.class))).thenReturn(null);
         String token = tokenService.generateToken("Krtek");
         String json = mapper.writeValueAsString(code);
-        mockMvc.perform(post("/api/v1/games/auticko/codes").contentType(MediaType.APPLICATION_JSON).content(json).header(TOKEN_HEADER, token))
+        performAsync(post("/api/v1/games/auticko/codes").contentType(MediaType.APPLICATION_JSON).content(json).header(TOKEN_HEADER, token))
                 .andExpect(status().isBadRequest());
         verify(codeService, never()).saveCode(any(Code.class));
     }
 
+    @Test
+    public void saveCodeTooManyShards() throws Exception {
+        Code code = new Code("auticko", "PUB1");
+        code.setShards(Code.MAX_SHARDS + 1);
+        when(gameService.isOwner("Krtek", "auticko")).thenReturn(true);
+        String token = tokenService.generateToken("Krtek");
+        String json = mapper.writeValueAsString(code);
+        mockMvc.perform(post("/api/v1/games/auticko/codes").contentType(MediaType.APPLICATION_JSON).content(json).header(TOKEN_HEADER, token))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(put("/api/v1/games/auticko/codes").contentType(MediaType.APPLICATION_JSON).content(json).header(TOKEN_HEADER, token))
+                .andExpect(status().isBadRequest());
+        verifyZeroInteractions(codeService);
+    }
+
     @Test
     public void saveExistingCode() throws Exception {
         Code code = new Code("auticko", "PUB1");
         code.setPayload("Ahoj");
 
-        when(codeService.getCode(eq("auticko"), eq("PUB1"))).thenReturn(new Code("auticko", "PUB1"));
-        when(gameService.getGame(eq("Krtek"), eq("auticko"))).thenReturn(new Game("Krtek", "auticko"));
-        when(codeService.saveCode(any(Code.class))).then(i -> i.getArgumentAt(0, Code.class));
+        when(gameService.isOwner("Krtek", "auticko")).thenReturn(true);
+        when(codeService.updateCode(any(Code.class))).then(i -> i.getArgumentAt(0, Code.class));
         String token = tokenService.generateToken("Krtek");
 
         String json = mapper.writeValueAsString(code);
-        mockMvc.perform(put("/api/v1/games/auticko/codes").contentType(MediaType.APPLICATION_JSON).content(json).header(TOKEN_HEADER, token))
+        performAsync(put("/api/v1/games/auticko/codes").contentType(MediaType.APPLICATION_JSON).content(json).header(TOKEN_HEADER, token))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.payload").value("Ahoj"));
+        verify(codeService, never()).getCode(anyString(), anyString());
+    }
+
+    @Test
+    public void saveExistingCodeIgnoresOwnerInBody() throws Exception {
+        when(gameService.isOwner("Krtek", "auticko")).thenReturn(true);
+        when(codeService.updateCode(any(Code.class))).then(i -> i.getArgumentAt(0, Code.class));
+        String token = tokenService.generateToken("Krtek");
+
+        String json = "{\"gameId\":\"auticko\",\"codeId\":\"PUB1\",\"ownerId\":\"Zajic\"}";
+        performAsync(put("/api/v1/games/auticko/codes").contentType(MediaType.APPLICATION_JSON).content(json).header(TOKEN_HEADER, token))
+                .andExpect(status().isOk());
+        ArgumentCaptor<Code> updated = ArgumentCaptor.forClass(Code.class);
+        verify(codeService).updateCode(updated.capture());
+        assertThat(updated.getValue().getOwnerId()).isEqualTo("Krtek");
+    }
+
+    @Test
+    public void saveExistingCodeChangingShards() throws Exception {
+        Code code = new Code("auticko", "PUB1");
+        code.setShards(8);
+
+        when(gameService.isOwner("Krtek", "auticko")).thenReturn(true);
+        when(codeService.updateCode(any(Code.class))).thenThrow(new ShardsChangedException("auticko", "PUB1"));
+        String token = tokenService.generateToken("Krtek");
+
+        String json = mapper.writeValueAsString(code);
+        performAsync(put("/api/v1/games/auticko/codes").contentType(MediaType.APPLICATION_JSON).content(json).header(TOKEN_HEADER, token))
+                .andExpect(status().isConflict());
     }
 
     @Test
@@ -186,33 +538,72 @@ public class CodeControllerTest {
         Code code = new Code("auticko", "PUB1");
         code.setPayload("Ahoj");
 
-        when(codeService.getCode(eq("auticko"), eq("PUB1"))).thenReturn(null);
-        when(gameService.getGame(eq("Krtek"), eq("auticko"))).thenReturn(new Game("Krtek", "auticko"));
-        when(codeService.saveCode(any(Code.class))).then(i -> i.getArgumentAt(0, Code.class));
+        when(gameService.isOwner("Krtek", "auticko")).thenReturn(true);
+        when(codeService.updateCode(any(Code.class))).thenReturn(null);
         String token = tokenService.generateToken("Krtek");
 
         String json = mapper.writeValueAsString(code);
-        mockMvc.perform(put("/api/v1/games/auticko/codes").contentType(MediaType.APPLICATION_JSON).content(json).header(TOKEN_HEADER, token))
+        performAsync(put("/api/v1/games/auticko/codes").contentType(MediaType.APPLICATION_JSON).content(json).header(TOKEN_HEADER, token))
                 .andExpect(status().isBadRequest());
         verify(codeService, never()).saveCode(any(Code.class));
     }
 
+    @Test
+    public void redeem() throws Exception {
+        Code code = new Code("auticko", "PUB1");
+        code.setRedeemed(1);
+        when(gameService.isOwner("Krtek", "auticko")).thenReturn(true);
+        when(codeService.redeem("auticko", "PUB1", "Krtek")).thenReturn(code);
+        String token = tokenService.generateToken("Krtek");
+        performAsync(post("/api/v1/games/auticko/codes/PUB1/redeem").header(TOKEN_HEADER, token))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.redeemed").value(1));
+    }
+
+    @Test
+    public void redeemUsedUp() throws Exception {
+        when(gameService.isOwner("Krtek", "auticko")).thenReturn(true);
+        when(codeService.redeem("auticko", "PUB1", "Krtek")).thenReturn(null);
+        String token = tokenService.generateToken("Krtek");
+        performAsync(post("/api/v1/games/auticko/codes/PUB1/redeem").header(TOKEN_HEADER, token))
+                .andExpect(status().isConflict());
+    }
+
+    @Test
+    public void redeemForbidden() throws Exception {
+        when(gameService.isOwner("Krtek", "auticko")).thenReturn(false);
+        String token = tokenService.generateToken("Krtek");
+        performAsync(post("/api/v1/games/auticko/codes/PUB1/redeem").header(TOKEN_HEADER, token))
+                .andExpect(status().isForbidden());
+        verify(codeService, never()).redeem(anyString(), anyString(), anyString());
+    }
+
     @Test
     public void deleteCode() throws Exception {
         String token = tokenService.generateToken("Krtek");
-        when(gameService.getGame(eq("Krtek"), eq("auticko"))).thenReturn(new Game("Krtek", "auticko"));
-        mockMvc.perform(delete("/api/v1/games/auticko/codes/PUB1").header(TOKEN_HEADER, token))
+        when(gameService.isOwner("Krtek", "auticko")).thenReturn(true);
+        when(codeService.deleteCode("auticko", "PUB1", "Krtek")).thenReturn(true);
+        performAsync(delete("/api/v1/games/auticko/codes/PUB1").header(TOKEN_HEADER, token))
                 .andExpect(status().isOk());
-        verify(codeService, only()).deleteCode(eq("auticko"), eq("PUB1"));
+        verify(codeService, only()).deleteCode(eq("auticko"), eq("PUB1"), eq("Krtek"));
+    }
+
+    @Test
+    public void deleteCodeOfAnotherUser() throws Exception {
+        String token = tokenService.generateToken("Krtek");
+        when(gameService.isOwner("Krtek", "auticko")).thenReturn(true);
+        when(codeService.deleteCode("auticko", "PUB1", "Krtek")).thenReturn(false);
+        performAsync(delete("/api/v1/games/auticko/codes/PUB1").header(TOKEN_HEADER, token))
+                .andExpect(status().isForbidden());
     }
 
     @Test
     public void deleteCodeForbidden() throws Exception {
         String token = tokenService.generateToken("Krtek");
-        when(gameService.getGame(eq("Krtek"), eq("auticko"))).thenReturn(null);
-        mockMvc.perform(delete("/api/v1/games/auticko/codes/PUB1").header(TOKEN_HEADER, token))
+        when(gameService.isOwner("Krtek", "auticko")).thenReturn(false);
+        performAsync(delete("/api/v1/games/auticko/codes/PUB1").header(TOKEN_HEADER, token))
                 .andExpect(status().isForbidden());
-        verify(codeService, never()).deleteCode(anyString(), anyString());
+        verify(codeService, never()).deleteCode(anyString(), anyString(), anyString());
     }
 
     private Code[] extractCodes(MvcResult result) throws IOException {
@@ -221,4 +612,14 @@ public class CodeControllerTest {
         JsonNode root = mapper.readTree(contentAsString);
         return mapper.treeToValue(root, Code[].class);
     }
-}
\ No newline at end of file
+
+    /**
+     * Performs a request served asynchronously and dispatches its result.
+     */
+    private ResultActions performAsync(RequestBuilder builder) throws Exception {
+        MvcResult result = mockMvc.perform(builder)
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        return mockMvc.perform(asyncDispatch(result));
+    }
+}
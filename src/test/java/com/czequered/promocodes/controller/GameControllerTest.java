@@ -16,6 +16,8 @@ import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.ResultActions;
 import org.springframework.web.context.WebApplicationContext;
 
 import java.io.IOException;
@@ -28,6 +30,7 @@ import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppContextSetup;
 
@@ -67,7 +70,7 @@ public class GameControllerTest {
         Game game = new Game("Krtek", "auticko");
         when(gameService.getGames(eq("Krtek"))).thenReturn(Collections.singletonList(game));
         String token = tokenService.generateToken("Krtek");
-        MvcResult result = mockMvc.perform(get("/api/v1/games/list").header(TOKEN_HEADER, token))
+        MvcResult result = performAsync(get("/api/v1/games/list").header(TOKEN_HEADER, token))
                 .andExpect(status().isOk())
                 .andReturn();
         Game[] games = extractGames(result);
@@ -78,7 +81,7 @@ public class GameControllerTest {
     public void getGameNotFoundTest() throws Exception {
         when(gameService.getGame(eq("Krtek"), eq("auticko"))).thenReturn(null);
         String token = tokenService.generateToken("Krtek");
-        mockMvc.perform(get("/api/v1/games/auticko").header(TOKEN_HEADER, token))
+        performAsync(get("/api/v1/games/auticko").header(TOKEN_HEADER, token))
                 .andExpect(status().isNotFound());
     }
 
@@ -88,7 +91,7 @@ public class GameControllerTest {
         game.addAttribute("description", "A game");
         when(gameService.getGame(eq("Krtek"), eq("auticko"))).thenReturn(game);
         String token = tokenService.generateToken("Krtek");
-        mockMvc.perform(get("/api/v1/games/auticko").header(TOKEN_HEADER, token))
+        performAsync(get("/api/v1/games/auticko").header(TOKEN_HEADER, token))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.attributes.description").value("A game"));
     }
@@ -102,7 +105,7 @@ public class GameControllerTest {
         String token = tokenService.generateToken("Krtek");
         when(gameService.saveGame(eq(game))).thenReturn(saved);
         String json = mapper.writeValueAsString(game);
-        mockMvc.perform(post("/api/v1/games")
+        performAsync(post("/api/v1/games")
                 .header(TOKEN_HEADER, token)
                 .contentType(MediaType.APPLICATION_JSON).content(json))
                 .andExpect(status().isOk())
@@ -128,13 +131,25 @@ public class GameControllerTest {
         when(gameService.saveGame(eq(game))).thenReturn(game);
         String json = mapper.writeValueAsString(game);
         String token = tokenService.generateToken("Krtek");
-        mockMvc.perform(put("/api/v1/games")
+        performAsync(put("/api/v1/games")
                 .header(TOKEN_HEADER, token)
                 .contentType(MediaType.APPLICATION_JSON).content(json))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.gameId").value("auticko"));
     }
 
+    @Test
+    public void saveExistingGameBeingDeleted() throws Exception {
+        Game game = new Game("Krtek", "auticko");
+        when(gameService.saveGame(eq(game))).thenReturn(null);
+        String json = mapper.writeValueAsString(game);
+        String token = tokenService.generateToken("Krtek");
+        performAsync(put("/api/v1/games")
+                .header(TOKEN_HEADER, token)
+                .contentType(MediaType.APPLICATION_JSON).content(json))
+                .andExpect(status().isNotFound());
+    }
+
     @Test
     public void saveExistingGameWithNullId() throws Exception {
         Game game = new Game("Krtek", null);
@@ -174,8 +189,8 @@ public class GameControllerTest {
     @Test
     public void deleteGame() throws Exception {
         String token = tokenService.generateToken("Krtek");
-        mockMvc.perform(delete("/api/v1/games/auticko").header(TOKEN_HEADER, token))
-                .andExpect(status().isOk());
+        performAsync(delete("/api/v1/games/auticko").header(TOKEN_HEADER, token))
+                .andExpect(status().isAccepted());
         verify(gameService, only()).deleteGame(eq("Krtek"), eq("auticko"));
     }
 
@@ -184,4 +199,14 @@ public class GameControllerTest {
         JsonNode root = mapper.readTree(contentAsString);
         return mapper.treeToValue(root, Game[].class);
     }
-}
\ No newline at end of file
+
+    /**
+     * Performs a request served asynchronously and dispatches its result.
+     */
+    private ResultActions performAsync(RequestBuilder builder) throws Exception {
+        MvcResult result = mockMvc.perform(builder)
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        return mockMvc.perform(asyncDispatch(result));
+    }
+}
@@ -0,0 +1,155 @@
+package com.czequered.promocodes.controller;
+
+import com.czequered.promocodes.model.Code;
+import com.czequered.promocodes.model.Game;
+import com.czequered.promocodes.service.ClockService;
+import com.czequered.promocodes.service.CodeService;
+import com.czequered.promocodes.service.GameService;
+import com.czequered.promocodes.service.TokenService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static com.czequered.promocodes.config.Constants.TOKEN_HEADER;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.when;
+
+/**
+ * With one thread and a queue of one in front of each bounded executor, the requests that find both taken are
+ * refused with 503 and Retry-After.
+ *
+ * @author Martin Varga
+ */
+@ActiveProfiles("integrationtest")
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {"aws.dynamodb.max-connections=1", "aws.dynamodb.queue-capacity=1",
+                "jepice.streaming.threads=1", "jepice.streaming.queue-capacity=1",
+                "jepice.overload.retry-after=7"})
+public class OverloadTest {
+    private static final int REQUESTS = 5;
+
+    @Autowired
+    private GameService gameService;
+
+    @Autowired
+    private CodeService codeService;
+
+    @Autowired
+    private TokenService tokenService;
+
+    @Autowired
+    private ClockService clockService;
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    private ExecutorService clients;
+
+    private CountDownLatch started;
+
+    private CountDownLatch release;
+
+    @Before
+    public void before() {
+        Clock clock = mock(Clock.class);
+        when(clock.millis()).then(invocation -> System.currentTimeMillis());
+        when(clockService.getClock()).thenReturn(clock);
+        clients = Executors.newFixedThreadPool(REQUESTS);
+        restTemplate.getRestTemplate().setRequestFactory(new SimpleClientHttpRequestFactory());
+        started = new CountDownLatch(1);
+        release = new CountDownLatch(1);
+    }
+
+    @After
+    public void after() {
+        release.countDown();
+        clients.shutdown();
+        reset(gameService, codeService);
+    }
+
+    @Test
+    public void fullDynamoDbExecutor() throws Exception {
+        when(gameService.getGame(anyString(), anyString())).then(invocation -> {
+            started.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return new Game("Krtek", "auticko");
+        });
+        assertOverload("/api/v1/games/auticko");
+    }
+
+    @Test
+    public void fullStreamingExecutor() throws Exception {
+        when(gameService.isOwner("Krtek", "auticko")).thenReturn(true);
+        when(codeService.streamCodes("auticko")).then(invocation -> Stream.of(new Code("auticko", "PUB1"))
+                .peek(code -> {
+                    started.countDown();
+                    try {
+                        release.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }));
+        assertOverload("/api/v1/games/auticko/codes/list");
+    }
+
+    /**
+     * The first request takes the thread, the second one the queue and the rest are refused.
+     */
+    private void assertOverload(String url) throws Exception {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(TOKEN_HEADER, tokenService.generateToken("Krtek"));
+        HttpEntity<?> request = new HttpEntity<>(headers);
+        List<Future<ResponseEntity<String>>> responses = new ArrayList<>();
+        responses.add(clients.submit(() -> restTemplate.exchange(url, HttpMethod.GET, request, String.class)));
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        for (int i = 1; i < REQUESTS; i++) {
+            responses.add(clients.submit(() -> restTemplate.exchange(url, HttpMethod.GET, request, String.class)));
+        }
+
+        int refused = 0;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (refused < REQUESTS - 2 && System.nanoTime() < deadline) {
+            refused = 0;
+            for (Future<ResponseEntity<String>> response : responses) {
+                if (response.isDone() && response.get().getStatusCode() == HttpStatus.SERVICE_UNAVAILABLE) {
+                    assertThat(response.get().getHeaders().getFirst(HttpHeaders.RETRY_AFTER)).isEqualTo("7");
+                    refused++;
+                }
+            }
+            Thread.sleep(10);
+        }
+        assertThat(refused).isEqualTo(REQUESTS - 2);
+
+        release.countDown();
+        for (Future<ResponseEntity<String>> response : responses) {
+            assertThat(response.get(5, TimeUnit.SECONDS).getStatusCode())
+                    .isIn(HttpStatus.OK, HttpStatus.SERVICE_UNAVAILABLE);
+        }
+    }
+}
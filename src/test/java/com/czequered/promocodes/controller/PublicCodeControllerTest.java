@@ -0,0 +1,65 @@
+package com.czequered.promocodes.controller;
+
+import com.czequered.promocodes.model.Code;
+import com.czequered.promocodes.service.CodeService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.web.context.WebApplicationContext;
+
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppContextSetup;
+
+/**
+ * @author Martin Varga
+ */
+@ActiveProfiles("resttest")
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringBootTest
+public class PublicCodeControllerTest {
+
+    @Autowired
+    private WebApplicationContext webApplicationContext;
+
+    @Autowired
+    private CodeService codeService;
+
+    private MockMvc mockMvc;
+
+    @Before
+    public void before() {
+        mockMvc = webAppContextSetup(webApplicationContext).build();
+    }
+
+    @After
+    public void after() {
+        reset(codeService);
+    }
+
+    @Test
+    public void getCode() throws Exception {
+        Code code = new Code("auticko", "PUB1");
+        code.setPub(true);
+        code.setPayload("Hello");
+        when(codeService.getPublicCode("auticko", "PUB1")).thenReturn(code);
+        mockMvc.perform(get("/api/v1/public/games/auticko/codes/PUB1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.payload").value("Hello"));
+    }
+
+    @Test
+    public void getCodeNotFound() throws Exception {
+        mockMvc.perform(get("/api/v1/public/games/auticko/codes/PRIVATE"))
+                .andExpect(status().isNotFound());
+        verify(codeService).getPublicCode("auticko", "PRIVATE");
+    }
+}
@@ -13,15 +13,20 @@ import org.springframework.http.MediaType;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.ResultActions;
 import org.springframework.web.context.WebApplicationContext;
 
 import static com.czequered.promocodes.config.Constants.TOKEN_HEADER;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppContextSetup;
 
@@ -58,7 +63,7 @@ public class UserControllerTest {
         user.addAttribute("hello", "world");
         when(userService.getUser(eq("Krtek"))).thenReturn(user);
         String token = tokenService.generateToken("Krtek");
-        mockMvc.perform(get("/api/v1/user").header(TOKEN_HEADER, token))
+        performAsync(get("/api/v1/user").header(TOKEN_HEADER, token))
             .andExpect(status().isOk())
                 .andExpect(jsonPath("$.attributes.hello").value("world"));
     }
@@ -70,7 +75,7 @@ public class UserControllerTest {
         when(userService.saveUser(any(User.class))).then(i -> i.getArgumentAt(0, User.class));
         String token = tokenService.generateToken("Krtek");
         String json = mapper.writeValueAsString(user);
-        mockMvc.perform(put("/api/v1/user").header(TOKEN_HEADER, token).contentType(MediaType.APPLICATION_JSON).content(json))
+        performAsync(put("/api/v1/user").header(TOKEN_HEADER, token).contentType(MediaType.APPLICATION_JSON).content(json))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.attributes.hello").value("world"));
     }
@@ -85,4 +90,14 @@ public class UserControllerTest {
                 .andExpect(status().isBadRequest());
         verify(userService, never()).saveUser(any(User.class));
     }
-}
\ No newline at end of file
+
+    /**
+     * Performs a request served asynchronously and dispatches its result.
+     */
+    private ResultActions performAsync(RequestBuilder builder) throws Exception {
+        MvcResult result = mockMvc.perform(builder)
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        return mockMvc.perform(asyncDispatch(result));
+    }
+}
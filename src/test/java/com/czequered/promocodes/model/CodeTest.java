@@ -1,7 +1,10 @@
 package com.czequered.promocodes.model;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.Test;
 
+import java.time.Instant;
+
 import static org.assertj.core.api.Assertions.assertThat;
 
 /**
@@ -57,4 +60,45 @@ public class CodeTest {
         Code id = new Code("auticko", "PUB1");
         assertThat(code1.hashCode()).isEqualTo(id.hashCode());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void redeemedIsReadOnlyInJson() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        Code code = mapper.readValue("{\"gameId\":\"auticko\",\"codeId\":\"PUB1\",\"maxRedemptions\":5,\"redeemed\":3}", Code.class);
+        assertThat(code.getMaxRedemptions()).isEqualTo(5);
+        assertThat(code.getRedeemed()).isNull();
+
+        code.setRedeemed(3);
+        assertThat(mapper.writeValueAsString(code)).contains("\"redeemed\":3");
+    }
+
+    @Test
+    public void windowIsIsoInJson() throws Exception {
+        ObjectMapper mapper = new ObjectMapper().findAndRegisterModules();
+        Code code = mapper.readValue("{\"codeId\":\"PUB1\",\"from\":\"2017-03-01T00:00:00Z\"}", Code.class);
+        assertThat(code.getFrom()).isEqualTo(Instant.parse("2017-03-01T00:00:00Z"));
+        assertThat(mapper.writeValueAsString(code)).contains("\"from\":\"2017-03-01T00:00:00Z\"").doesNotContain("legacy");
+    }
+
+    @Test
+    public void isValidAt() throws Exception {
+        Code code = new Code("auticko", "PUB1");
+        assertThat(code.isValidAt(0)).isTrue();
+        code.setFrom(Instant.ofEpochMilli(100));
+        code.setTo(Instant.ofEpochMilli(200));
+        assertThat(code.isValidAt(99)).isFalse();
+        assertThat(code.isValidAt(100)).isTrue();
+        assertThat(code.isValidAt(200)).isTrue();
+        assertThat(code.isValidAt(201)).isFalse();
+    }
+
+    @Test
+    public void legacyWindowIsParsed() throws Exception {
+        Code code = new Code("auticko", "PUB1");
+        code.setLegacyFrom("2017-03-01T01:00:00+01:00");
+        code.setLegacyTo("never");
+        assertThat(code.getFrom()).isEqualTo(Instant.parse("2017-03-01T00:00:00Z"));
+        assertThat(code.getTo()).isNull();
+        assertThat(code.hasLegacyWindow()).isTrue();
+    }
+}
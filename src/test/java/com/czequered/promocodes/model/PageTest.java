@@ -0,0 +1,23 @@
+package com.czequered.promocodes.model;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * @author Martin Varga
+ */
+public class PageTest {
+    @Test
+    public void tokenRoundTrip() throws Exception {
+        String token = Page.toToken("GAME1CODE42 ěšč/+");
+        assertThat(token).doesNotContain("/").doesNotContain("+").doesNotContain("=");
+        assertThat(Page.fromToken(token)).isEqualTo("GAME1CODE42 ěšč/+");
+    }
+
+    @Test
+    public void invalidToken() throws Exception {
+        assertThatThrownBy(() -> Page.fromToken("not a token")).isInstanceOf(IllegalArgumentException.class);
+    }
+}
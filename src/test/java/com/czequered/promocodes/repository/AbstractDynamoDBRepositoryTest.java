@@ -12,6 +12,9 @@ import org.junit.Before;
 import org.junit.ClassRule;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import static org.assertj.core.api.Assertions.assertThat;
 
 /**
@@ -19,7 +22,7 @@ import static org.assertj.core.api.Assertions.assertThat;
  */
 public class AbstractDynamoDBRepositoryTest {
 
-    GameRepository gameRepository;
+    GameRepositoryImpl gameRepository;
 
     @ClassRule
     public static final LocalDynamoDBCreationRule dynamoDBProvider = new LocalDynamoDBCreationRule();
@@ -34,7 +37,7 @@ public class AbstractDynamoDBRepositoryTest {
             .build();
 
         DynamoDBMapper mapper = new DynamoDBMapper(amazonDynamoDB);
-        gameRepository = new GameRepository(mapper);
+        gameRepository = new GameRepositoryImpl(mapper);
     }
 
     @After
@@ -53,6 +56,36 @@ public class AbstractDynamoDBRepositoryTest {
         assertThat(saved.getAttributes()).isEqualTo(game.getAttributes());
     }
 
+    @Test
+    public void create() throws Exception {
+        Game game = new Game("Krtek", "auticko");
+        game.addAttribute("description", "A game");
+        assertThat(gameRepository.create(game)).isTrue();
+
+        Game other = new Game("Krtek", "auticko");
+        other.addAttribute("description", "Another game");
+        assertThat(gameRepository.create(other)).isFalse();
+        assertThat(gameRepository.findByUserIdAndGameId("Krtek", "auticko").getAttributes())
+            .containsEntry("description", "A game");
+
+        assertThat(gameRepository.create(new Game("Krtek", "vlacek"))).isTrue();
+        assertThat(gameRepository.create(new Game("Sova", "auticko"))).isTrue();
+    }
+
+    @Test
+    public void update() throws Exception {
+        Game game = new Game("Krtek", "auticko");
+        game.addAttribute("description", "A game");
+        assertThat(gameRepository.update(game)).isFalse();
+        assertThat(gameRepository.findByUserIdAndGameId("Krtek", "auticko")).isNull();
+
+        gameRepository.save(new Game("Krtek", "auticko"));
+        assertThat(gameRepository.update(game)).isTrue();
+        assertThat(gameRepository.findByUserIdAndGameId("Krtek", "auticko").getAttributes())
+            .containsEntry("description", "A game");
+        assertThat(gameRepository.update(new Game("Sova", "auticko"))).isFalse();
+    }
+
     @Test
     public void delete() throws Exception {
         Game game = new Game();
@@ -65,4 +98,14 @@ public class AbstractDynamoDBRepositoryTest {
         assertThat(found).isNull();
     }
 
-}
\ No newline at end of file
+    @Test
+    public void batchSave() throws Exception {
+        List<Game> games = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            games.add(new Game("Krtek", "game" + i));
+        }
+        List<Game> unprocessed = gameRepository.batchSave(games);
+        assertThat(unprocessed).isEmpty();
+        assertThat(gameRepository.findByUserId("Krtek")).hasSize(60);
+    }
+}
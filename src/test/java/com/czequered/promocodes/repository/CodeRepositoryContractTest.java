@@ -0,0 +1,417 @@
+package com.czequered.promocodes.repository;
+
+import com.czequered.promocodes.model.Code;
+import com.czequered.promocodes.model.Page;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Behaviour every {@link CodeRepository} backend has to provide, each backend runs it in a subclass.
+ *
+ * @author Martin Varga
+ */
+public abstract class CodeRepositoryContractTest {
+
+    static final Instant NOW = Instant.parse("2017-03-15T10:00:00Z");
+
+    CodeRepository repository;
+
+    /**
+     * @return repository over an empty table
+     */
+    abstract CodeRepository createRepository() throws Exception;
+
+    @Before
+    public void createContractRepository() throws Exception {
+        repository = createRepository();
+    }
+
+    @Test
+    public void findByGameAndCode() {
+        Code code = new Code();
+        code.setGameId("auticko");
+        code.setCodeId("PUB1");
+        code.setFrom(Instant.parse("2012-01-27T03:47:26Z"));
+        code.setTo(Instant.parse("2037-01-27T03:47:26Z"));
+        code.setPub(true);
+        code.setPayload("Hello World");
+        repository.save(code);
+
+        Code retrieved = repository.findByGameIdAndCodeId("auticko", "PUB1");
+        assertThat(retrieved).isEqualTo(code);
+    }
+
+    @Test
+    public void findByGame() {
+        Code game1Code = new Code();
+        game1Code.setGameId("game1");
+        game1Code.setCodeId("PUB1");
+        repository.save(game1Code);
+
+        Code game2Code = new Code();
+        game2Code.setGameId("game2");
+        game2Code.setCodeId("PUB1");
+        repository.save(game2Code);
+
+        List<Code> codes1 = repository.findByGameId("game1");
+        assertThat(codes1).containsExactly(game1Code);
+
+        List<Code> codes2 = repository.findByGameId("game2");
+        assertThat(codes2).containsExactly(game2Code);
+    }
+
+    @Test
+    public void findByGameIdPagedInvalidToken() {
+        assertThatThrownBy(() -> repository.findByGameId("auticko", 2, "not a token"))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void findByGameIdPagesInCodeOrder() {
+        for (int i = 5; i >= 1; i--) {
+            repository.save(new Code("auticko", "PUB" + i));
+            repository.save(new Code("no-test", "PRV" + i));
+        }
+
+        List<Code> all = new ArrayList<>();
+        Page<Code> page = repository.findByGameId("auticko", 2, null);
+        all.addAll(page.getItems());
+        while (page.getNext() != null) {
+            page = repository.findByGameId("auticko", 2, page.getNext());
+            all.addAll(page.getItems());
+        }
+
+        assertThat(all).extracting(Code::getCodeId).containsExactly("PUB1", "PUB2", "PUB3", "PUB4", "PUB5");
+    }
+
+    @Test
+    public void findByGameIdAndCodeIdsSkipsMissing() {
+        repository.save(new Code("auticko", "PUB1"));
+        repository.save(new Code("jinde", "PUB2"));
+
+        assertThat(repository.findByGameIdAndCodeIds("auticko", Arrays.asList("PUB1", "PUB2")))
+            .containsExactly(new Code("auticko", "PUB1"));
+    }
+
+    @Test
+    public void create() {
+        Code code = new Code("auticko", "PUB1");
+        code.setPayload("A");
+        assertThat(repository.create(code)).isTrue();
+
+        Code other = new Code("auticko", "PUB1");
+        other.setPayload("B");
+        assertThat(repository.create(other)).isFalse();
+        assertThat(repository.findByGameIdAndCodeId("auticko", "PUB1").getPayload()).isEqualTo("A");
+    }
+
+    @Test
+    public void findByGameIdAndCodeIdsEmpty() {
+        assertThat(repository.findByGameIdAndCodeIds("auticko", new ArrayList<>())).isEmpty();
+    }
+
+    @Test
+    public void update() {
+        Code code = new Code("auticko", "PUB1");
+        code.setPayload("A");
+        code.setTo(Instant.parse("2017-12-31T00:00:00Z"));
+        code.setMaxRedemptions(2);
+        assertThat(repository.update(code)).isFalse();
+        assertThat(repository.findByGameIdAndCodeId("auticko", "PUB1")).isNull();
+
+        repository.save(code);
+        repository.redeem("auticko", "PUB1", "Krtek", NOW);
+
+        Code changed = new Code("auticko", "PUB1");
+        changed.setPayload("B");
+        assertThat(repository.update(changed)).isTrue();
+        Code found = repository.findByGameIdAndCodeId("auticko", "PUB1");
+        assertThat(found.getPayload()).isEqualTo("B");
+        assertThat(found.getTo()).isNull();
+        assertThat(found.getMaxRedemptions()).isNull();
+        assertThat(found.getRedeemed()).isEqualTo(1);
+    }
+
+    @Test
+    public void updateChecksOwner() {
+        Code code = new Code("auticko", "PUB1");
+        code.setOwnerId("Krtek");
+        repository.save(code);
+
+        Code foreign = new Code("auticko", "PUB1");
+        foreign.setOwnerId("Zajic");
+        foreign.setPayload("B");
+        assertThat(repository.update(foreign)).isFalse();
+        assertThat(repository.findByGameIdAndCodeId("auticko", "PUB1").getPayload()).isNull();
+
+        Code unowned = new Code("auticko", "PUB1");
+        unowned.setPayload("C");
+        assertThat(repository.update(unowned)).isTrue();
+        Code found = repository.findByGameIdAndCodeId("auticko", "PUB1");
+        assertThat(found.getPayload()).isEqualTo("C");
+        assertThat(found.getOwnerId()).isEqualTo("Krtek");
+    }
+
+    @Test
+    public void updateKeepsShards() {
+        Code sharded = new Code("auticko", "PUB1");
+        sharded.setShards(4);
+        repository.save(sharded);
+        repository.save(new Code("auticko", "PUB2"));
+
+        Code resharded = new Code("auticko", "PUB1");
+        resharded.setShards(8);
+        assertThat(repository.update(resharded)).isFalse();
+        assertThat(repository.update(new Code("auticko", "PUB1"))).isFalse();
+        Code nowSharded = new Code("auticko", "PUB2");
+        nowSharded.setShards(4);
+        assertThat(repository.update(nowSharded)).isFalse();
+        assertThat(repository.findByGameIdAndCodeId("auticko", "PUB1").getShards()).isEqualTo(4);
+        assertThat(repository.findByGameIdAndCodeId("auticko", "PUB2").isSharded()).isFalse();
+
+        Code same = new Code("auticko", "PUB1");
+        same.setShards(4);
+        same.setPayload("B");
+        assertThat(repository.update(same)).isTrue();
+        Code single = new Code("auticko", "PUB2");
+        single.setShards(1);
+        assertThat(repository.update(single)).isTrue();
+    }
+
+    @Test
+    public void saveKeepsRedeemed() {
+        Code code = new Code("auticko", "PUB1");
+        code.setOwnerId("Krtek");
+        assertThat(repository.save(code)).isSameAs(code);
+        repository.redeem("auticko", "PUB1", "Krtek", NOW);
+
+        Code changed = new Code("auticko", "PUB1");
+        changed.setPayload("B");
+        assertThat(repository.save(changed)).isSameAs(changed);
+        Code found = repository.findByGameIdAndCodeId("auticko", "PUB1");
+        assertThat(found.getPayload()).isEqualTo("B");
+        assertThat(found.getRedeemed()).isEqualTo(1);
+        assertThat(found.getOwnerId()).isEqualTo("Krtek");
+    }
+
+    @Test
+    public void saveChecksOwnerAndShards() {
+        Code code = new Code("auticko", "PUB1");
+        code.setOwnerId("Krtek");
+        code.setShards(4);
+        repository.save(code);
+
+        Code foreign = new Code("auticko", "PUB1");
+        foreign.setOwnerId("Zajic");
+        foreign.setShards(4);
+        assertThat(repository.save(foreign)).isNull();
+        Code resharded = new Code("auticko", "PUB1");
+        resharded.setShards(8);
+        assertThat(repository.save(resharded)).isNull();
+        assertThat(repository.save(new Code("auticko", "PUB1"))).isNull();
+        assertThat(repository.findByGameIdAndCodeId("auticko", "PUB1").getShards()).isEqualTo(4);
+    }
+
+    @Test
+    public void updateAddsOwner() {
+        repository.save(new Code("auticko", "PUB1"));
+        Code owned = new Code("auticko", "PUB1");
+        owned.setOwnerId("Krtek");
+        assertThat(repository.update(owned)).isTrue();
+        assertThat(repository.findByGameIdAndCodeId("auticko", "PUB1").getOwnerId()).isEqualTo("Krtek");
+    }
+
+    @Test
+    public void assignOwnerByGameId() {
+        repository.save(new Code("auticko", "PUB1"));
+        Code owned = new Code("auticko", "PUB2");
+        owned.setOwnerId("Zajic");
+        repository.save(owned);
+        repository.save(new Code("kolo", "PUB1"));
+
+        assertThat(repository.assignOwnerByGameId("auticko", "Krtek")).isEqualTo(1);
+        assertThat(repository.findByGameIdAndCodeId("auticko", "PUB1").getOwnerId()).isEqualTo("Krtek");
+        assertThat(repository.findByGameIdAndCodeId("auticko", "PUB2").getOwnerId()).isEqualTo("Zajic");
+        assertThat(repository.findByGameIdAndCodeId("kolo", "PUB1").getOwnerId()).isNull();
+        assertThat(repository.assignOwnerByGameId("auticko", "Krtek")).isZero();
+    }
+
+    @Test
+    public void redeemRefusesShardedCode() {
+        Code code = new Code("auticko", "PUB1");
+        code.setShards(4);
+        repository.save(code);
+        Code single = new Code("auticko", "PUB2");
+        single.setShards(1);
+        repository.save(single);
+        assertThat(repository.redeem("auticko", "PUB1", "Krtek", NOW)).isNull();
+        assertThat(repository.findByGameIdAndCodeId("auticko", "PUB1").getRedeemed()).isNull();
+        assertThat(repository.redeem("auticko", "PUB2", "Krtek", NOW).getRedeemed()).isEqualTo(1);
+    }
+
+    @Test
+    public void redeemChecksOwner() {
+        Code code = new Code("auticko", "PUB1");
+        code.setOwnerId("Krtek");
+        repository.save(code);
+        assertThat(repository.redeem("auticko", "PUB1", "Zajic", NOW)).isNull();
+        assertThat(repository.redeem("auticko", "PUB1", "Krtek", NOW).getRedeemed()).isEqualTo(1);
+        assertThat(repository.findByGameIdAndCodeId("auticko", "PUB1").getRedeemed()).isEqualTo(1);
+    }
+
+    @Test
+    public void deleteChecksOwner() {
+        Code code = new Code("auticko", "PUB1");
+        code.setOwnerId("Krtek");
+        repository.save(code);
+        repository.save(new Code("auticko", "PUB2"));
+
+        assertThat(repository.delete(new Code("auticko", "PUB1"), "Zajic")).isFalse();
+        assertThat(repository.findByGameIdAndCodeId("auticko", "PUB1")).isNotNull();
+        assertThat(repository.delete(new Code("auticko", "PUB1"), "Krtek")).isTrue();
+        assertThat(repository.findByGameIdAndCodeId("auticko", "PUB1")).isNull();
+        assertThat(repository.delete(new Code("auticko", "PUB2"), "Zajic")).isTrue();
+        assertThat(repository.findByGameIdAndCodeId("auticko", "PUB2")).isNull();
+        assertThat(repository.delete(new Code("auticko", "PUB3"), "Zajic")).isTrue();
+    }
+
+    @Test
+    public void redeem() {
+        Code code = new Code("auticko", "PUB1");
+        code.setMaxRedemptions(2);
+        repository.save(code);
+        assertThat(repository.redeem("auticko", "PUB1", "Krtek", NOW).getRedeemed()).isEqualTo(1);
+        assertThat(repository.redeem("auticko", "PUB1", "Krtek", NOW).getRedeemed()).isEqualTo(2);
+        assertThat(repository.redeem("auticko", "PUB1", "Krtek", NOW)).isNull();
+        assertThat(repository.findByGameIdAndCodeId("auticko", "PUB1").getRedeemed()).isEqualTo(2);
+    }
+
+    @Test
+    public void redeemUnlimited() {
+        repository.save(new Code("auticko", "PUB1"));
+        Code redeemed = repository.redeem("auticko", "PUB1", "Krtek", NOW);
+        assertThat(redeemed.getRedeemed()).isEqualTo(1);
+        assertThat(redeemed.getGameId()).isEqualTo("auticko");
+    }
+
+    @Test
+    public void redeemZeroUses() {
+        Code code = new Code("auticko", "PUB1");
+        code.setMaxRedemptions(0);
+        repository.save(code);
+        assertThat(repository.redeem("auticko", "PUB1", "Krtek", NOW)).isNull();
+    }
+
+    @Test
+    public void redeemMissing() {
+        assertThat(repository.redeem("auticko", "PUB1", "Krtek", NOW)).isNull();
+        assertThat(repository.findByGameIdAndCodeId("auticko", "PUB1")).isNull();
+    }
+
+    @Test
+    public void redeemOutsideWindow() {
+        Code code = new Code("auticko", "PUB1");
+        code.setFrom(Instant.parse("2017-03-01T00:00:00Z"));
+        code.setTo(Instant.parse("2017-03-31T00:00:00Z"));
+        repository.save(code);
+        assertThat(repository.redeem("auticko", "PUB1", "Krtek", Instant.parse("2017-02-28T23:59:59Z"))).isNull();
+        assertThat(repository.redeem("auticko", "PUB1", "Krtek", Instant.parse("2017-04-01T00:00:00Z"))).isNull();
+        assertThat(repository.redeem("auticko", "PUB1", "Krtek", Instant.parse("2017-03-01T00:00:00Z"))).isNotNull();
+        assertThat(repository.redeem("auticko", "PUB1", "Krtek", Instant.parse("2017-03-31T00:00:00Z"))).isNotNull();
+    }
+
+    @Test
+    public void findActiveByGameId() {
+        Code expired = new Code("auticko", "EXPIRED");
+        expired.setTo(NOW.minusMillis(1));
+        Code future = new Code("auticko", "FUTURE");
+        future.setFrom(NOW.plusMillis(1));
+        Code endsNow = new Code("auticko", "ENDS_NOW");
+        endsNow.setFrom(NOW);
+        endsNow.setTo(NOW);
+        Code later = new Code("auticko", "LATER");
+        later.setTo(NOW.plusSeconds(60));
+        Code unlimited = new Code("auticko", "UNLIMITED");
+        Code otherGame = new Code("kalhoty", "UNLIMITED");
+        Arrays.asList(expired, future, endsNow, later, unlimited, otherGame).forEach(repository::save);
+
+        assertThat(repository.findActiveByGameId("auticko", NOW)).extracting(Code::getCodeId)
+                .containsExactly("ENDS_NOW", "LATER", "UNLIMITED");
+    }
+
+    @Test
+    public void redeemConcurrently() throws Exception {
+        Code limited = new Code("auticko", "LIMITED");
+        limited.setMaxRedemptions(300);
+        repository.save(limited);
+        repository.save(new Code("auticko", "UNLIMITED"));
+
+        assertThat(redeemConcurrently("LIMITED", 1000)).isEqualTo(300);
+        assertThat(repository.findByGameIdAndCodeId("auticko", "LIMITED").getRedeemed()).isEqualTo(300);
+
+        assertThat(redeemConcurrently("UNLIMITED", 1000)).isEqualTo(1000);
+        assertThat(repository.findByGameIdAndCodeId("auticko", "UNLIMITED").getRedeemed()).isEqualTo(1000);
+    }
+
+    private int redeemConcurrently(String codeId, int attempts) throws Exception {
+        AtomicInteger successes = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        try {
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (int i = 0; i < attempts; i++) {
+                tasks.add(() -> {
+                    if (repository.redeem("auticko", codeId, "Krtek", NOW) != null) {
+                        successes.incrementAndGet();
+                    }
+                    return null;
+                });
+            }
+            for (Future<Void> future : executor.invokeAll(tasks)) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        return successes.get();
+    }
+
+    @Test
+    public void batchDelete() {
+        List<Code> codes = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            codes.add(new Code("auticko", "PUB" + i));
+        }
+        repository.batchSave(codes);
+        repository.save(new Code("kolo", "PUB1"));
+
+        assertThat(repository.batchDelete(codes)).isEmpty();
+        assertThat(repository.findByGameId("auticko")).isEmpty();
+        assertThat(repository.findByGameId("kolo")).containsExactly(new Code("kolo", "PUB1"));
+    }
+
+    @Test
+    public void delete() {
+        Code code = new Code();
+        code.setGameId("auticko");
+        code.setCodeId("PUB1");
+        repository.save(code);
+        Code foundBefore = repository.findByGameIdAndCodeId("auticko", "PUB1");
+        assertThat(foundBefore).isEqualTo(code);
+        repository.delete(new Code("auticko", "PUB1"));
+        Code foundAfter = repository.findByGameIdAndCodeId("auticko", "PUB1");
+        assertThat(foundAfter).isNull();
+    }
+}
@@ -0,0 +1,278 @@
+package com.czequered.promocodes.repository;
+
+import com.amazonaws.auth.AWSStaticCredentialsProvider;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.client.builder.AwsClientBuilder;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClientBuilder;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBQueryExpression;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBScanExpression;
+import com.amazonaws.services.dynamodbv2.datamodeling.QueryResultPage;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.czequered.promocodes.model.Code;
+import com.czequered.promocodes.model.Page;
+import org.junit.After;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Matchers;
+import org.mockito.MockitoAnnotations;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * @author Martin Varga
+ */
+public class CodeRepositoryImplTest extends CodeRepositoryContractTest {
+
+    CodeRepositoryImpl codeRepository;
+
+    DynamoDBMapper mapper;
+
+    @Captor
+    ArgumentCaptor<DynamoDBQueryExpression<Code>> queries;
+
+    AmazonDynamoDB amazonDynamoDB;
+
+    @ClassRule
+    public static final LocalDynamoDBCreationRule dynamoDBProvider = new LocalDynamoDBCreationRule();
+
+    @Override
+    CodeRepository createRepository() {
+        dynamoDBProvider.createTable(Code.class);
+
+        amazonDynamoDB = AmazonDynamoDBClientBuilder.standard()
+            .withCredentials(new AWSStaticCredentialsProvider(new BasicAWSCredentials("access", "secret")))
+            .withEndpointConfiguration(new AwsClientBuilder.EndpointConfiguration("http://localhost:8088", "ap-southeast-2"))
+            .build();
+
+        mapper = spy(new DynamoDBMapper(amazonDynamoDB));
+        MockitoAnnotations.initMocks(this);
+        codeRepository = new CodeRepositoryImpl(mapper, amazonDynamoDB);
+        return codeRepository;
+    }
+
+    @After
+    public void after() {
+        dynamoDBProvider.deleteTable(Code.class);
+    }
+
+    @Test
+    public void findAllByGameId() {
+        for (int i = 0; i < 4; i++) {
+            Code code = new Code();
+            code.setGameId("auticko");
+            code.setCodeId("PUB" + i);
+            codeRepository.save(code);
+
+            Code otherCode = new Code();
+            otherCode.setGameId("no-test");
+            otherCode.setCodeId("PRV" + i);
+            codeRepository.save(otherCode);
+        }
+        List<Code> all = codeRepository.findByGameId("auticko");
+        assertThat(all).hasSize(4);
+    }
+
+    @Test
+    public void findByGameIdReadsOnlyItsPartition() {
+        List<Code> otherGames = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            otherGames.add(new Code("game" + (i % 50), "PUB" + i));
+        }
+        mapper.batchSave(otherGames);
+        codeRepository.save(new Code("auticko", "PUB1"));
+        codeRepository.save(new Code("auticko", "PUB2"));
+
+        List<Code> codes = codeRepository.findByGameId("auticko");
+
+        assertThat(codes).containsExactly(new Code("auticko", "PUB1"), new Code("auticko", "PUB2"));
+        verify(mapper).query(eq(Code.class), queries.capture());
+        assertThat(queries.getValue().getHashKeyValues().getGameId()).isEqualTo("auticko");
+        verify(mapper, never()).scan(eq(Code.class), any(DynamoDBScanExpression.class));
+    }
+
+    @Test
+    public void streamByGameId() {
+        List<Code> codes = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            codes.add(new Code("auticko", String.format("PUB%03d", i)));
+            codes.add(new Code("no-test", String.format("PRV%03d", i)));
+        }
+        mapper.batchSave(codes);
+
+        assertThat(codeRepository.streamByGameId("auticko").map(Code::getCodeId))
+            .hasSize(300)
+            .startsWith("PUB000", "PUB001")
+            .endsWith("PUB299");
+    }
+
+    @Test
+    public void findByGameIdPaged() {
+        for (int i = 1; i <= 5; i++) {
+            codeRepository.save(new Code("auticko", "PUB" + i));
+            codeRepository.save(new Code("no-test", "PRV" + i));
+        }
+
+        List<Code> all = new ArrayList<>();
+        Page<Code> page = codeRepository.findByGameId("auticko", 2, null);
+        all.addAll(page.getItems());
+        int requests = 1;
+        while (page.getNext() != null) {
+            assertThat(page.getItems()).hasSize(2);
+            page = codeRepository.findByGameId("auticko", 2, page.getNext());
+            all.addAll(page.getItems());
+            requests++;
+        }
+
+        assertThat(all).extracting(Code::getCodeId).containsExactly("PUB1", "PUB2", "PUB3", "PUB4", "PUB5");
+        verify(mapper, times(requests)).queryPage(eq(Code.class), Matchers.<DynamoDBQueryExpression<Code>>any());
+    }
+
+    @Test
+    public void findByGameIdAndCodeIds() {
+        List<String> codeIds = new ArrayList<>();
+        for (int i = 0; i < 150; i++) {
+            codeRepository.save(new Code("auticko", "CODE" + i));
+            codeIds.add("CODE" + i);
+        }
+        codeRepository.save(new Code("jinde", "MISSING"));
+        codeIds.add("MISSING");
+
+        List<Code> found = codeRepository.findByGameIdAndCodeIds("auticko", codeIds);
+
+        assertThat(found).hasSize(150);
+        assertThat(found).extracting(Code::getGameId).containsOnly("auticko");
+        verify(mapper, times(1)).batchLoad(anyListOf(Object.class));
+    }
+
+    /**
+     * Stands in for a benchmark, the index query reads only the codes that have not expired while the partition
+     * query reads them all.
+     */
+    @Test
+    public void findActiveByGameIdSkipsExpiredCodes() {
+        List<Code> codes = new ArrayList<>();
+        for (int i = 0; i < 90; i++) {
+            Code code = new Code("auticko", "EXPIRED" + i);
+            code.setTo(NOW.minusSeconds(i + 1));
+            codes.add(code);
+        }
+        for (int i = 0; i < 10; i++) {
+            Code code = new Code("auticko", "ACTIVE" + i);
+            code.setTo(NOW.plusSeconds(i + 1));
+            codes.add(code);
+        }
+        assertThat(codeRepository.batchSave(codes)).isEmpty();
+
+        QueryResultPage<Code> active = mapper.queryPage(Code.class, codeRepository.activeQuery("auticko", NOW));
+        QueryResultPage<Code> all = mapper.queryPage(Code.class, new DynamoDBQueryExpression<Code>()
+                .withHashKeyValues(new Code("auticko", null)));
+        assertThat(active.getResults()).hasSize(10);
+        assertThat(active.getScannedCount()).isEqualTo(10);
+        assertThat(all.getScannedCount()).isEqualTo(100);
+    }
+
+    @Test
+    public void migrateByGameId() {
+        putLegacyCode("PUB1", "2017-03-01T00:00:00Z", "2017-03-31T00:00:00Z");
+        putLegacyCode("PUB2", null, null);
+        codeRepository.save(new Code("auticko", "PUB3"));
+        assertThat(codeRepository.findActiveByGameId("auticko", NOW)).extracting(Code::getCodeId)
+                .containsExactly("PUB3");
+
+        assertThat(codeRepository.migrateByGameId("auticko")).isEqualTo(2);
+        assertThat(codeRepository.migrateByGameId("auticko")).isEqualTo(0);
+        assertThat(codeRepository.findActiveByGameId("auticko", NOW)).extracting(Code::getCodeId)
+                .containsExactly("PUB1", "PUB2", "PUB3");
+    }
+
+    @Test
+    public void migrationDoesNotOverwriteChangedWindow() {
+        putLegacyCode("PUB1", null, "2017-03-31T00:00:00Z");
+        Code stale = codeRepository.findByGameId("auticko").get(0);
+        Code changed = new Code("auticko", "PUB1");
+        changed.setTo(Instant.parse("2017-04-30T00:00:00Z"));
+        codeRepository.save(changed);
+
+        assertThat(codeRepository.migrate(stale)).isFalse();
+        assertThat(codeRepository.findByGameIdAndCodeId("auticko", "PUB1").getTo())
+                .isEqualTo(Instant.parse("2017-04-30T00:00:00Z"));
+    }
+
+    @Test
+    public void legacyWindowIsMigratedOnRead() {
+        putLegacyCode("PUB1", "2017-03-01T00:00:00Z", "2017-03-31T00:00:00+00:00");
+
+        List<Code> listed = codeRepository.findByGameId("auticko");
+        assertThat(listed.get(0).getFrom()).isEqualTo(Instant.parse("2017-03-01T00:00:00Z"));
+        assertThat(listed.get(0).getTo()).isEqualTo(Instant.parse("2017-03-31T00:00:00Z"));
+
+        Code found = codeRepository.findByGameIdAndCodeId("auticko", "PUB1");
+        assertThat(found.getFrom()).isEqualTo(Instant.parse("2017-03-01T00:00:00Z"));
+        assertThat(found.hasLegacyWindow()).isFalse();
+
+        Map<String, AttributeValue> item = amazonDynamoDB.getItem("Code", key("PUB1")).getItem();
+        assertThat(item).doesNotContainKeys("from", "to");
+        assertThat(item.get("validFrom").getN()).isEqualTo(Long.toString(Instant.parse("2017-03-01T00:00:00Z").toEpochMilli()));
+        assertThat(item.get("validTo").getN()).isEqualTo(Long.toString(Instant.parse("2017-03-31T00:00:00Z").toEpochMilli()));
+    }
+
+    @Test
+    public void legacyWindowIsMigratedOnUpdate() {
+        putLegacyCode("PUB1", "2017-03-01T00:00:00Z", null);
+        Code code = codeRepository.findByGameId("auticko").get(0);
+        code.setPayload("B");
+        assertThat(codeRepository.update(code)).isTrue();
+
+        Map<String, AttributeValue> item = amazonDynamoDB.getItem("Code", key("PUB1")).getItem();
+        assertThat(item).doesNotContainKeys("from");
+        assertThat(item).containsKeys("validFrom");
+    }
+
+    @Test
+    public void unparseableLegacyWindowIsKept() {
+        putLegacyCode("PUB1", "someday", null);
+        Code found = codeRepository.findByGameIdAndCodeId("auticko", "PUB1");
+        assertThat(found.getFrom()).isNull();
+        assertThat(amazonDynamoDB.getItem("Code", key("PUB1")).getItem().get("from").getS()).isEqualTo("someday");
+    }
+
+    @Test
+    public void redeemLegacyWindow() {
+        putLegacyCode("PUB1", "2017-03-01T00:00:00Z", "2017-03-31T00:00:00Z");
+        assertThat(codeRepository.redeem("auticko", "PUB1", "Krtek", Instant.parse("2017-04-01T00:00:00Z"))).isNull();
+        assertThat(codeRepository.redeem("auticko", "PUB1", "Krtek", NOW)).isNotNull();
+    }
+
+    private void putLegacyCode(String codeId, String from, String to) {
+        Map<String, AttributeValue> item = key(codeId);
+        if (from != null) {
+            item.put("from", new AttributeValue(from));
+        }
+        if (to != null) {
+            item.put("to", new AttributeValue(to));
+        }
+        amazonDynamoDB.putItem("Code", item);
+    }
+
+    private Map<String, AttributeValue> key(String codeId) {
+        Map<String, AttributeValue> key = new HashMap<>();
+        key.put("gameId", new AttributeValue("auticko"));
+        key.put("codeId", new AttributeValue(codeId));
+        return key;
+    }
+
+}
\ No newline at end of file
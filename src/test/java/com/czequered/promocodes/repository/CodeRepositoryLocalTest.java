@@ -0,0 +1,60 @@
+package com.czequered.promocodes.repository;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.czequered.promocodes.model.Code;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+/**
+ * @author Martin Varga
+ */
+public class CodeRepositoryLocalTest extends CodeRepositoryContractTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    CodeRepositoryLocal localRepository;
+
+    @Override
+    CodeRepository createRepository() {
+        localRepository = new CodeRepositoryLocal(new DynamoDBMapper(mock(AmazonDynamoDB.class)), folder.getRoot().getPath());
+        return localRepository;
+    }
+
+    @After
+    public void after() throws Exception {
+        localRepository.close();
+    }
+
+    @Test
+    public void codesSurviveRestart() throws Exception {
+        Code code = new Code("auticko", "PUB1");
+        code.setFrom(Instant.parse("2017-03-01T00:00:00Z"));
+        code.setTo(Instant.parse("2017-03-31T00:00:00Z"));
+        code.setMaxRedemptions(2);
+        code.setPayload("Hello World");
+        repository.save(code);
+        repository.save(new Code("auticko", "PUB2"));
+        repository.redeem("auticko", "PUB1", "Krtek", NOW);
+        repository.delete(new Code("auticko", "PUB2"));
+        localRepository.close();
+
+        repository = createRepository();
+
+        Code found = repository.findByGameIdAndCodeId("auticko", "PUB1");
+        assertThat(found).isEqualTo(code);
+        assertThat(found.getTo()).isEqualTo(Instant.parse("2017-03-31T00:00:00Z"));
+        assertThat(found.getPayload()).isEqualTo("Hello World");
+        assertThat(found.getRedeemed()).isEqualTo(1);
+        assertThat(repository.findByGameId("auticko")).containsExactly(code);
+        assertThat(repository.findActiveByGameId("auticko", NOW)).containsExactly(code);
+    }
+}
@@ -0,0 +1,154 @@
+package com.czequered.promocodes.repository;
+
+import com.czequered.promocodes.model.Game;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Behaviour every {@link GameRepository} backend has to provide, each backend runs it in a subclass.
+ *
+ * @author Martin Varga
+ */
+public abstract class GameRepositoryContractTest {
+
+    GameRepository repository;
+
+    /**
+     * @return repository over an empty table
+     */
+    abstract GameRepository createRepository() throws Exception;
+
+    @Before
+    public void createContractRepository() throws Exception {
+        repository = createRepository();
+    }
+
+    @Test
+    public void findByUserId() {
+        saveGame("Krtek", "game1");
+        saveGame("Krtek", "game2");
+        saveGame("sova", "game3");
+
+        List<Game> all = repository.findByUserId("Krtek");
+        assertThat(all).containsOnly(new Game("Krtek", "game1"), new Game("Krtek", "game2"));
+        assertThat(repository.findByUserId("Krtek", true)).containsOnly(new Game("Krtek", "game1"), new Game("Krtek", "game2"));
+        assertThat(repository.findByUserId("nobody")).isEmpty();
+    }
+
+    @Test
+    public void findByUserIdAndGameId() {
+        saveGame("Krtek", "game1");
+        saveGame("Krtek", "game2");
+        saveGame("sova", "game3");
+
+        Game found = repository.findByUserIdAndGameId("Krtek", "game2");
+        assertThat(found).isEqualTo(new Game("Krtek", "game2"));
+        assertThat(repository.findByUserIdAndGameId("Krtek", "game2", true)).isEqualTo(new Game("Krtek", "game2"));
+        assertThat(found.getAttributes()).containsEntry("description", "A game");
+        assertThat(repository.findByUserIdAndGameId("sova", "game2")).isNull();
+    }
+
+    @Test
+    public void create() {
+        Game game = new Game("Krtek", "game1");
+        game.addAttribute("name", "First");
+        assertThat(repository.create(game)).isTrue();
+
+        Game other = new Game("Krtek", "game1");
+        other.addAttribute("name", "Second");
+        assertThat(repository.create(other)).isFalse();
+        assertThat(repository.findByUserIdAndGameId("Krtek", "game1").getAttributes()).containsEntry("name", "First");
+    }
+
+    @Test
+    public void delete() {
+        saveGame("Krtek", "game1");
+        saveGame("Krtek", "game2");
+
+        repository.delete(new Game("Krtek", "game1"));
+
+        assertThat(repository.findByUserIdAndGameId("Krtek", "game1")).isNull();
+        assertThat(repository.findByUserId("Krtek")).containsExactly(new Game("Krtek", "game2"));
+    }
+
+    @Test
+    public void updateMissing() {
+        assertThat(repository.update(new Game("Krtek", "game1"))).isFalse();
+        assertThat(repository.findByUserIdAndGameId("Krtek", "game1")).isNull();
+    }
+
+    @Test
+    public void tombstoneBlocksSave() {
+        saveGame("Krtek", "game1");
+        Game deleted = repository.findByUserIdAndGameId("Krtek", "game1");
+        deleted.setDeletedAt(1L);
+        assertThat(repository.update(deleted)).isTrue();
+
+        Game game = new Game("Krtek", "game1");
+        game.addAttribute("description", "Back again");
+        assertThat(repository.save(game)).isNull();
+        Game found = repository.findByUserIdAndGameId("Krtek", "game1");
+        assertThat(found.isDeleted()).isTrue();
+        assertThat(found.getAttributes()).containsEntry("description", "A game");
+    }
+
+    @Test
+    public void replace() {
+        saveGame("Krtek", "game1");
+        Game game = new Game("Krtek", "game1");
+        game.addAttribute("description", "Changed");
+        assertThat(repository.replace(game)).isTrue();
+        assertThat(repository.findByUserIdAndGameId("Krtek", "game1").getAttributes())
+                .containsEntry("description", "Changed");
+    }
+
+    @Test
+    public void replaceMissing() {
+        assertThat(repository.replace(new Game("Krtek", "game1"))).isFalse();
+        assertThat(repository.findByUserIdAndGameId("Krtek", "game1")).isNull();
+    }
+
+    @Test
+    public void tombstoneBlocksReplace() {
+        saveGame("Krtek", "game1");
+        Game deleted = repository.findByUserIdAndGameId("Krtek", "game1");
+        deleted.setDeletedAt(1L);
+        repository.update(deleted);
+
+        Game game = new Game("Krtek", "game1");
+        game.addAttribute("description", "Back again");
+        assertThat(repository.replace(game)).isFalse();
+        assertThat(repository.findByUserIdAndGameId("Krtek", "game1").isDeleted()).isTrue();
+    }
+
+    @Test
+    public void streamAll() {
+        saveGame("Krtek", "game1");
+        saveGame("Sova", "game2");
+        assertThat(repository.streamAll().collect(Collectors.toList()))
+                .containsOnly(new Game("Krtek", "game1"), new Game("Sova", "game2"));
+    }
+
+    @Test
+    public void findDeleted() {
+        saveGame("Krtek", "game1");
+        saveGame("Sova", "game2");
+        Game deleted = repository.findByUserIdAndGameId("Sova", "game2");
+        deleted.setDeletedAt(1L);
+        repository.update(deleted);
+        assertThat(repository.findDeleted()).containsOnly(new Game("Sova", "game2"));
+    }
+
+    private void saveGame(String userId, String gameId) {
+        Game game = new Game();
+        game.setUserId(userId);
+        game.setGameId(gameId);
+        game.addAttribute("description", "A game");
+        repository.save(game);
+    }
+}
@@ -0,0 +1,98 @@
+package com.czequered.promocodes.repository;
+
+import com.amazonaws.auth.AWSStaticCredentialsProvider;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.client.builder.AwsClientBuilder;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClientBuilder;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBQueryExpression;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBScanExpression;
+import com.czequered.promocodes.model.Game;
+import org.junit.After;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.MockitoAnnotations;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * @author Martin Varga
+ */
+public class GameRepositoryImplTest extends GameRepositoryContractTest {
+
+    GameRepositoryImpl gameRepository;
+
+    DynamoDBMapper mapper;
+
+    @Captor
+    ArgumentCaptor<DynamoDBQueryExpression<Game>> queries;
+
+    @ClassRule
+    public static final LocalDynamoDBCreationRule dynamoDBProvider = new LocalDynamoDBCreationRule();
+
+    @Override
+    GameRepository createRepository() {
+        dynamoDBProvider.createTable(Game.class);
+
+        AmazonDynamoDB amazonDynamoDB = AmazonDynamoDBClientBuilder.standard()
+            .withCredentials(new AWSStaticCredentialsProvider(new BasicAWSCredentials("access", "secret")))
+            .withEndpointConfiguration(new AwsClientBuilder.EndpointConfiguration("http://localhost:8088", "ap-southeast-2"))
+            .build();
+
+        mapper = spy(new DynamoDBMapper(amazonDynamoDB));
+        MockitoAnnotations.initMocks(this);
+        gameRepository = new GameRepositoryImpl(mapper);
+        return gameRepository;
+    }
+
+    @After
+    public void after() {
+        dynamoDBProvider.deleteTable(Game.class);
+    }
+
+    @Test
+    public void findByUserIdAmongThousandsOfUsers() {
+        List<Game> games = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            games.add(new Game("user" + (i % 1500), "game" + i));
+        }
+        mapper.batchSave(games);
+
+        List<Game> expected = games.stream()
+            .filter(g -> g.getUserId().equals("user42"))
+            .collect(Collectors.toList());
+        assertThat(gameRepository.findByUserId("user42", true)).containsOnlyElementsOf(expected).hasSize(2);
+        assertThat(gameRepository.findByUserId("user42", false)).containsOnlyElementsOf(expected).hasSize(2);
+        verify(mapper, never()).scan(eq(Game.class), any(DynamoDBScanExpression.class));
+    }
+
+    @Test
+    public void findByUserIdReadMode() {
+        saveGame("Krtek", "game1");
+
+        gameRepository.findByUserId("Krtek", true);
+        gameRepository.findByUserId("Krtek");
+
+        verify(mapper, times(2)).query(eq(Game.class), queries.capture());
+        assertThat(queries.getAllValues().get(0).isConsistentRead()).isTrue();
+        assertThat(queries.getAllValues().get(1).isConsistentRead()).isFalse();
+    }
+
+    private void saveGame(String userId, String gameId) {
+        Game game = new Game();
+        game.setUserId(userId);
+        game.setGameId(gameId);
+        game.addAttribute("description", "A game");
+        gameRepository.save(game);
+    }
+}
\ No newline at end of file
@@ -10,6 +10,8 @@ import com.amazonaws.services.dynamodbv2.local.main.ServerRunner;
 import com.amazonaws.services.dynamodbv2.local.server.DynamoDBProxyServer;
 import com.amazonaws.services.dynamodbv2.model.CreateTableRequest;
 import com.amazonaws.services.dynamodbv2.model.DeleteTableRequest;
+import com.amazonaws.services.dynamodbv2.model.Projection;
+import com.amazonaws.services.dynamodbv2.model.ProjectionType;
 import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughput;
 import org.junit.rules.ExternalResource;
 
@@ -42,6 +44,15 @@ public class LocalDynamoDBCreationRule extends ExternalResource {
         DynamoDBMapper mapper = new DynamoDBMapper(amazonDynamoDB);
         CreateTableRequest createTableRequest = mapper.generateCreateTableRequest(clazz);
         createTableRequest.setProvisionedThroughput(new ProvisionedThroughput(1L, 1L));
+        if (createTableRequest.getLocalSecondaryIndexes() != null) {
+            createTableRequest.getLocalSecondaryIndexes()
+                    .forEach(index -> index.setProjection(new Projection().withProjectionType(ProjectionType.ALL)));
+        }
+        if (createTableRequest.getGlobalSecondaryIndexes() != null) {
+            createTableRequest.getGlobalSecondaryIndexes().forEach(index -> index
+                    .withProjection(new Projection().withProjectionType(ProjectionType.KEYS_ONLY))
+                    .setProvisionedThroughput(new ProvisionedThroughput(1L, 1L)));
+        }
         amazonDynamoDB.createTable(createTableRequest);
     }
 
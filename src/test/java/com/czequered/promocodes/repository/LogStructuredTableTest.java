@@ -0,0 +1,106 @@
+package com.czequered.promocodes.repository;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.czequered.promocodes.model.Game;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+/**
+ * @author Martin Varga
+ */
+public class LogStructuredTableTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    DynamoDBMapper mapper;
+
+    Path log;
+
+    @Before
+    public void before() {
+        mapper = new DynamoDBMapper(mock(AmazonDynamoDB.class));
+        log = folder.getRoot().toPath().resolve("Game.log");
+    }
+
+    @Test
+    public void appendsOneLinePerWrite() throws Exception {
+        try (LogStructuredTable<Game> games = open()) {
+            games.put(game("Krtek", "game1", "A"));
+            games.put(game("Krtek", "game1", "B"));
+            games.update("Krtek", "game1", game -> null);
+            games.remove("Krtek", "game1");
+        }
+        assertThat(Files.readAllLines(log)).hasSize(3);
+    }
+
+    @Test
+    public void compactsLogOnOpen() throws Exception {
+        try (LogStructuredTable<Game> games = open()) {
+            for (int i = 0; i < 10; i++) {
+                games.put(game("Krtek", "game1", "v" + i));
+            }
+            games.put(game("Krtek", "game2", "A"));
+            games.remove("Krtek", "game2");
+        }
+
+        try (LogStructuredTable<Game> games = open()) {
+            assertThat(games.partition("Krtek")).extracting(game -> game.getAttributes().get("name"))
+                .containsExactly("v9");
+        }
+        assertThat(Files.readAllLines(log)).hasSize(1);
+    }
+
+    @Test
+    public void compactsStaleLogWhileOpen() throws Exception {
+        try (LogStructuredTable<Game> games = new LogStructuredTable<>(mapper.getTableModel(Game.class), log, 10)) {
+            games.put(game("Krtek", "game2", "A"));
+            for (int i = 0; i < 100; i++) {
+                games.put(game("Krtek", "game1", "v" + i));
+                assertThat(Files.readAllLines(log).size()).isLessThanOrEqualTo(11);
+            }
+        }
+
+        try (LogStructuredTable<Game> games = open()) {
+            assertThat(games.partition("Krtek")).extracting(game -> game.getAttributes().get("name"))
+                .containsExactly("v99", "A");
+        }
+    }
+
+    @Test
+    public void skipsTornLine() throws Exception {
+        try (LogStructuredTable<Game> games = open()) {
+            games.put(game("Krtek", "game1", "A"));
+        }
+        Files.write(log, "P\t{\"userId\":{\"S\":\"Krt".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        try (LogStructuredTable<Game> games = open()) {
+            assertThat(games.partition("Krtek")).containsExactly(new Game("Krtek", "game1"));
+            games.put(game("Krtek", "game2", "B"));
+        }
+        try (LogStructuredTable<Game> games = open()) {
+            assertThat(games.partition("Krtek")).containsExactly(new Game("Krtek", "game1"), new Game("Krtek", "game2"));
+        }
+    }
+
+    private LogStructuredTable<Game> open() {
+        return LogStructuredTable.open(mapper, Game.class, folder.getRoot().getPath());
+    }
+
+    private Game game(String userId, String gameId, String name) {
+        Game game = new Game(userId, gameId);
+        game.addAttribute("name", name);
+        return game;
+    }
+}
@@ -0,0 +1,83 @@
+package com.czequered.promocodes.repository;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Behaviour every {@link RedemptionCounterRepository} backend has to provide, each backend runs it in a subclass.
+ *
+ * @author Martin Varga
+ */
+public abstract class RedemptionCounterRepositoryContractTest {
+
+    RedemptionCounterRepository repository;
+
+    /**
+     * @return repository over an empty table
+     */
+    abstract RedemptionCounterRepository createRepository() throws Exception;
+
+    @Before
+    public void createContractRepository() throws Exception {
+        repository = createRepository();
+    }
+
+    @Test
+    public void incrementStopsAtQuotaOfShard() {
+        repository.createAll("auticko", "PUB1", 2);
+        assertThat(repository.increment("auticko", "PUB1", 1, 2)).isTrue();
+        assertThat(repository.increment("auticko", "PUB1", 1, 2)).isTrue();
+        assertThat(repository.increment("auticko", "PUB1", 1, 2)).isFalse();
+        assertThat(repository.increment("auticko", "PUB1", 0, 2)).isTrue();
+        assertThat(repository.total("auticko", "PUB1", 2)).isEqualTo(3);
+    }
+
+    @Test
+    public void incrementWithoutQuota() {
+        repository.createAll("auticko", "PUB1", 1);
+        for (int i = 0; i < 5; i++) {
+            assertThat(repository.increment("auticko", "PUB1", 0, null)).isTrue();
+        }
+        assertThat(repository.total("auticko", "PUB1", 1)).isEqualTo(5);
+    }
+
+    @Test
+    public void total() {
+        repository.createAll("auticko", "PUB1", 4);
+        repository.createAll("auticko", "PUB2", 4);
+        repository.increment("auticko", "PUB1", 0, null);
+        repository.increment("auticko", "PUB1", 2, null);
+        repository.increment("auticko", "PUB1", 2, null);
+        repository.increment("auticko", "PUB2", 1, null);
+        assertThat(repository.total("auticko", "PUB1", 4)).isEqualTo(3);
+        assertThat(repository.total("auticko", "PUB3", 4)).isZero();
+    }
+
+    @Test
+    public void deleteAll() {
+        repository.createAll("auticko", "PUB1", 4);
+        repository.increment("auticko", "PUB1", 0, null);
+        repository.increment("auticko", "PUB1", 3, null);
+        repository.deleteAll("auticko", "PUB1", 4);
+        assertThat(repository.total("auticko", "PUB1", 4)).isZero();
+        assertThat(repository.increment("auticko", "PUB1", 0, null)).isFalse();
+        assertThat(repository.total("auticko", "PUB1", 4)).isZero();
+    }
+
+    @Test
+    public void incrementMissingShard() {
+        assertThat(repository.increment("auticko", "PUB1", 0, null)).isFalse();
+        assertThat(repository.increment("auticko", "PUB1", 0, 2)).isFalse();
+        assertThat(repository.total("auticko", "PUB1", 1)).isZero();
+    }
+
+    @Test
+    public void createAllKeepsCounts() {
+        repository.createAll("auticko", "PUB1", 2);
+        repository.increment("auticko", "PUB1", 1, null);
+        repository.createAll("auticko", "PUB1", 2);
+        assertThat(repository.total("auticko", "PUB1", 2)).isEqualTo(1);
+    }
+}
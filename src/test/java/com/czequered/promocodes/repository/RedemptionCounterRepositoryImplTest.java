@@ -0,0 +1,57 @@
+package com.czequered.promocodes.repository;
+
+import com.amazonaws.auth.AWSStaticCredentialsProvider;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.client.builder.AwsClientBuilder;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClientBuilder;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.czequered.promocodes.model.RedemptionCounter;
+import org.junit.After;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Martin Varga
+ */
+public class RedemptionCounterRepositoryImplTest extends RedemptionCounterRepositoryContractTest {
+
+    RedemptionCounterRepositoryImpl counterRepository;
+
+    DynamoDBMapper mapper;
+
+    @ClassRule
+    public static final LocalDynamoDBCreationRule dynamoDBProvider = new LocalDynamoDBCreationRule();
+
+    @Override
+    RedemptionCounterRepository createRepository() {
+        dynamoDBProvider.createTable(RedemptionCounter.class);
+
+        AmazonDynamoDB amazonDynamoDB = AmazonDynamoDBClientBuilder.standard()
+            .withCredentials(new AWSStaticCredentialsProvider(new BasicAWSCredentials("access", "secret")))
+            .withEndpointConfiguration(new AwsClientBuilder.EndpointConfiguration("http://localhost:8088", "ap-southeast-2"))
+            .build();
+
+        mapper = new DynamoDBMapper(amazonDynamoDB);
+        counterRepository = new RedemptionCounterRepositoryImpl(mapper, amazonDynamoDB);
+        return counterRepository;
+    }
+
+    @After
+    public void after() {
+        dynamoDBProvider.deleteTable(RedemptionCounter.class);
+    }
+
+    @Test
+    public void incrementWithQuota() {
+        counterRepository.createAll("auticko", "PUB1", 2);
+        assertThat(counterRepository.increment("auticko", "PUB1", 1, 2)).isTrue();
+        assertThat(counterRepository.increment("auticko", "PUB1", 1, 2)).isTrue();
+        assertThat(counterRepository.increment("auticko", "PUB1", 1, 2)).isFalse();
+        assertThat(counterRepository.increment("auticko", "PUB1", 0, 2)).isTrue();
+        RedemptionCounter shard = mapper.load(RedemptionCounter.class, RedemptionCounter.shardKey("auticko", "PUB1", 1));
+        assertThat(shard.getRedeemed()).isEqualTo(2);
+    }
+}
@@ -0,0 +1,54 @@
+package com.czequered.promocodes.repository;
+
+import com.czequered.promocodes.model.User;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Behaviour every {@link UserRepository} backend has to provide, each backend runs it in a subclass.
+ *
+ * @author Martin Varga
+ */
+public abstract class UserRepositoryContractTest {
+
+    UserRepository repository;
+
+    /**
+     * @return repository over an empty table
+     */
+    abstract UserRepository createRepository() throws Exception;
+
+    @Before
+    public void createContractRepository() throws Exception {
+        repository = createRepository();
+    }
+
+    @Test
+    public void findByUserId() {
+        User krtek = new User("Krtek");
+        krtek.addAttribute("hello", "world");
+        User sova = new User("Sova");
+
+        repository.save(krtek);
+        repository.save(sova);
+
+        User krtekRetrieved = repository.findByUserId("Krtek");
+        assertThat(krtekRetrieved).isEqualToComparingFieldByField(krtek);
+        assertThat(repository.findByUserId("Nobody")).isNull();
+    }
+
+    @Test
+    public void saveReplacesUser() {
+        User krtek = new User("Krtek");
+        krtek.addAttribute("credit", "10");
+        repository.save(krtek);
+
+        User changed = new User("Krtek");
+        changed.addAttribute("credit", "5");
+        repository.save(changed);
+
+        assertThat(repository.findByUserId("Krtek").getAttributes()).containsEntry("credit", "5");
+    }
+}
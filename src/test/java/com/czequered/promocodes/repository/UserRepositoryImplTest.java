@@ -8,26 +8,18 @@ import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClientBuilder;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
 import com.czequered.promocodes.model.User;
 import org.junit.After;
-import org.junit.Before;
 import org.junit.ClassRule;
-import org.junit.Test;
-import org.springframework.beans.factory.annotation.Autowired;
-
-import static org.assertj.core.api.Java6Assertions.assertThat;
 
 /**
  * @author Martin Varga
  */
-public class UserRepositoryTest {
-
-    @Autowired
-    UserRepository userRepository;
+public class UserRepositoryImplTest extends UserRepositoryContractTest {
 
     @ClassRule
     public static final LocalDynamoDBCreationRule dynamoDBProvider = new LocalDynamoDBCreationRule();
 
-    @Before
-    public void before() {
+    @Override
+    UserRepository createRepository() {
         dynamoDBProvider.createTable(User.class);
 
         AmazonDynamoDB amazonDynamoDB = AmazonDynamoDBClientBuilder.standard()
@@ -36,25 +28,11 @@ public class UserRepositoryTest {
             .build();
 
         DynamoDBMapper mapper = new DynamoDBMapper(amazonDynamoDB);
-        userRepository = new UserRepository(mapper);
+        return new UserRepositoryImpl(mapper);
     }
 
     @After
     public void after() {
         dynamoDBProvider.deleteTable(User.class);
     }
-
-
-    @Test
-    public void findByUserId() {
-        User krtek = new User("Krtek");
-        krtek.addAttribute("hello", "world");
-        User sova = new User("Sova");
-
-        userRepository.save(krtek);
-        userRepository.save(sova);
-
-        User krtekRetrieved = userRepository.findByUserId("Krtek");
-        assertThat(krtekRetrieved).isEqualToComparingFieldByField(krtek);
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,31 @@
+package com.czequered.promocodes.repository;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.rules.TemporaryFolder;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * @author Martin Varga
+ */
+public class UserRepositoryLocalTest extends UserRepositoryContractTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    UserRepositoryLocal localRepository;
+
+    @Override
+    UserRepository createRepository() {
+        localRepository = new UserRepositoryLocal(new DynamoDBMapper(mock(AmazonDynamoDB.class)), folder.getRoot().getPath());
+        return localRepository;
+    }
+
+    @After
+    public void after() throws Exception {
+        localRepository.close();
+    }
+}
@@ -1,7 +1,9 @@
 package com.czequered.promocodes.security;
 
+import com.czequered.promocodes.config.Constants;
 import com.czequered.promocodes.service.InvalidTokenException;
 import com.czequered.promocodes.service.TokenService;
+import com.czequered.promocodes.service.VerifiedToken;
 import org.apache.catalina.servlet4preview.http.HttpServletRequest;
 import org.junit.Before;
 import org.junit.Test;
@@ -9,6 +11,7 @@ import org.mockito.Mockito;
 
 import javax.servlet.FilterChain;
 import javax.servlet.http.HttpServletResponse;
+import java.time.Instant;
 
 import static org.mockito.Mockito.*;
 import static org.springframework.http.HttpMethod.GET;
@@ -28,7 +31,7 @@ public class AuthenticationTokenFilterTest {
     @Before
     public void before() {
         tokenService = mock(TokenService.class);
-        filter = new AuthenticationTokenFilter(tokenService, "/api/**");
+        filter = new AuthenticationTokenFilter(tokenService, "/api/**", "/api/v1/public/**");
         request = mock(HttpServletRequest.class);
         response = mock(HttpServletResponse.class);
         filterChain = mock(FilterChain.class);
@@ -36,15 +39,19 @@ public class AuthenticationTokenFilterTest {
 
     @Test
     public void doFilterTest() throws Exception {
+        VerifiedToken verifiedToken = new VerifiedToken("Krtek", Instant.now());
+        when(tokenService.verifyToken("token")).thenReturn(verifiedToken);
+        when(request.getHeader(Constants.TOKEN_HEADER)).thenReturn("token");
         when(request.getServletPath()).thenReturn("/api/v1/user");
         when(request.getMethod()).thenReturn(GET.name());
         filter.doFilter(request, response, filterChain);
+        verify(request).setAttribute(Constants.VERIFIED_TOKEN_ATTRIBUTE, verifiedToken);
         verify(filterChain, atLeastOnce()).doFilter(request, response);
     }
 
     @Test
     public void doFilterInvalidTokenTest() throws Exception {
-        Mockito.doThrow(new InvalidTokenException()).when(tokenService).validateToken(anyString());
+        Mockito.doThrow(new InvalidTokenException()).when(tokenService).verifyToken(anyString());
         when(request.getServletPath()).thenReturn("/api/v1/user");
         when(request.getMethod()).thenReturn(GET.name());
         filter.doFilter(request, response, filterChain);
@@ -57,7 +64,16 @@ public class AuthenticationTokenFilterTest {
         when(request.getServletPath()).thenReturn("/login/facebook");
         when(request.getMethod()).thenReturn(GET.name());
         filter.doFilter(request, response, filterChain);
-        verify(tokenService, never()).validateToken(anyString());
+        verify(tokenService, never()).verifyToken(anyString());
+        verify(filterChain, atLeastOnce()).doFilter(request, response);
+    }
+
+    @Test
+    public void doFilterPublicApi() throws Exception {
+        when(request.getServletPath()).thenReturn("/api/v1/public/games/auticko/codes/PUB1");
+        when(request.getMethod()).thenReturn(GET.name());
+        filter.doFilter(request, response, filterChain);
+        verify(tokenService, never()).verifyToken(anyString());
         verify(filterChain, atLeastOnce()).doFilter(request, response);
     }
 
@@ -66,7 +82,7 @@ public class AuthenticationTokenFilterTest {
         when(request.getServletPath()).thenReturn("/api/v1/user");
         when(request.getMethod()).thenReturn(OPTIONS.name());
         filter.doFilter(request, response, filterChain);
-        verify(tokenService, never()).validateToken(anyString());
+        verify(tokenService, never()).verifyToken(anyString());
         verify(filterChain, atLeastOnce()).doFilter(request, response);
     }
 }
\ No newline at end of file
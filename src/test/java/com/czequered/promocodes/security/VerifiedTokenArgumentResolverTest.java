@@ -0,0 +1,70 @@
+package com.czequered.promocodes.security;
+
+import com.czequered.promocodes.config.Constants;
+import com.czequered.promocodes.service.InvalidTokenException;
+import com.czequered.promocodes.service.TokenService;
+import com.czequered.promocodes.service.VerifiedToken;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.bind.ServletRequestBindingException;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * @author Martin Varga
+ */
+public class VerifiedTokenArgumentResolverTest {
+
+    private TokenService tokenService;
+    private VerifiedTokenArgumentResolver resolver;
+    private MockHttpServletRequest request;
+
+    @Before
+    public void before() {
+        tokenService = mock(TokenService.class);
+        resolver = new VerifiedTokenArgumentResolver(tokenService);
+        request = new MockHttpServletRequest();
+    }
+
+    @Test
+    public void resolvesFromFilterAttribute() throws Exception {
+        VerifiedToken verifiedToken = new VerifiedToken("Krtek", Instant.now());
+        request.setAttribute(Constants.VERIFIED_TOKEN_ATTRIBUTE, verifiedToken);
+        request.addHeader(Constants.TOKEN_HEADER, "token");
+        assertThat(resolve()).isSameAs(verifiedToken);
+        verify(tokenService, never()).verifyToken(anyString());
+    }
+
+    @Test
+    public void verifiesHeaderWithoutFilter() throws Exception {
+        VerifiedToken verifiedToken = new VerifiedToken("Krtek", Instant.now());
+        when(tokenService.verifyToken("token")).thenReturn(verifiedToken);
+        request.addHeader(Constants.TOKEN_HEADER, "token");
+        assertThat(resolve()).isSameAs(verifiedToken);
+        assertThat(resolve()).isSameAs(verifiedToken);
+        verify(tokenService, times(1)).verifyToken("token");
+    }
+
+    @Test
+    public void missingHeader() throws Exception {
+        assertThatThrownBy(this::resolve).isInstanceOf(ServletRequestBindingException.class);
+    }
+
+    @Test
+    public void invalidToken() throws Exception {
+        when(tokenService.verifyToken("token")).thenThrow(new InvalidTokenException());
+        request.addHeader(Constants.TOKEN_HEADER, "token");
+        assertThatThrownBy(this::resolve).isInstanceOf(InvalidTokenException.class);
+    }
+
+    private Object resolve() throws Exception {
+        return resolver.resolveArgument(null, null, new ServletWebRequest(request), null);
+    }
+}
@@ -0,0 +1,235 @@
+package com.czequered.promocodes.service;
+
+import com.czequered.promocodes.model.Code;
+import com.czequered.promocodes.model.CodeImportReport;
+import com.czequered.promocodes.model.CodeImportRow;
+import com.czequered.promocodes.repository.CodeRepositoryDev;
+import com.czequered.promocodes.repository.RedemptionCounterRepositoryDev;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.MockitoAnnotations;
+
+import java.io.StringReader;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import static com.czequered.promocodes.model.CodeImportRow.Status.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.*;
+
+/**
+ * @author Martin Varga
+ */
+public class CodeImportServiceImplTest {
+
+    private CodeImportService service;
+
+    private CodeService codeService;
+
+    @Captor
+    private ArgumentCaptor<List<Code>> batches;
+
+    @Before
+    public void before() {
+        MockitoAnnotations.initMocks(this);
+        codeService = mock(CodeService.class);
+        when(codeService.saveCodes(anyListOf(Code.class), any())).thenReturn(Collections.emptyList());
+        service = new CodeImportServiceImpl(codeService, new ObjectMapper().findAndRegisterModules());
+    }
+
+    @Test
+    public void importNdjson() throws Exception {
+        String body = "{\"codeId\":\"PUB1\",\"payload\":\"a\"}\n"
+            + "\n"
+            + "{\"gameId\":\"auticko\",\"codeId\":\"PUB2\",\"pub\":true}\n"
+            + "{\"codeId\":\n"
+            + "{\"gameId\":\"jinde\",\"codeId\":\"PUB3\"}\n"
+            + "{\"payload\":\"b\"}\n";
+        CodeImportReport report = service.importNdjson("auticko", "Krtek", new StringReader(body));
+
+        assertThat(report.getImported()).isEqualTo(2);
+        assertThat(report.getRejected()).isEqualTo(3);
+        assertThat(lines(report)).containsExactly(1, 3, 4, 5, 6);
+        assertThat(statuses(report)).containsExactly(IMPORTED, IMPORTED, INVALID, INVALID, INVALID);
+
+        List<Code> saved = savedBatches().get(0);
+        assertThat(saved).extracting(Code::getCodeId).containsExactly("PUB1", "PUB2");
+        assertThat(saved).extracting(Code::getGameId).containsOnly("auticko");
+        assertThat(saved).extracting(Code::getOwnerId).containsOnly("Krtek");
+        assertThat(saved.get(1).getPub()).isTrue();
+    }
+
+    @Test
+    public void importCsv() throws Exception {
+        String body = "codeId,pub,payload\n"
+            + "PUB1,true,\"quoted, with \"\"comma\"\"\"\n"
+            + "PUB2,,\n"
+            + "PUB3,maybe,x\n"
+            + "PUB4,false\n"
+            + ",false,x\n";
+        CodeImportReport report = service.importCsv("auticko", "Krtek", new StringReader(body));
+
+        assertThat(lines(report)).containsExactly(2, 3, 4, 5, 6);
+        assertThat(statuses(report)).containsExactly(IMPORTED, IMPORTED, INVALID, INVALID, INVALID);
+
+        List<Code> saved = savedBatches().get(0);
+        assertThat(saved).extracting(Code::getCodeId).containsExactly("PUB1", "PUB2");
+        assertThat(saved.get(0).getPayload()).isEqualTo("quoted, with \"comma\"");
+        assertThat(saved.get(0).getPub()).isTrue();
+        assertThat(saved.get(1).getPayload()).isNull();
+    }
+
+    @Test
+    public void importCsvCounts() throws Exception {
+        String body = "codeId,maxRedemptions,shards\n"
+            + "PUB1,100,4\n"
+            + "PUB2,,\n"
+            + "PUB3,many,\n"
+            + "PUB4,-1,\n"
+            + "PUB5,,0\n";
+        CodeImportReport report = service.importCsv("auticko", "Krtek", new StringReader(body));
+
+        assertThat(statuses(report)).containsExactly(IMPORTED, IMPORTED, INVALID, INVALID, INVALID);
+        assertThat(report.getRows().get(2).getReason()).isEqualTo("Invalid maxRedemptions value.");
+        assertThat(report.getRows().get(4).getReason()).isEqualTo("Invalid shards value.");
+        List<Code> saved = savedBatches().get(0);
+        assertThat(saved.get(0).getMaxRedemptions()).isEqualTo(100);
+        assertThat(saved.get(0).getShards()).isEqualTo(4);
+        assertThat(saved.get(1).getMaxRedemptions()).isNull();
+        assertThat(saved.get(1).getShards()).isNull();
+    }
+
+    @Test
+    public void importNdjsonCounts() throws Exception {
+        String body = "{\"codeId\":\"PUB1\",\"maxRedemptions\":100,\"shards\":4}\n"
+            + "{\"codeId\":\"PUB2\",\"maxRedemptions\":-1}\n"
+            + "{\"codeId\":\"PUB3\",\"shards\":0}\n";
+        CodeImportReport report = service.importNdjson("auticko", "Krtek", new StringReader(body));
+
+        assertThat(statuses(report)).containsExactly(IMPORTED, INVALID, INVALID);
+        assertThat(report.getRows().get(1).getReason()).isEqualTo("Invalid maxRedemptions value.");
+        assertThat(report.getRows().get(2).getReason()).isEqualTo("Invalid shards value.");
+        assertThat(savedBatches().get(0)).extracting(Code::getCodeId).containsExactly("PUB1");
+    }
+
+    @Test
+    public void tooManyShardsAreRejected() throws Exception {
+        CodeImportReport json = service.importNdjson("auticko", "Krtek",
+                new StringReader("{\"codeId\":\"PUB1\",\"shards\":101}\n{\"codeId\":\"PUB2\",\"shards\":100}\n"));
+        CodeImportReport csv = service.importCsv("auticko", "Krtek",
+                new StringReader("codeId,shards\nPUB3,2000000000\n"));
+
+        assertThat(statuses(json)).containsExactly(INVALID, IMPORTED);
+        assertThat(json.getRows().get(0).getReason()).isEqualTo("At most 100 shards.");
+        assertThat(statuses(csv)).containsExactly(INVALID);
+        assertThat(savedBatches()).hasSize(1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void importCsvWithoutCodeIdColumn() throws Exception {
+        service.importCsv("auticko", "Krtek", new StringReader("gameId,payload\nauticko,x\n"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void importCsvEmpty() throws Exception {
+        service.importCsv("auticko", "Krtek", new StringReader(""));
+    }
+
+    @Test
+    public void savesInBatches() throws Exception {
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 60; i++) {
+            body.append("{\"codeId\":\"CODE").append(i).append("\"}\n");
+        }
+        CodeImportReport report = service.importNdjson("auticko", "Krtek", new StringReader(body.toString()));
+
+        assertThat(report.getImported()).isEqualTo(60);
+        assertThat(savedBatches()).extracting(List::size).containsExactly(25, 25, 10);
+    }
+
+    @Test
+    public void duplicateCodeIdStartsNewBatch() throws Exception {
+        String body = "{\"codeId\":\"PUB1\",\"payload\":\"a\"}\n"
+            + "{\"codeId\":\"PUB2\"}\n"
+            + "{\"codeId\":\"PUB1\",\"payload\":\"b\"}\n";
+        CodeImportReport report = service.importNdjson("auticko", "Krtek", new StringReader(body));
+
+        assertThat(report.getImported()).isEqualTo(3);
+        List<List<Code>> batches = savedBatches();
+        assertThat(batches).extracting(List::size).containsExactly(2, 1);
+        assertThat(batches.get(1).get(0).getPayload()).isEqualTo("b");
+    }
+
+    @Test
+    public void unprocessedCodesAreReported() throws Exception {
+        when(codeService.saveCodes(anyListOf(Code.class), any()))
+            .thenReturn(Collections.singletonList(new Code("auticko", "PUB2")));
+        String body = "{\"codeId\":\"PUB1\"}\n{\"codeId\":\"PUB2\"}\n";
+        CodeImportReport report = service.importNdjson("auticko", "Krtek", new StringReader(body));
+
+        assertThat(statuses(report)).containsExactly(IMPORTED, FAILED);
+        assertThat(report.getRows().get(1).getCodeId()).isEqualTo("PUB2");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void changedShardsAreRejected() throws Exception {
+        when(codeService.saveCodes(anyListOf(Code.class), any())).then(invocation -> {
+            ((Consumer<Code>) invocation.getArguments()[1]).accept(new Code("auticko", "PUB1"));
+            return Collections.emptyList();
+        });
+        String body = "{\"codeId\":\"PUB1\",\"shards\":8}\n{\"codeId\":\"PUB2\"}\n";
+        CodeImportReport report = service.importNdjson("auticko", "Krtek", new StringReader(body));
+
+        assertThat(statuses(report)).containsExactly(INVALID, IMPORTED);
+        assertThat(report.getImported()).isEqualTo(1);
+    }
+
+    @Test
+    public void importAgainKeepsRedemptions() throws Exception {
+        CodeService codeService = new CodeServiceImpl(new CodeRepositoryDev(), new RedemptionCounterRepositoryDev(),
+                Clock::systemUTC, 0, 0, 100, 0);
+        CodeImportService service = new CodeImportServiceImpl(codeService, new ObjectMapper().findAndRegisterModules());
+        String body = "{\"codeId\":\"PUB1\",\"payload\":\"a\"}\n"
+            + "{\"codeId\":\"PUB2\",\"shards\":4}\n";
+        service.importNdjson("auticko", "Krtek", new StringReader(body));
+        codeService.redeem("auticko", "PUB1", "Krtek");
+        codeService.redeem("auticko", "PUB2", "Krtek");
+
+        CodeImportReport report = service.importNdjson("auticko", "Krtek",
+                new StringReader(body.replace("\"a\"", "\"b\"")));
+
+        assertThat(statuses(report)).containsOnly(IMPORTED);
+        assertThat(codeService.getCode("auticko", "PUB1").getPayload()).isEqualTo("b");
+        assertThat(codeService.getCode("auticko", "PUB1").getRedeemed()).isEqualTo(1);
+        assertThat(codeService.getCode("auticko", "PUB2").getRedeemed()).isEqualTo(1);
+    }
+
+    @Test
+    public void parseCsvLine() throws Exception {
+        assertThat(CodeImportServiceImpl.parseCsvLine("a,\"b,c\",,\"d\"\"e\""))
+            .containsExactly("a", "b,c", "", "d\"e");
+    }
+
+    private List<List<Code>> savedBatches() {
+        verify(codeService, atLeastOnce()).saveCodes(batches.capture(), any());
+        return batches.getAllValues();
+    }
+
+    private List<Integer> lines(CodeImportReport report) {
+        return report.getRows().stream().map(CodeImportRow::getLine).collect(Collectors.toList());
+    }
+
+    private List<CodeImportRow.Status> statuses(CodeImportReport report) {
+        return report.getRows().stream().map(CodeImportRow::getStatus).collect(Collectors.toList());
+    }
+}
@@ -1,14 +1,30 @@
 package com.czequered.promocodes.service;
 
 import com.czequered.promocodes.model.Code;
+import com.czequered.promocodes.model.Page;
 import com.czequered.promocodes.repository.CodeRepository;
+import com.czequered.promocodes.repository.RedemptionCounterRepository;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.InOrder;
 
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.fail;
+import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.*;
 
@@ -17,14 +33,23 @@ import static org.mockito.Mockito.*;
  */
 public class CodeServiceImplTest {
 
+    private static final Instant NOW = Instant.parse("2017-03-15T10:00:00Z");
+
     private CodeService service;
 
     private CodeRepository codeRepository;
 
+    private RedemptionCounterRepository counterRepository;
+
+    private Clock clock;
+
     @Before
     public void before() {
         codeRepository = mock(CodeRepository.class);
-        service = new CodeServiceImpl(codeRepository);
+        counterRepository = mock(RedemptionCounterRepository.class);
+        clock = Clock.fixed(NOW, ZoneOffset.UTC);
+        ClockService clockService = () -> clock;
+        service = new CodeServiceImpl(codeRepository, counterRepository, clockService, 5, 2, 100, 30);
     }
 
     @Test
@@ -37,6 +62,98 @@ public class CodeServiceImplTest {
         assertThat(codes).containsExactly(code);
     }
 
+    @Test
+    public void streamCodes() throws Exception {
+        Code code = new Code("auticko", "PUB1");
+        when(codeRepository.streamByGameId(eq("auticko"))).thenReturn(Stream.of(code));
+        assertThat(service.streamCodes("auticko")).containsExactly(code);
+    }
+
+    @Test
+    public void getCodesPage() throws Exception {
+        Page<Code> page = new Page<>(Collections.singletonList(new Code("auticko", "PUB1")), "next");
+        when(codeRepository.findByGameId(eq("auticko"), eq(1), eq("token"))).thenReturn(page);
+        assertThat(service.getCodes("auticko", 1, "token")).isSameAs(page);
+    }
+
+    @Test
+    public void getPublicCodeIsCached() throws Exception {
+        Code code = new Code("auticko", "PUB1");
+        code.setPub(true);
+        when(codeRepository.findByGameIdAndCodeId("auticko", "PUB1")).thenReturn(code);
+        assertThat(service.getPublicCode("auticko", "PUB1")).isSameAs(code);
+        assertThat(service.getPublicCode("auticko", "PUB1")).isSameAs(code);
+        verify(codeRepository, times(1)).findByGameIdAndCodeId("auticko", "PUB1");
+    }
+
+    @Test
+    public void getPublicCodeCachesMisses() throws Exception {
+        when(codeRepository.findByGameIdAndCodeId("auticko", "PRIVATE")).thenReturn(new Code("auticko", "PRIVATE"));
+        assertThat(service.getPublicCode("auticko", "PRIVATE")).isNull();
+        assertThat(service.getPublicCode("auticko", "PRIVATE")).isNull();
+        assertThat(service.getPublicCode("auticko", "MISSING")).isNull();
+        assertThat(service.getPublicCode("auticko", "MISSING")).isNull();
+        verify(codeRepository, times(1)).findByGameIdAndCodeId("auticko", "PRIVATE");
+        verify(codeRepository, times(1)).findByGameIdAndCodeId("auticko", "MISSING");
+    }
+
+    @Test
+    public void getPublicCodeExpires() throws Exception {
+        when(codeRepository.findByGameIdAndCodeId("auticko", "MISSING")).thenReturn(null);
+        service.getPublicCode("auticko", "MISSING");
+        clock = Clock.fixed(NOW.plusSeconds(31), ZoneOffset.UTC);
+        service.getPublicCode("auticko", "MISSING");
+        verify(codeRepository, times(2)).findByGameIdAndCodeId("auticko", "MISSING");
+    }
+
+    @Test
+    public void writesInvalidatePublicCode() throws Exception {
+        Code code = new Code("auticko", "PUB1");
+        code.setPub(true);
+        service.getPublicCode("auticko", "PUB1");
+        when(codeRepository.findByGameIdAndCodeId("auticko", "PUB1")).thenReturn(code);
+        when(codeRepository.save(code)).thenReturn(code);
+        service.saveCode(code);
+        assertThat(service.getPublicCode("auticko", "PUB1")).isSameAs(code);
+
+        when(codeRepository.delete(any(Code.class), eq("Krtek"))).thenReturn(true);
+        service.deleteCode("auticko", "PUB1", "Krtek");
+        when(codeRepository.findByGameIdAndCodeId("auticko", "PUB1")).thenReturn(null);
+        assertThat(service.getPublicCode("auticko", "PUB1")).isNull();
+    }
+
+    /**
+     * A lookup that reads the old code while the write is in flight must not keep it cached after the write.
+     */
+    @Test
+    public void lookupDuringUpdateIsNotCachedPastIt() throws Exception {
+        Code old = new Code("auticko", "PUB1");
+        old.setPub(true);
+        old.setPayload("old");
+        Code changed = new Code(old);
+        changed.setPayload("new");
+        changed.setMaxRedemptions(1);
+        when(codeRepository.findByGameIdAndCodeId("auticko", "PUB1")).thenReturn(old);
+        when(codeRepository.update(changed)).then(invocation -> {
+            assertThat(service.getPublicCode("auticko", "PUB1").getPayload()).isEqualTo("old");
+            service.redeem("auticko", "PUB1", "Krtek");
+            when(codeRepository.findByGameIdAndCodeId("auticko", "PUB1")).thenReturn(changed);
+            return true;
+        });
+        service.updateCode(changed);
+
+        assertThat(service.getPublicCode("auticko", "PUB1").getPayload()).isEqualTo("new");
+        service.redeem("auticko", "PUB1", "Krtek");
+        verify(codeRepository, times(4)).findByGameIdAndCodeId("auticko", "PUB1");
+    }
+
+    @Test
+    public void getActiveCodes() throws Exception {
+        List<Code> active = Collections.singletonList(new Code("auticko", "PUB1"));
+        when(codeRepository.findActiveByGameId("auticko", NOW)).thenReturn(active);
+        assertThat(service.getActiveCodes("auticko", NOW)).isSameAs(active);
+    }
+
     @Test
     public void getCode() {
         Code code = new Code();
@@ -50,10 +167,73 @@ public class CodeServiceImplTest {
 
     @Test
     public void deleteCode() throws Exception {
-        service.deleteCode("auticko", "PUB1");
         Code toDelete = new Code("auticko", "PUB1");
-        verify(codeRepository).delete(eq(toDelete));
+        when(codeRepository.delete(toDelete, "Krtek")).thenReturn(true);
+        assertThat(service.deleteCode("auticko", "PUB1", "Krtek")).isTrue();
+        verify(codeRepository).findByGameIdAndCodeId("auticko", "PUB1");
+        verify(codeRepository).delete(eq(toDelete), eq("Krtek"));
         verifyNoMoreInteractions(codeRepository);
+        verifyZeroInteractions(counterRepository);
+    }
+
+    @Test
+    public void deleteCodeOfAnotherOwner() throws Exception {
+        Code code = shardedCode(4, null);
+        code.setOwnerId("Zajic");
+        when(codeRepository.findByGameIdAndCodeId("auticko", "PUB1")).thenReturn(code);
+        when(codeRepository.delete(new Code("auticko", "PUB1"), "Krtek")).thenReturn(false);
+        assertThat(service.deleteCode("auticko", "PUB1", "Krtek")).isFalse();
+        verifyZeroInteractions(counterRepository);
+    }
+
+    @Test
+    public void deleteCodes() throws Exception {
+        List<Code> codes = IntStream.range(0, 30)
+                .mapToObj(i -> new Code("auticko", "PUB" + i))
+                .collect(Collectors.toList());
+        codes.get(26).setShards(4);
+        when(codeRepository.streamByGameId("auticko", true)).thenReturn(codes.stream());
+        when(codeRepository.batchDelete(anyListOf(Code.class))).thenReturn(Collections.emptyList());
+        List<Integer> progress = new ArrayList<>();
+        service.deleteCodes("auticko", "Krtek", progress::add);
+
+        assertThat(progress).containsExactly(25, 5);
+        InOrder inOrder = inOrder(codeRepository, counterRepository);
+        inOrder.verify(codeRepository).batchDelete(codes.subList(0, 25));
+        inOrder.verify(counterRepository).deleteAll("auticko", "PUB26", 4);
+        inOrder.verify(codeRepository).batchDelete(codes.subList(25, 30));
+    }
+
+    @Test
+    public void deleteCodesKeepsCodesOfOtherOwners() throws Exception {
+        Code own = new Code("auticko", "PUB1");
+        own.setOwnerId("Krtek");
+        Code other = new Code("auticko", "PUB2");
+        other.setOwnerId("Sova");
+        other.setShards(4);
+        Code unowned = new Code("auticko", "PUB3");
+        when(codeRepository.streamByGameId("auticko", true)).thenReturn(Stream.of(own, other, unowned));
+        when(codeRepository.batchDelete(anyListOf(Code.class))).thenReturn(Collections.emptyList());
+        List<Integer> progress = new ArrayList<>();
+        service.deleteCodes("auticko", "Krtek", progress::add);
+
+        assertThat(progress).containsExactly(2);
+        verify(codeRepository).batchDelete(Arrays.asList(own, unowned));
+        verifyZeroInteractions(counterRepository);
+    }
+
+    @Test
+    public void deleteCodesStopsAtFailedBatch() throws Exception {
+        List<Code> codes = IntStream.range(0, 30)
+                .mapToObj(i -> new Code("auticko", "PUB" + i))
+                .collect(Collectors.toList());
+        when(codeRepository.streamByGameId("auticko", true)).thenReturn(codes.stream());
+        when(codeRepository.batchDelete(anyListOf(Code.class))).thenReturn(codes.subList(0, 1));
+        List<Integer> progress = new ArrayList<>();
+        assertThatThrownBy(() -> service.deleteCodes("auticko", "Krtek", progress::add))
+                .isInstanceOf(IllegalStateException.class);
+        assertThat(progress).isEmpty();
+        verify(codeRepository, times(1)).batchDelete(anyListOf(Code.class));
     }
 
     @Test
@@ -61,8 +241,244 @@ public class CodeServiceImplTest {
         Code code = new Code();
         code.setGameId("auticko");
         code.setCodeId("PUB1");
-        service.saveCode(code);
+        when(codeRepository.save(code)).thenReturn(code);
+        assertThat(service.saveCode(code)).isSameAs(code);
         verify(codeRepository).save(eq(code));
         verifyNoMoreInteractions(codeRepository);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void saveCodeChangingShards() throws Exception {
+        Code code = shardedCode(8, null);
+        when(codeRepository.findByGameIdAndCodeId("auticko", "PUB1")).thenReturn(shardedCode(4, null));
+        assertThatThrownBy(() -> service.saveCode(code)).isInstanceOf(ShardsChangedException.class);
+        when(codeRepository.findByGameIdAndCodeId("auticko", "PUB1")).thenReturn(shardedCode(8, null));
+        assertThat(service.saveCode(code)).isNull();
+    }
+
+    @Test
+    public void saveCodes() throws Exception {
+        Code code = new Code("auticko", "PUB1");
+        Code failed = new Code("auticko", "PUB2");
+        List<Code> codes = Arrays.asList(code, failed);
+        when(codeRepository.batchSave(eq(codes))).thenReturn(Collections.singletonList(failed));
+        assertThat(service.saveCodes(codes, c -> fail("Shards not changed"))).containsExactly(failed);
+        verify(codeRepository).findByGameIdAndCodeIds("auticko", new LinkedHashSet<>(Arrays.asList("PUB1", "PUB2")));
+        verify(codeRepository, never()).update(any(Code.class));
+    }
+
+    @Test
+    public void saveCodesUpdatesExisting() throws Exception {
+        Code created = new Code("auticko", "PUB1");
+        Code updated = new Code("auticko", "PUB2");
+        Code failed = new Code("auticko", "PUB3");
+        Code resharded = shardedCode(8, null);
+        resharded.setCodeId("PUB4");
+        Code stored = shardedCode(4, null);
+        stored.setCodeId("PUB4");
+        when(codeRepository.findByGameIdAndCodeIds(eq("auticko"), any()))
+                .thenReturn(Arrays.asList(new Code(updated), new Code(failed), stored));
+        when(codeRepository.update(updated)).thenReturn(true);
+        when(codeRepository.batchSave(Collections.singletonList(created))).thenReturn(Collections.emptyList());
+        List<Code> shardsChanged = new ArrayList<>();
+
+        assertThat(service.saveCodes(Arrays.asList(created, updated, failed, resharded), shardsChanged::add))
+                .containsExactly(failed);
+        assertThat(shardsChanged).containsExactly(resharded);
+        verify(codeRepository).batchSave(Collections.singletonList(created));
+        verify(codeRepository, never()).update(resharded);
+    }
+
+    @Test
+    public void getCodesByIds() throws Exception {
+        Code first = new Code("auticko", "PUB1");
+        Code third = new Code("auticko", "PUB3");
+        when(codeRepository.findByGameIdAndCodeIds(eq("auticko"), any())).thenReturn(Arrays.asList(third, first));
+        Map<String, Code> codes = service.getCodes("auticko", Arrays.asList("PUB3", "PUB2", "PUB1", "PUB3"));
+        assertThat(codes.keySet()).containsExactly("PUB3", "PUB2", "PUB1");
+        assertThat(codes).containsEntry("PUB1", first).containsEntry("PUB2", null).containsEntry("PUB3", third);
+        verify(codeRepository).findByGameIdAndCodeIds("auticko", new LinkedHashSet<>(Arrays.asList("PUB3", "PUB2", "PUB1")));
+    }
+
+    @Test
+    public void getCodesByIdsEmpty() throws Exception {
+        assertThat(service.getCodes("auticko", Collections.emptyList())).isEmpty();
+        verifyZeroInteractions(codeRepository);
+    }
+
+    @Test
+    public void createCode() throws Exception {
+        Code code = new Code("auticko", "PUB1");
+        when(codeRepository.create(eq(code))).thenReturn(true);
+        assertThat(service.createCode(code)).isSameAs(code);
+        when(codeRepository.create(eq(code))).thenReturn(false);
+        assertThat(service.createCode(code)).isNull();
+        verify(codeRepository, never()).findByGameIdAndCodeId(anyString(), anyString());
+    }
+
+    @Test
+    public void updateCode() throws Exception {
+        Code code = new Code("auticko", "PUB1");
+        when(codeRepository.update(eq(code))).thenReturn(true);
+        assertThat(service.updateCode(code)).isSameAs(code);
+        verify(codeRepository, never()).findByGameIdAndCodeId(anyString(), anyString());
+        when(codeRepository.update(eq(code))).thenReturn(false);
+        assertThat(service.updateCode(code)).isNull();
+    }
+
+    @Test
+    public void updateCodeChangingShards() throws Exception {
+        Code stored = new Code("auticko", "PUB1");
+        stored.setShards(4);
+        when(codeRepository.findByGameIdAndCodeId("auticko", "PUB1")).thenReturn(stored);
+        Code code = new Code("auticko", "PUB1");
+        code.setShards(8);
+        when(codeRepository.update(code)).thenReturn(false);
+        assertThatThrownBy(() -> service.updateCode(code)).isInstanceOf(ShardsChangedException.class);
+
+        Code unchanged = new Code("auticko", "PUB1");
+        unchanged.setShards(4);
+        assertThat(service.updateCode(unchanged)).isNull();
+    }
+
+    @Test
+    public void redeem() throws Exception {
+        Code code = new Code("auticko", "PUB1");
+        when(codeRepository.findByGameIdAndCodeId("auticko", "PUB1")).thenReturn(code);
+        when(codeRepository.redeem("auticko", "PUB1", "Krtek", NOW)).thenReturn(code);
+        assertThat(service.redeem("auticko", "PUB1", "Krtek")).isSameAs(code);
+        assertThat(service.redeem("auticko", "PUB1", "Krtek")).isSameAs(code);
+        verify(codeRepository, times(1)).findByGameIdAndCodeId("auticko", "PUB1");
+        verifyZeroInteractions(counterRepository);
+    }
+
+    @Test
+    public void redeemSharded() throws Exception {
+        Code code = shardedCode(4, 10);
+        when(codeRepository.findByGameIdAndCodeId("auticko", "PUB1")).thenReturn(code);
+        when(counterRepository.increment(eq("auticko"), eq("PUB1"), anyInt(), any())).thenReturn(true);
+        when(counterRepository.total("auticko", "PUB1", 4)).thenReturn(7);
+
+        Code redeemed = service.redeem("auticko", "PUB1", "Krtek");
+
+        assertThat(redeemed.getRedeemed()).isEqualTo(7);
+        assertThat(code.getRedeemed()).isNull();
+        verify(counterRepository, times(1)).increment(eq("auticko"), eq("PUB1"), anyInt(), any());
+        verify(codeRepository, never()).redeem(anyString(), anyString(), anyString(), any());
+    }
+
+    @Test
+    public void redeemShardedTriesOtherShards() throws Exception {
+        when(codeRepository.findByGameIdAndCodeId("auticko", "PUB1")).thenReturn(shardedCode(4, 10));
+        when(counterRepository.increment(eq("auticko"), eq("PUB1"), anyInt(), any())).thenReturn(false);
+        when(counterRepository.increment("auticko", "PUB1", 2, 2)).thenReturn(true);
+        assertThat(service.redeem("auticko", "PUB1", "Krtek")).isNotNull();
+    }
+
+    @Test
+    public void redeemShardedUsedUp() throws Exception {
+        when(codeRepository.findByGameIdAndCodeId("auticko", "PUB1")).thenReturn(shardedCode(4, 10));
+        when(counterRepository.increment(eq("auticko"), eq("PUB1"), anyInt(), any())).thenReturn(false);
+        assertThat(service.redeem("auticko", "PUB1", "Krtek")).isNull();
+        verify(counterRepository, times(4)).increment(eq("auticko"), eq("PUB1"), anyInt(), any());
+    }
+
+    @Test
+    public void redeemShardedOfAnotherOwner() throws Exception {
+        Code code = shardedCode(4, 10);
+        code.setOwnerId("Zajic");
+        when(codeRepository.findByGameIdAndCodeId("auticko", "PUB1")).thenReturn(code);
+        assertThat(service.redeem("auticko", "PUB1", "Krtek")).isNull();
+        verifyZeroInteractions(counterRepository);
+    }
+
+    @Test
+    public void redeemShardedOutsideWindow() throws Exception {
+        Code code = shardedCode(4, null);
+        code.setTo(Instant.parse("2017-03-01T00:00:00Z"));
+        when(codeRepository.findByGameIdAndCodeId("auticko", "PUB1")).thenReturn(code);
+        assertThat(service.redeem("auticko", "PUB1", "Krtek")).isNull();
+        verifyZeroInteractions(counterRepository);
+    }
+
+    @Test
+    public void quota() throws Exception {
+        assertThat(CodeServiceImpl.quota(10, 4, 0)).isEqualTo(3);
+        assertThat(CodeServiceImpl.quota(10, 4, 1)).isEqualTo(3);
+        assertThat(CodeServiceImpl.quota(10, 4, 2)).isEqualTo(2);
+        assertThat(CodeServiceImpl.quota(10, 4, 3)).isEqualTo(2);
+        assertThat(CodeServiceImpl.quota(2, 4, 3)).isEqualTo(0);
+        assertThat(CodeServiceImpl.quota(null, 4, 3)).isNull();
+    }
+
+    @Test
+    public void getCodeSharded() throws Exception {
+        when(codeRepository.findByGameIdAndCodeId("auticko", "PUB1")).thenReturn(shardedCode(4, null));
+        when(counterRepository.total("auticko", "PUB1", 4)).thenReturn(42);
+        assertThat(service.getCode("auticko", "PUB1").getRedeemed()).isEqualTo(42);
+    }
+
+    @Test
+    public void readsSharded() throws Exception {
+        when(codeRepository.findByGameId("auticko")).thenReturn(Collections.singletonList(shardedCode(4, null)));
+        when(codeRepository.streamByGameId("auticko")).thenReturn(Stream.of(shardedCode(4, null)));
+        when(codeRepository.findByGameId("auticko", 1, null))
+                .thenReturn(new Page<>(Collections.singletonList(shardedCode(4, null)), null));
+        when(codeRepository.findActiveByGameId("auticko", NOW))
+                .thenReturn(Collections.singletonList(shardedCode(4, null)));
+        when(codeRepository.findByGameIdAndCodeIds(eq("auticko"), any()))
+                .thenReturn(Collections.singletonList(shardedCode(4, null)));
+        when(counterRepository.total("auticko", "PUB1", 4)).thenReturn(42);
+
+        assertThat(service.getCodes("auticko").get(0).getRedeemed()).isEqualTo(42);
+        assertThat(service.streamCodes("auticko").findFirst().get().getRedeemed()).isEqualTo(42);
+        assertThat(service.getCodes("auticko", 1, null).getItems().get(0).getRedeemed()).isEqualTo(42);
+        assertThat(service.getActiveCodes("auticko", NOW).get(0).getRedeemed()).isEqualTo(42);
+        assertThat(service.getCodes("auticko", Collections.singletonList("PUB1")).get("PUB1").getRedeemed())
+                .isEqualTo(42);
+    }
+
+    @Test
+    public void getPublicCodeSharded() throws Exception {
+        Code code = shardedCode(4, null);
+        when(codeRepository.findByGameIdAndCodeId("auticko", "PUB1")).thenReturn(code);
+        when(counterRepository.total("auticko", "PUB1", 4)).thenReturn(42);
+        assertThat(service.getPublicCode("auticko", "PUB1").getRedeemed()).isEqualTo(42);
+        assertThat(code.getRedeemed()).isNull();
+    }
+
+    @Test
+    public void createShardedCode() throws Exception {
+        Code code = shardedCode(4, null);
+        when(codeRepository.create(code)).thenReturn(true);
+        service.createCode(code);
+        InOrder inOrder = inOrder(counterRepository, codeRepository);
+        inOrder.verify(counterRepository).createAll("auticko", "PUB1", 4);
+        inOrder.verify(codeRepository).create(code);
+    }
+
+    @Test
+    public void saveShardedCodes() throws Exception {
+        List<Code> codes = Arrays.asList(shardedCode(4, null), new Code("auticko", "PUB2"));
+        when(codeRepository.batchSave(codes)).thenReturn(Collections.emptyList());
+        service.saveCodes(codes, c -> fail("Shards not changed"));
+        verify(counterRepository).createAll("auticko", "PUB1", 4);
+        verifyNoMoreInteractions(counterRepository);
+    }
+
+    @Test
+    public void deleteShardedCode() throws Exception {
+        when(codeRepository.findByGameIdAndCodeId("auticko", "PUB1")).thenReturn(shardedCode(4, null));
+        when(codeRepository.delete(any(Code.class), eq("Krtek"))).thenReturn(true);
+        service.deleteCode("auticko", "PUB1", "Krtek");
+        verify(counterRepository).deleteAll("auticko", "PUB1", 4);
+    }
+
+    private Code shardedCode(int shards, Integer maxRedemptions) {
+        Code code = new Code("auticko", "PUB1");
+        code.setPub(true);
+        code.setShards(shards);
+        code.setMaxRedemptions(maxRedemptions);
+        return code;
+    }
+}
@@ -0,0 +1,142 @@
+package com.czequered.promocodes.service;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Martin Varga
+ */
+public class ExpiringCacheTest {
+
+    private static final Instant NOW = Instant.parse("2017-03-01T10:00:00Z");
+
+    private ClockService clockService;
+
+    private ExpiringCache<String, String> cache;
+
+    @Before
+    public void before() {
+        clockService = mock(ClockService.class);
+        setTime(NOW);
+        cache = new ExpiringCache<>(2, Duration.ofSeconds(10), clockService);
+    }
+
+    @Test
+    public void getPut() {
+        assertThat(cache.get("a")).isNull();
+        cache.put("a", "A");
+        assertThat(cache.get("a")).isEqualTo("A");
+        assertThat(cache.getHits()).isEqualTo(1);
+        assertThat(cache.getMisses()).isEqualTo(1);
+    }
+
+    @Test
+    public void expires() {
+        cache.put("a", "A");
+        setTime(NOW.plusSeconds(9));
+        assertThat(cache.get("a")).isEqualTo("A");
+        setTime(NOW.plusSeconds(10));
+        assertThat(cache.get("a")).isNull();
+        assertThat(cache.size()).isZero();
+    }
+
+    @Test
+    public void expiresAtEarlierTime() {
+        cache.put("a", "A", NOW.plusSeconds(5));
+        setTime(NOW.plusSeconds(5));
+        assertThat(cache.get("a")).isNull();
+    }
+
+    @Test
+    public void expiresAtIsCappedByTtl() {
+        cache.put("a", "A", NOW.plusSeconds(60));
+        setTime(NOW.plusSeconds(10));
+        assertThat(cache.get("a")).isNull();
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        cache.put("a", "A");
+        cache.put("b", "B");
+        cache.get("a");
+        cache.put("c", "C");
+        assertThat(cache.get("a")).isEqualTo("A");
+        assertThat(cache.get("b")).isNull();
+        assertThat(cache.get("c")).isEqualTo("C");
+    }
+
+    @Test
+    public void sweepsExpiredFirst() {
+        cache.put("a", "A", NOW.plusSeconds(5));
+        cache.put("b", "B");
+        setTime(NOW.plusSeconds(5));
+        cache.put("c", "C");
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(cache.get("b")).isEqualTo("B");
+        assertThat(cache.get("c")).isEqualTo("C");
+    }
+
+    @Test
+    public void staysBoundedUnderConcurrentPuts() throws Exception {
+        ExpiringCache<Integer, Integer> bounded = new ExpiringCache<>(100, Duration.ofSeconds(10), clockService);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> writers = new ArrayList<>();
+        for (int thread = 0; thread < 8; thread++) {
+            int offset = thread * 10_000;
+            writers.add(executor.submit(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    bounded.put(offset + i, i);
+                    bounded.get(offset + i / 2);
+                }
+            }));
+        }
+        for (Future<?> writer : writers) {
+            writer.get(10, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+        bounded.put(-1, -1);
+        assertThat(bounded.size()).isLessThanOrEqualTo(100);
+        assertThat(bounded.get(-1)).isEqualTo(-1);
+    }
+
+    @Test
+    public void loader() {
+        assertThat(cache.get("a", String::toUpperCase)).isEqualTo("A");
+        assertThat(cache.get("a", k -> "other")).isEqualTo("A");
+        assertThat(cache.get("b", k -> null)).isNull();
+        assertThat(cache.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void invalidate() {
+        cache.put("a", "A");
+        cache.invalidate("a");
+        assertThat(cache.get("a")).isNull();
+    }
+
+    @Test
+    public void disabled() {
+        ExpiringCache<String, String> disabled = new ExpiringCache<>(0, Duration.ofSeconds(10), clockService);
+        disabled.put("a", "A");
+        assertThat(disabled.get("a")).isNull();
+    }
+
+    private void setTime(Instant instant) {
+        when(clockService.getClock()).thenReturn(Clock.fixed(instant, ZoneOffset.UTC));
+    }
+}
@@ -1,14 +1,23 @@
 package com.czequered.promocodes.service;
 
 import com.czequered.promocodes.model.Game;
+import com.czequered.promocodes.repository.CodeRepository;
 import com.czequered.promocodes.repository.GameRepository;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.function.IntConsumer;
+import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Matchers.eq;
@@ -23,13 +32,24 @@ public class GameServiceImplTest {
 
     private GameRepository gameRepository;
 
+    private CodeRepository codeRepository;
+
+    private CodeService codeService;
+
     private IdGeneratorService idGeneratorService;
 
+    private ClockService clockService;
+
     @Before
     public void before() {
         idGeneratorService = mock(IdGeneratorService.class);
         gameRepository = mock(GameRepository.class);
-        gameService = new GameServiceImpl(gameRepository, idGeneratorService);
+        codeRepository = mock(CodeRepository.class);
+        codeService = mock(CodeService.class);
+        clockService = mock(ClockService.class);
+        when(clockService.getClock()).thenReturn(Clock.fixed(Instant.parse("2017-03-01T10:00:00Z"), ZoneOffset.UTC));
+        gameService = new GameServiceImpl(gameRepository, codeRepository, codeService, idGeneratorService, clockService,
+                Runnable::run, false, 100, 60);
     }
 
     @Test
@@ -49,16 +69,133 @@ public class GameServiceImplTest {
         assertThat(game).isEqualTo(game1);
     }
 
+    @Test
+    public void isOwnerIsCached() {
+        when(gameRepository.findByUserIdAndGameId(eq("Krtek"), eq("game1"))).thenReturn(new Game("Krtek", "game1"));
+        assertThat(gameService.isOwner("Krtek", "game1")).isTrue();
+        assertThat(gameService.isOwner("Krtek", "game1")).isTrue();
+        verify(gameRepository, times(1)).findByUserIdAndGameId("Krtek", "game1");
+        assertThat(((GameServiceImpl) gameService).getOwnershipCacheHits()).isEqualTo(1);
+        assertThat(((GameServiceImpl) gameService).getOwnershipCacheMisses()).isEqualTo(1);
+    }
+
+    @Test
+    public void isOwnerCachesForbidden() {
+        assertThat(gameService.isOwner("Sova", "game1")).isFalse();
+        assertThat(gameService.isOwner("Sova", "game1")).isFalse();
+        verify(gameRepository, times(1)).findByUserIdAndGameId("Sova", "game1");
+    }
+
+    @Test
+    public void isOwnerExpires() {
+        when(gameRepository.findByUserIdAndGameId(eq("Krtek"), eq("game1"))).thenReturn(new Game("Krtek", "game1"));
+        gameService.isOwner("Krtek", "game1");
+        when(clockService.getClock()).thenReturn(Clock.fixed(Instant.parse("2017-03-01T10:01:00Z"), ZoneOffset.UTC));
+        gameService.isOwner("Krtek", "game1");
+        verify(gameRepository, times(2)).findByUserIdAndGameId("Krtek", "game1");
+    }
+
+    @Test
+    public void isOwnerConsistentBypassesCache() {
+        when(gameRepository.findByUserIdAndGameId(eq("Krtek"), eq("game1"))).thenReturn(new Game("Krtek", "game1"));
+        Game deleted = new Game("Krtek", "game1");
+        deleted.setDeletedAt(1L);
+        when(gameRepository.findByUserIdAndGameId("Krtek", "game1", true)).thenReturn(deleted);
+        assertThat(gameService.isOwner("Krtek", "game1")).isTrue();
+        assertThat(gameService.isOwner("Krtek", "game1", true)).isFalse();
+        assertThat(gameService.isOwner("Krtek", "game1")).isFalse();
+        verify(gameRepository, times(1)).findByUserIdAndGameId("Krtek", "game1");
+    }
+
+    @Test
+    public void deleteGameInvalidatesOwnership() {
+        when(gameRepository.findByUserIdAndGameId(eq("Krtek"), eq("game1"))).thenReturn(new Game("Krtek", "game1"));
+        assertThat(gameService.isOwner("Krtek", "game1")).isTrue();
+        gameService.deleteGame("Krtek", "game1");
+        when(gameRepository.findByUserIdAndGameId(eq("Krtek"), eq("game1"))).thenReturn(null);
+        assertThat(gameService.isOwner("Krtek", "game1")).isFalse();
+    }
+
+    @Test
+    public void saveGameUpdatesOwnership() {
+        assertThat(gameService.isOwner("Krtek", "game1")).isFalse();
+        Game game = new Game("Krtek", "game1");
+        when(gameRepository.replace(eq(game))).thenReturn(true);
+        gameService.saveGame(game);
+        assertThat(gameService.isOwner("Krtek", "game1")).isTrue();
+        verify(gameRepository, times(1)).findByUserIdAndGameId("Krtek", "game1");
+    }
+
     @Test
     public void deleteGame() {
+        when(gameRepository.findByUserIdAndGameId("Krtek", "game")).thenReturn(new Game("Krtek", "game"));
+        when(gameRepository.update(any(Game.class))).thenReturn(true);
+        doAnswer(invocation -> {
+            ((IntConsumer) invocation.getArguments()[2]).accept(25);
+            return null;
+        }).when(codeService).deleteCodes(eq("game"), eq("Krtek"), any(IntConsumer.class));
         gameService.deleteGame("Krtek", "game");
-        verify(gameRepository).delete(eq(new Game("Krtek", "game")));
+
+        InOrder inOrder = inOrder(gameRepository, codeService);
+        ArgumentCaptor<Game> marked = ArgumentCaptor.forClass(Game.class);
+        inOrder.verify(gameRepository).update(marked.capture());
+        inOrder.verify(codeService).deleteCodes(eq("game"), eq("Krtek"), any(IntConsumer.class));
+        inOrder.verify(gameRepository).delete(eq(new Game("Krtek", "game")));
+        assertThat(marked.getValue().getDeletedAt()).isEqualTo(Instant.parse("2017-03-01T10:00:00Z").toEpochMilli());
+    }
+
+    @Test
+    public void deleteGameMissing() {
+        gameService.deleteGame("Krtek", "game");
+        verify(gameRepository, never()).update(any(Game.class));
+        verifyZeroInteractions(codeService);
+    }
+
+    @Test
+    public void deleteGameKeepsTombstoneWhenCodesFail() {
+        when(gameRepository.findByUserIdAndGameId("Krtek", "game")).thenReturn(new Game("Krtek", "game"));
+        when(gameRepository.update(any(Game.class))).thenReturn(true);
+        doThrow(new IllegalStateException("throttled"))
+                .when(codeService).deleteCodes(eq("game"), eq("Krtek"), any(IntConsumer.class));
+        gameService.deleteGame("Krtek", "game");
+        verify(gameRepository, never()).delete(any(Game.class));
+        assertThat(((GameServiceImpl) gameService).getDeletions()).isEmpty();
+    }
+
+    @Test
+    public void deletedGameIsHidden() {
+        Game deleted = new Game("Krtek", "game1");
+        deleted.setDeletedAt(1L);
+        when(gameRepository.findByUserId("Krtek")).thenReturn(Arrays.asList(deleted, new Game("Krtek", "game2")));
+        when(gameRepository.findByUserIdAndGameId("Krtek", "game1")).thenReturn(deleted);
+        assertThat(gameService.getGames("Krtek")).extracting(Game::getGameId).containsExactly("game2");
+        assertThat(gameService.getGame("Krtek", "game1")).isNull();
+        assertThat(gameService.isOwner("Krtek", "game1")).isFalse();
+    }
+
+    @Test
+    public void resumeDeletions() {
+        Game deleted = new Game("Krtek", "game1");
+        deleted.setDeletedAt(1L);
+        when(gameRepository.findDeleted()).thenReturn(Collections.singletonList(deleted));
+        assertThat(((GameServiceImpl) gameService).resumeDeletions()).isEqualTo(1);
+        verify(codeService).deleteCodes(eq("game1"), eq("Krtek"), any(IntConsumer.class));
+        verify(gameRepository).delete(deleted);
+        verify(gameRepository, never()).streamAll();
+    }
+
+    @Test
+    public void saveGameBeingDeleted() {
+        Game game = new Game("Krtek", "game");
+        when(gameRepository.replace(eq(game))).thenReturn(false);
+        assertThat(gameService.saveGame(game)).isNull();
+        assertThat(gameService.isOwner("Krtek", "game")).isFalse();
     }
 
     @Test
     public void saveGame() {
         Game game = new Game("Krtek", "game");
-        when(gameRepository.save(eq(game))).thenReturn(game);
+        when(gameRepository.replace(eq(game))).thenReturn(true);
         Game saved = gameService.saveGame(game);
         assertThat(game).isEqualTo(saved);
     }
@@ -67,32 +204,41 @@ public class GameServiceImplTest {
     public void saveNewGame() {
         Game game = new Game("Krtek", null);
         when(idGeneratorService.generate()).thenReturn("auticko");
-        when(gameRepository.findByUserIdAndGameId(eq("Krtek"), eq("auticko"))).thenReturn(null);
-        when(gameRepository.save(any(Game.class))).then(i -> i.getArgumentAt(0, Game.class));
+        when(gameRepository.create(any(Game.class))).thenReturn(true);
         Game saved = gameService.saveGame(game);
         assertThat(saved.getGameId())
             .isNotNull()
             .isEqualTo("auticko");
+        verify(gameRepository, times(1)).create(game);
+        verify(gameRepository, never()).findByUserIdAndGameId(anyString(), anyString());
+        verify(gameRepository, never()).replace(any(Game.class));
     }
 
     @Test
     public void saveNewGameConflict() {
         Game game = new Game("Krtek", null);
         when(idGeneratorService.generate()).thenReturn("ExistingGameId", "BetterGameId");
-        when(gameRepository.findByUserIdAndGameId(eq("Krtek"), eq("ExistingGameId"))).thenReturn(new Game("Krtek", "ExistingGameId"));
-        when(gameRepository.findByUserIdAndGameId(eq("Krtek"), eq("BetterGameId"))).thenReturn(null);
-        when(gameRepository.save(any(Game.class))).thenAnswer(new Answer<Game>() {
+        when(gameRepository.create(any(Game.class))).thenAnswer(new Answer<Boolean>() {
             @Override
-            public Game answer(InvocationOnMock invocation) throws Throwable {
-                Object[] args = invocation.getArguments();
-                return (Game) args[0];
+            public Boolean answer(InvocationOnMock invocation) throws Throwable {
+                Game candidate = (Game) invocation.getArguments()[0];
+                return !"ExistingGameId".equals(candidate.getGameId());
             }
         });
         Game saved = gameService.saveGame(game);
         assertThat(saved.getGameId())
             .isNotNull()
             .isEqualTo("BetterGameId");
+        verify(gameRepository, times(2)).create(game);
     }
 
-
-}
\ No newline at end of file
+    @Test
+    public void backfillCodeOwners() {
+        when(gameRepository.streamAll()).thenReturn(Stream.of(new Game("Krtek", "auticko"), new Game("Zajic", "kolo")));
+        when(codeRepository.assignOwnerByGameId("auticko", "Krtek")).thenReturn(3);
+        when(codeRepository.assignOwnerByGameId("kolo", "Zajic")).thenReturn(0);
+        assertThat(((GameServiceImpl) gameService).backfillCodeOwners()).isEqualTo(3);
+        verify(codeRepository).assignOwnerByGameId("auticko", "Krtek");
+        verify(codeRepository).assignOwnerByGameId("kolo", "Zajic");
+    }
+}
@@ -2,6 +2,17 @@ package com.czequered.promocodes.service;
 
 import org.junit.Test;
 
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
 import static org.assertj.core.api.Assertions.assertThat;
 
 /**
@@ -15,4 +26,38 @@ public class IdGeneratorServiceImplTest {
                 .hasSize(26);
     }
 
-}
\ No newline at end of file
+    @Test
+    public void alphabet() throws Exception {
+        IdGeneratorService idGeneratorService = new IdGeneratorServiceImpl();
+        Set<Character> used = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            String id = idGeneratorService.generate();
+            assertThat(id).matches("[0-9A-V]{26}");
+            id.chars().forEach(c -> used.add((char) c));
+        }
+        assertThat(used).hasSize(32);
+    }
+
+    @Test
+    public void uniqueAcrossThreads() throws Exception {
+        IdGeneratorService idGeneratorService = new IdGeneratorServiceImpl();
+        Set<String> ids = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Callable<Void>> tasks = IntStream.range(0, 8)
+                    .mapToObj(t -> (Callable<Void>) () -> {
+                        for (int i = 0; i < 5000; i++) {
+                            ids.add(idGeneratorService.generate());
+                        }
+                        return null;
+                    })
+                    .collect(Collectors.toList());
+            for (Future<Void> future : executor.invokeAll(tasks)) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertThat(ids).hasSize(40000);
+    }
+}
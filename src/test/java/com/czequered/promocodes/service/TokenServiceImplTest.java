@@ -1,9 +1,15 @@
 package com.czequered.promocodes.service;
 
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Clock;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Date;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
@@ -16,13 +22,15 @@ import static org.mockito.Mockito.when;
 public class TokenServiceImplTest {
 
     private static final long EXPIRATION = 1000L;
+    private static final String OLD_SECRET = "b2xkU2VjcmV0";
+    private static final String NEW_SECRET = "bmV3U2VjcmV0";
     private TokenService service;
     private Clock clock;
 
     @Before
     public void before() {
         clock = mock(Clock.class);
-        service = new TokenServiceImpl(EXPIRATION, "secret", () -> clock);
+        service = new TokenServiceImpl(EXPIRATION, "secret", new String[0], 100, () -> clock);
     }
 
     @Test
@@ -56,4 +64,114 @@ public class TokenServiceImplTest {
         when(clock.millis()).thenReturn(1001500L);
         assertThatThrownBy(() -> service.validateToken(token)).isInstanceOf(InvalidTokenException.class);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void verifyTokenTest() throws Exception {
+        when(clock.millis()).thenReturn(1000000L);
+        String token = service.generateToken("Krtek");
+        VerifiedToken verified = service.verifyToken(token);
+        assertThat(verified.getUserId()).isEqualTo("Krtek");
+        assertThat(verified.getExpiresAt()).isEqualTo(Instant.ofEpochSecond(1001));
+    }
+
+    @Test
+    public void verifyTokenWithoutUserId() throws Exception {
+        String token = service.generateToken("");
+        assertThatThrownBy(() -> service.verifyToken(token)).isInstanceOf(InvalidTokenException.class);
+    }
+
+    @Test
+    public void cachedTokenExpiresAtExp() throws Exception {
+        when(clock.millis()).thenReturn(1000000L);
+        String token = service.generateToken("Krtek");
+        service.verifyToken(token);
+        when(clock.millis()).thenReturn(1001000L);
+        assertThat(service.verifyToken(token).getUserId()).isEqualTo("Krtek");
+        when(clock.millis()).thenReturn(1001001L);
+        assertThatThrownBy(() -> service.verifyToken(token)).isInstanceOf(InvalidTokenException.class);
+    }
+
+    @Test
+    public void cachedTokenMatchesUncached() throws Exception {
+        TokenService uncached = new TokenServiceImpl(EXPIRATION, "secret", new String[0], 0, () -> clock);
+        when(clock.millis()).thenReturn(1000000L);
+        String token = service.generateToken("Krtek");
+        for (long millis = 1000000L; millis <= 1002000L; millis += 250) {
+            when(clock.millis()).thenReturn(millis);
+            assertThat(isValid(service, token)).as("at %d", millis).isEqualTo(isValid(uncached, token));
+        }
+    }
+
+    @Test
+    public void tamperedTokenIsNotServedFromCache() throws Exception {
+        when(clock.millis()).thenReturn(1000000L);
+        String token = service.generateToken("Krtek");
+        service.verifyToken(token);
+        String tampered = token.substring(0, token.length() - 2) + (token.endsWith("AA") ? "BB" : "AA");
+        assertThatThrownBy(() -> service.verifyToken(tampered)).isInstanceOf(InvalidTokenException.class);
+    }
+
+    @Test
+    public void tokenCarriesKeyId() throws Exception {
+        String token = service.generateToken("Krtek");
+        String header = new String(Base64.getUrlDecoder().decode(token.split("\\.")[0]), StandardCharsets.UTF_8);
+        assertThat(header).contains("\"kid\"");
+    }
+
+    @Test
+    public void tokenWithoutKeyIdIsVerifiedWithActiveKey() throws Exception {
+        when(clock.millis()).thenReturn(System.currentTimeMillis());
+        String token = Jwts.builder()
+            .setSubject("Krtek")
+            .setExpiration(new Date(System.currentTimeMillis() + EXPIRATION))
+            .signWith(SignatureAlgorithm.HS512, "secret")
+            .compact();
+        assertThat(service.verifyToken(token).getUserId()).isEqualTo("Krtek");
+    }
+
+    @Test
+    public void tokenWithoutExpirationIsAccepted() throws Exception {
+        when(clock.millis()).thenReturn(1000000L);
+        String token = Jwts.builder()
+            .setSubject("Krtek")
+            .signWith(SignatureAlgorithm.HS512, "secret")
+            .compact();
+        VerifiedToken verified = service.verifyToken(token);
+        assertThat(verified.getUserId()).isEqualTo("Krtek");
+        assertThat(verified.getExpiresAt()).isNull();
+        when(clock.millis()).thenReturn(1000000L + EXPIRATION + 1);
+        assertThat(service.verifyToken(token).getUserId()).isEqualTo("Krtek");
+    }
+
+    @Test
+    public void rotatedSecretStillVerifies() throws Exception {
+        TokenService before = new TokenServiceImpl(EXPIRATION, OLD_SECRET, new String[0], 0, () -> clock);
+        TokenService after = new TokenServiceImpl(EXPIRATION, NEW_SECRET, new String[]{OLD_SECRET}, 0, () -> clock);
+        TokenService withoutPrevious = new TokenServiceImpl(EXPIRATION, NEW_SECRET, new String[0], 0, () -> clock);
+        String oldToken = before.generateToken("Krtek");
+        assertThat(after.verifyToken(oldToken).getUserId()).isEqualTo("Krtek");
+        assertThatThrownBy(() -> withoutPrevious.verifyToken(oldToken)).isInstanceOf(InvalidTokenException.class);
+        String newToken = after.generateToken("Krtek");
+        assertThat(withoutPrevious.verifyToken(newToken).getUserId()).isEqualTo("Krtek");
+        assertThatThrownBy(() -> before.verifyToken(newToken)).isInstanceOf(InvalidTokenException.class);
+    }
+
+    @Test
+    public void unknownKeyIdIsRejected() throws Exception {
+        String token = Jwts.builder()
+            .setHeaderParam("kid", "unknown")
+            .setSubject("Krtek")
+            .signWith(SignatureAlgorithm.HS512, "secret")
+            .compact();
+        assertThatThrownBy(() -> service.verifyToken(token)).isInstanceOf(InvalidTokenException.class);
+    }
+
+    private boolean isValid(TokenService tokenService, String token) {
+        try {
+            tokenService.verifyToken(token);
+            return true;
+        } catch (InvalidTokenException e) {
+            return false;
+        }
+    }
+}